@@ -0,0 +1,143 @@
+/**
+ * Copyright (C) 2011-2024 Red Hat, Inc. (https://github.com/Commonjava/http-testserver)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.test.http.benchmark;
+
+import org.commonjava.test.http.common.AccessCounts;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of recording accesses from 1 to 64 concurrent request threads, against the synchronized-HashMap
+ * approach the servlets used to rely on. Each thread walks its own cursor over a shared set of access keys, so
+ * {@code keys=1} measures worst-case contention on a single hot path.
+ */
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+public class AccessCountsBenchmark
+{
+    @State( Scope.Benchmark )
+    public static class Counters
+    {
+        @Param( { "1", "1024" } )
+        int keys;
+
+        String[] accessKeys;
+
+        AccessCounts counts;
+
+        Map<String, Integer> synchronizedMap;
+
+        @Setup
+        public void setup()
+        {
+            accessKeys = new String[keys];
+            for ( int i = 0; i < keys; i++ )
+            {
+                accessKeys[i] = "GET /repos/org/commonjava/artifact-" + i + "/1.0/artifact-" + i + "-1.0.jar";
+            }
+
+            counts = new AccessCounts();
+            synchronizedMap = Collections.synchronizedMap( new HashMap<>() );
+        }
+    }
+
+    @State( Scope.Thread )
+    public static class Cursor
+    {
+        int next;
+
+        String next( final Counters counters )
+        {
+            final String key = counters.accessKeys[next];
+            next = ( next + 1 ) % counters.keys;
+            return key;
+        }
+    }
+
+    @Benchmark
+    @Threads( 1 )
+    public void accessCounts_01( final Counters counters, final Cursor cursor )
+    {
+        counters.counts.increment( cursor.next( counters ) );
+    }
+
+    @Benchmark
+    @Threads( 4 )
+    public void accessCounts_04( final Counters counters, final Cursor cursor )
+    {
+        counters.counts.increment( cursor.next( counters ) );
+    }
+
+    @Benchmark
+    @Threads( 16 )
+    public void accessCounts_16( final Counters counters, final Cursor cursor )
+    {
+        counters.counts.increment( cursor.next( counters ) );
+    }
+
+    @Benchmark
+    @Threads( 64 )
+    public void accessCounts_64( final Counters counters, final Cursor cursor )
+    {
+        counters.counts.increment( cursor.next( counters ) );
+    }
+
+    @Benchmark
+    @Threads( 1 )
+    public void synchronizedMap_01( final Counters counters, final Cursor cursor )
+    {
+        counters.synchronizedMap.merge( cursor.next( counters ), 1, Integer::sum );
+    }
+
+    @Benchmark
+    @Threads( 4 )
+    public void synchronizedMap_04( final Counters counters, final Cursor cursor )
+    {
+        counters.synchronizedMap.merge( cursor.next( counters ), 1, Integer::sum );
+    }
+
+    @Benchmark
+    @Threads( 16 )
+    public void synchronizedMap_16( final Counters counters, final Cursor cursor )
+    {
+        counters.synchronizedMap.merge( cursor.next( counters ), 1, Integer::sum );
+    }
+
+    @Benchmark
+    @Threads( 64 )
+    public void synchronizedMap_64( final Counters counters, final Cursor cursor )
+    {
+        counters.synchronizedMap.merge( cursor.next( counters ), 1, Integer::sum );
+    }
+}
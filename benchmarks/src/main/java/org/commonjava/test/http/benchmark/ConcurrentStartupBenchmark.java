@@ -0,0 +1,99 @@
+/**
+ * Copyright (C) 2011-2024 Red Hat, Inc. (https://github.com/Commonjava/http-testserver)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.test.http.benchmark;
+
+import org.commonjava.test.http.expect.ExpectationServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Wall-clock time to start many servers at once, the way parallel test forks on a CI agent do. Each server binds an
+ * OS-assigned port, so none of them should collide or retry.
+ */
+@BenchmarkMode( Mode.SingleShotTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 2 )
+@Measurement( iterations = 10 )
+@Fork( 1 )
+@State( Scope.Benchmark )
+public class ConcurrentStartupBenchmark
+{
+    @Param( { "200" } )
+    int servers;
+
+    private ExecutorService executor;
+
+    private List<ExpectationServer> started;
+
+    @Setup( Level.Trial )
+    public void setup()
+    {
+        executor = Executors.newFixedThreadPool( servers );
+    }
+
+    @Setup( Level.Iteration )
+    public void reset()
+    {
+        started = new ArrayList<>( servers );
+    }
+
+    @Benchmark
+    public List<ExpectationServer> startConcurrently()
+            throws Exception
+    {
+        final List<Future<ExpectationServer>> futures = new ArrayList<>( servers );
+        for ( int i = 0; i < servers; i++ )
+        {
+            futures.add( executor.submit( () -> new ExpectationServer( "repos" ).start() ) );
+        }
+
+        for ( Future<ExpectationServer> future : futures )
+        {
+            started.add( future.get() );
+        }
+        return started;
+    }
+
+    @TearDown( Level.Iteration )
+    public void stopAll()
+    {
+        started.forEach( ExpectationServer::stop );
+    }
+
+    @TearDown( Level.Trial )
+    public void tearDown()
+    {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,122 @@
+/**
+ * Copyright (C) 2011-2024 Red Hat, Inc. (https://github.com/Commonjava/http-testserver)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.test.http.benchmark;
+
+import org.commonjava.test.http.expect.ExpectationServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end request throughput of {@link ExpectationServer} with 10, 10k and 100k registered expectations, on both
+ * engines, to show that dispatch doesn't slow down as tests register more paths. {@link RouteTableBenchmark} measures
+ * the lookup alone.
+ */
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+public class ExpectationDispatchBenchmark
+{
+    private static final int REQUESTS = 1024;
+
+    @State( Scope.Benchmark )
+    public static class RunningServer
+    {
+        @Param( { "10", "10000", "100000" } )
+        int expectations;
+
+        @Param( { "SERVLET", "NATIVE" } )
+        String engine;
+
+        ExpectationServer server;
+
+        HttpClient client;
+
+        HttpRequest[] requests;
+
+        @Setup( Level.Trial )
+        public void setup()
+                throws Exception
+        {
+            server = new ExpectationServer( "repos" ).withEngine( ExpectationServer.Engine.valueOf( engine ) ).start();
+
+            final String[] urls = new String[expectations];
+            for ( int i = 0; i < expectations; i++ )
+            {
+                urls[i] = server.formatUrl( "/org/commonjava/group" + ( i % 97 ) + "/artifact-" + i + "/1.0/artifact-"
+                                                    + i + "-1.0.pom" );
+                server.expect( urls[i], 200, "<project/>" );
+            }
+
+            client = HttpClient.newBuilder().version( HttpClient.Version.HTTP_1_1 ).build();
+
+            final Random random = new Random( 42 );
+            requests = new HttpRequest[REQUESTS];
+            for ( int i = 0; i < REQUESTS; i++ )
+            {
+                final URI uri = URI.create( urls[random.nextInt( expectations )] );
+                requests[i] = HttpRequest.newBuilder( uri ).GET().build();
+            }
+        }
+
+        @TearDown( Level.Trial )
+        public void tearDown()
+        {
+            server.stop();
+        }
+    }
+
+    @State( Scope.Thread )
+    public static class Cursor
+    {
+        int next;
+
+        HttpRequest next( final RunningServer server )
+        {
+            final HttpRequest request = server.requests[next];
+            next = ( next + 1 ) & ( REQUESTS - 1 );
+            return request;
+        }
+    }
+
+    @Benchmark
+    @Threads( 8 )
+    public int dispatch( final RunningServer server, final Cursor cursor )
+            throws Exception
+    {
+        return server.client.send( cursor.next( server ), HttpResponse.BodyHandlers.discarding() ).statusCode();
+    }
+}
@@ -0,0 +1,110 @@
+/**
+ * Copyright (C) 2011-2024 Red Hat, Inc. (https://github.com/Commonjava/http-testserver)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.test.http.benchmark;
+
+import org.commonjava.test.http.expect.ExpectationServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the servlet and native engines of {@link ExpectationServer}: time to start and stop a server, and
+ * requests per second for a small pre-encoded body over keep-alive connections.
+ */
+@Fork( 1 )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+public class ExpectationServerEngineBenchmark
+{
+    @State( Scope.Benchmark )
+    public static class Engine
+    {
+        @Param( { "SERVLET", "NATIVE" } )
+        String engine;
+    }
+
+    @State( Scope.Benchmark )
+    public static class RunningServer
+    {
+        @Param( { "SERVLET", "NATIVE" } )
+        String engine;
+
+        ExpectationServer server;
+
+        HttpClient client;
+
+        HttpRequest request;
+
+        @Setup( Level.Trial )
+        public void setup()
+                throws Exception
+        {
+            server = new ExpectationServer( "repos" ).withEngine( ExpectationServer.Engine.valueOf( engine ) ).start();
+
+            final String url = server.formatUrl( "/org/commonjava/foo/1.0/foo-1.0.pom" );
+            server.expect( url, 200, "<project><artifactId>foo</artifactId></project>" );
+
+            client = HttpClient.newBuilder().version( HttpClient.Version.HTTP_1_1 ).build();
+            request = HttpRequest.newBuilder( URI.create( url ) ).GET().build();
+        }
+
+        @TearDown( Level.Trial )
+        public void tearDown()
+        {
+            server.stop();
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode( Mode.AverageTime )
+    @OutputTimeUnit( TimeUnit.MILLISECONDS )
+    public ExpectationServer startStop( final Engine engine )
+    {
+        final ExpectationServer server =
+                new ExpectationServer().withEngine( ExpectationServer.Engine.valueOf( engine.engine ) ).start();
+        server.stop();
+        return server;
+    }
+
+    @Benchmark
+    @BenchmarkMode( Mode.Throughput )
+    @OutputTimeUnit( TimeUnit.SECONDS )
+    @Threads( 8 )
+    public int requests( final RunningServer server )
+            throws Exception
+    {
+        final HttpResponse<byte[]> response =
+                server.client.send( server.request, HttpResponse.BodyHandlers.ofByteArray() );
+        return response.statusCode();
+    }
+}
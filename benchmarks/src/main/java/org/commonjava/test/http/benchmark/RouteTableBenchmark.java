@@ -0,0 +1,121 @@
+/**
+ * Copyright (C) 2011-2024 Red Hat, Inc. (https://github.com/Commonjava/http-testserver)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.test.http.benchmark;
+
+import org.commonjava.test.http.expect.RouteTable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-request lookup cost of {@link RouteTable} against the old approach of building <code>"METHOD path"</code> keys
+ * and probing a HashMap with them, over Maven-style repository paths.
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+@State( Scope.Benchmark )
+public class RouteTableBenchmark
+{
+    private static final int REQUESTS = 4096;
+
+    @Param( { "10", "10000", "100000" } )
+    int expectations;
+
+    private RouteTable<Object> routes;
+
+    private Map<String, Object> keyed;
+
+    private Map<String, Object> errors;
+
+    private String[] requestUris;
+
+    private int next;
+
+    @Setup
+    public void setup()
+    {
+        routes = new RouteTable<>();
+        keyed = new HashMap<>();
+        errors = new HashMap<>();
+
+        final String[] paths = new String[expectations];
+        for ( int i = 0; i < expectations; i++ )
+        {
+            final String path = mavenPath( i );
+            paths[i] = path;
+
+            final Object value = new Object();
+            routes.computeIfAbsent( "GET", path, r -> value );
+            keyed.put( "GET " + path, value );
+        }
+
+        final Random random = new Random( 42 );
+        requestUris = new String[REQUESTS];
+        for ( int i = 0; i < REQUESTS; i++ )
+        {
+            requestUris[i] = paths[random.nextInt( expectations )];
+        }
+    }
+
+    private static String mavenPath( final int i )
+    {
+        final int group = i % 97;
+        return "/repos/org/commonjava/group" + group + "/artifact-" + i + "/1." + ( i % 10 ) + "/artifact-" + i + "-1."
+                + ( i % 10 ) + ".pom";
+    }
+
+    private String nextUri()
+    {
+        final String uri = requestUris[next];
+        next = ( next + 1 ) & ( REQUESTS - 1 );
+        return uri;
+    }
+
+    @Benchmark
+    public Object routeTable()
+    {
+        final RouteTable.Route<Object> route = routes.find( "GET", nextUri(), null );
+        return route == null ? null : route.value();
+    }
+
+    @Benchmark
+    public Object hashMapOfKeys()
+    {
+        final String uri = nextUri();
+
+        // what ExpectationServlet used to do: build the whole-path key (the same as the simple-path key when there is
+        // no query string), then probe errors and expectations with it
+        final String key = "GET".toUpperCase() + " " + uri;
+        final Object error = errors.get( key );
+        return error != null ? error : keyed.get( key );
+    }
+}
@@ -0,0 +1,130 @@
+/**
+ * Copyright (C) 2011-2024 Red Hat, Inc. (https://github.com/Commonjava/http-testserver)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.test.http.benchmark;
+
+import org.commonjava.test.http.common.ServerOptions;
+import org.commonjava.test.http.expect.ExpectationServer;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Footprint of running ten fixtures side by side, each with its own Undertow runtime versus attached to the
+ * {@link org.commonjava.test.http.common.SharedRuntime}. Besides the start time, reports the threads added and the
+ * heap and direct memory in use once all servers are up.
+ */
+@BenchmarkMode( Mode.SingleShotTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 2 )
+@Measurement( iterations = 5 )
+@Fork( 1 )
+@State( Scope.Benchmark )
+public class SharedRuntimeBenchmark
+{
+    @Param( { "false", "true" } )
+    boolean sharedRuntime;
+
+    @Param( { "10" } )
+    int servers;
+
+    private ServerOptions options;
+
+    private List<ExpectationServer> running;
+
+    @AuxCounters( AuxCounters.Type.EVENTS )
+    @State( Scope.Thread )
+    public static class Footprint
+    {
+        public long threadsAdded;
+
+        public long heapBytes;
+
+        public long directBytes;
+
+        long threadsBefore;
+
+        @Setup( Level.Iteration )
+        public void before()
+        {
+            threadsAdded = 0;
+            heapBytes = 0;
+            directBytes = 0;
+            threadsBefore = ManagementFactory.getThreadMXBean().getThreadCount();
+        }
+
+        void measure()
+        {
+            threadsAdded = ManagementFactory.getThreadMXBean().getThreadCount() - threadsBefore;
+
+            System.gc();
+            heapBytes = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+            for ( BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans( BufferPoolMXBean.class ) )
+            {
+                if ( "direct".equals( pool.getName() ) )
+                {
+                    directBytes = pool.getMemoryUsed();
+                }
+            }
+        }
+    }
+
+    @Setup( Level.Trial )
+    public void setup()
+    {
+        options = ServerOptions.builder().sharedRuntime( sharedRuntime ).build();
+    }
+
+    @Setup( Level.Iteration )
+    public void reset()
+    {
+        running = new ArrayList<>( servers );
+    }
+
+    @Benchmark
+    public List<ExpectationServer> startServers( final Footprint footprint )
+    {
+        for ( int i = 0; i < servers; i++ )
+        {
+            running.add( new ExpectationServer( "repos" ).withOptions( options ).start() );
+        }
+
+        footprint.measure();
+        return running;
+    }
+
+    @TearDown( Level.Iteration )
+    public void stopAll()
+    {
+        running.forEach( ExpectationServer::stop );
+    }
+}
@@ -0,0 +1,87 @@
+/**
+ * Copyright (C) 2011-2024 Red Hat, Inc. (https://github.com/Commonjava/http-testserver)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.test.http.benchmark;
+
+import org.commonjava.test.http.common.ServerOptions;
+import org.commonjava.test.http.expect.ExpectationServer;
+import org.commonjava.test.http.expect.ExpectationServerPool;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of one fixture's {@link ExpectationServer#start()} plus {@link ExpectationServer#stop()}, the way tests pay
+ * for it: a fresh server with its own runtime, a fresh server on the shared runtime, or a server borrowed from an
+ * {@link ExpectationServerPool}.
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+@State( Scope.Benchmark )
+public class StartStopBenchmark
+{
+    @Param( { "FRESH", "SHARED_RUNTIME", "POOLED" } )
+    String strategy;
+
+    private ServerOptions options;
+
+    private ExpectationServerPool pool;
+
+    @Setup( Level.Trial )
+    public void setup()
+    {
+        options = ServerOptions.builder().sharedRuntime( "SHARED_RUNTIME".equals( strategy ) ).build();
+        pool = new ExpectationServerPool( "POOLED".equals( strategy ) ? 4 : 0 );
+    }
+
+    @TearDown( Level.Trial )
+    public void tearDown()
+    {
+        pool.close();
+    }
+
+    @Benchmark
+    public ExpectationServer startStop()
+    {
+        final ExpectationServer template = new ExpectationServer( "repos" );
+        final ExpectationServer server;
+        if ( "POOLED".equals( strategy ) )
+        {
+            server = pool.start( template );
+        }
+        else
+        {
+            server = template.withOptions( options ).start();
+        }
+
+        server.stop();
+        return server;
+    }
+}
@@ -0,0 +1,131 @@
+/**
+ * Copyright (C) 2011-2024 Red Hat, Inc. (https://github.com/Commonjava/http-testserver)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.test.http.benchmark;
+
+import org.commonjava.test.http.stream.StreamServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Stream;
+
+/**
+ * Download throughput of {@link StreamServer} serving one file from a directory ({@code FileResolver}) or from a jar
+ * ({@code JarFileResolver}), at 1 KiB, 1 MiB and 32 MiB. The jar entry is stored compressed, as in a normal archive.
+ */
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+@State( Scope.Benchmark )
+public class StreamServerBenchmark
+{
+    private static final String FILE = "org/commonjava/foo/1.0/foo-1.0.jar";
+
+    @Param( { "FILE", "JAR" } )
+    String resolver;
+
+    @Param( { "1024", "1048576", "33554432" } )
+    int size;
+
+    private Path dir;
+
+    private StreamServer server;
+
+    private HttpClient client;
+
+    private HttpRequest request;
+
+    @Setup( Level.Trial )
+    public void setup()
+            throws IOException
+    {
+        final byte[] content = new byte[size];
+        new Random( 42 ).nextBytes( content );
+
+        dir = Files.createTempDirectory( "stream-benchmark" );
+        final String resourceBase;
+        if ( "JAR".equals( resolver ) )
+        {
+            final Path jar = dir.resolve( "repo.jar" );
+            try (JarOutputStream out = new JarOutputStream( Files.newOutputStream( jar ) ))
+            {
+                out.putNextEntry( new JarEntry( FILE ) );
+                out.write( content );
+                out.closeEntry();
+            }
+            resourceBase = jar.toString();
+        }
+        else
+        {
+            final Path file = dir.resolve( "repo" ).resolve( FILE );
+            Files.createDirectories( file.getParent() );
+            try (OutputStream out = Files.newOutputStream( file ))
+            {
+                out.write( content );
+            }
+            resourceBase = dir.resolve( "repo" ).toString();
+        }
+
+        server = new StreamServer( resourceBase ).start();
+        client = HttpClient.newBuilder().version( HttpClient.Version.HTTP_1_1 ).build();
+        request = HttpRequest.newBuilder( URI.create( server.formatUrl( FILE ) ) ).GET().build();
+    }
+
+    @TearDown( Level.Trial )
+    public void tearDown()
+            throws IOException
+    {
+        server.stop();
+        try (Stream<Path> files = Files.walk( dir ))
+        {
+            files.sorted( Comparator.reverseOrder() ).forEach( p -> p.toFile().delete() );
+        }
+    }
+
+    @Benchmark
+    @Threads( 4 )
+    public int download()
+            throws Exception
+    {
+        return client.send( request, HttpResponse.BodyHandlers.discarding() ).statusCode();
+    }
+}
@@ -0,0 +1,74 @@
+/**
+ * Copyright (C) 2011-2024 Red Hat, Inc. (https://github.com/Commonjava/http-testserver)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.test.http.benchmark;
+
+import org.commonjava.test.http.util.UrlUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.net.MalformedURLException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of {@link UrlUtils#buildPath(String, String...)} and {@link UrlUtils#buildUrl(String, String...)}, which every
+ * <code>formatUrl()</code> and <code>formatPath()</code> call goes through.
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+@State( Scope.Benchmark )
+public class UrlUtilsBenchmark
+{
+    private final String baseUrl = "http://127.0.0.1:8080";
+
+    private final String basePath = "/repos";
+
+    private final String[] parts = { "org/commonjava", "/foo/", "1.0", "foo-1.0.pom" };
+
+    private final Map<String, String> params = Collections.singletonMap( "version", "1.0" );
+
+    @Benchmark
+    public String buildPath()
+            throws MalformedURLException
+    {
+        return UrlUtils.buildPath( basePath, parts );
+    }
+
+    @Benchmark
+    public String buildPathWithParams()
+            throws MalformedURLException
+    {
+        return UrlUtils.buildPath( basePath, params, parts );
+    }
+
+    @Benchmark
+    public String buildUrl()
+            throws MalformedURLException
+    {
+        return UrlUtils.buildUrl( baseUrl, basePath, parts );
+    }
+}
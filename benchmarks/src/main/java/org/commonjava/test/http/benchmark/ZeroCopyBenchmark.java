@@ -0,0 +1,119 @@
+/**
+ * Copyright (C) 2011-2024 Red Hat, Inc. (https://github.com/Commonjava/http-testserver)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.test.http.benchmark;
+
+import org.commonjava.test.http.stream.FileResolver;
+import org.commonjava.test.http.stream.StreamServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Download time of one file from {@link StreamServer} at 1 MiB, 100 MiB and 1 GiB, either transferred from the file
+ * channel ({@code TRANSFER}, what {@link FileResolver} gets) or copied from the resolver's stream through the heap
+ * ({@code COPY}, what any other resolver gets).
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 2, time = 5 )
+@Measurement( iterations = 5, time = 5 )
+@Fork( 1 )
+@State( Scope.Benchmark )
+public class ZeroCopyBenchmark
+{
+    private static final String FILE = "org/commonjava/foo/1.0/foo-1.0.zip";
+
+    @Param( { "TRANSFER", "COPY" } )
+    String path;
+
+    @Param( { "1048576", "104857600", "1073741824" } )
+    long size;
+
+    private Path dir;
+
+    private StreamServer server;
+
+    private HttpClient client;
+
+    private HttpRequest request;
+
+    @Setup( Level.Trial )
+    public void setup()
+            throws IOException
+    {
+        dir = Files.createTempDirectory( "zero-copy-benchmark" );
+        final Path file = dir.resolve( FILE );
+        Files.createDirectories( file.getParent() );
+
+        final byte[] block = new byte[(int) Math.min( size, 1024 * 1024 )];
+        new Random( 42 ).nextBytes( block );
+        try (OutputStream out = Files.newOutputStream( file ))
+        {
+            for ( long written = 0; written < size; written += block.length )
+            {
+                out.write( block );
+            }
+        }
+
+        final FileResolver files = new FileResolver( dir.toString() );
+        // hiding the ResourceResolver side of FileResolver forces the copy path
+        server = ( "COPY".equals( path ) ? new StreamServer( files::get ) : new StreamServer( files ) ).start();
+
+        client = HttpClient.newBuilder().version( HttpClient.Version.HTTP_1_1 ).build();
+        request = HttpRequest.newBuilder( URI.create( server.formatUrl( FILE ) ) ).GET().build();
+    }
+
+    @TearDown( Level.Trial )
+    public void tearDown()
+            throws IOException
+    {
+        server.stop();
+        try (Stream<Path> files = Files.walk( dir ))
+        {
+            files.sorted( Comparator.reverseOrder() ).forEach( p -> p.toFile().delete() );
+        }
+    }
+
+    @Benchmark
+    public int download()
+            throws Exception
+    {
+        return client.send( request, HttpResponse.BodyHandlers.discarding() ).statusCode();
+    }
+}
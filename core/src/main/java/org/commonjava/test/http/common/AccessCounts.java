@@ -0,0 +1,101 @@
+/**
+ * Copyright (C) 2011-2024 Red Hat, Inc. (https://github.com/Commonjava/http-testserver)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.test.http.common;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-key access counters, safe to update from any number of server worker threads. Each key gets its own
+ * {@link LongAdder}, so concurrent hits on the same key don't contend on a single CAS, and hits on different keys
+ * don't touch each other at all.
+ */
+public final class AccessCounts
+{
+    private final ConcurrentMap<String, LongAdder> counts = new ConcurrentHashMap<>();
+
+    public void increment( final String key )
+    {
+        counter( key ).increment();
+    }
+
+    /**
+     * Return the live counter for a key, creating it if necessary. Callers that dispatch the same key repeatedly can
+     * hold on to it and skip the map lookup. Keys whose counter is still zero are treated as never accessed.
+     */
+    public LongAdder counter( final String key )
+    {
+        final LongAdder adder = counts.get( key );
+        if ( adder != null )
+        {
+            return adder;
+        }
+
+        return counts.computeIfAbsent( key, k -> new LongAdder() );
+    }
+
+    /**
+     * @return the number of accesses recorded for the key, or null if the key has not been accessed.
+     */
+    public Integer get( final String key )
+    {
+        final LongAdder adder = counts.get( key );
+        if ( adder == null )
+        {
+            return null;
+        }
+
+        final long sum = adder.sum();
+        return sum == 0 ? null : (int) sum;
+    }
+
+    /**
+     * Take an immutable, point-in-time copy of all non-zero counters, sorted by key. Later accesses don't affect the
+     * returned map.
+     */
+    public Map<String, Integer> snapshot()
+    {
+        final Map<String, Integer> result = new TreeMap<>();
+        counts.forEach( ( key, adder ) -> {
+            final long sum = adder.sum();
+            if ( sum > 0 )
+            {
+                result.put( key, (int) sum );
+            }
+        } );
+        return Collections.unmodifiableMap( result );
+    }
+
+    /**
+     * Zero all counters. Counters handed out by {@link #counter(String)} stay attached, so they keep counting.
+     */
+    public void clear()
+    {
+        counts.values().forEach( LongAdder::reset );
+    }
+
+    /**
+     * Drop all counters. Unlike {@link #clear()}, counters handed out earlier are detached and no longer counted.
+     */
+    public void reset()
+    {
+        counts.clear();
+    }
+}
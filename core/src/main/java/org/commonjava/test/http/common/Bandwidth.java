@@ -0,0 +1,80 @@
+/**
+ * Copyright (C) 2011-2024 Red Hat, Inc. (https://github.com/Commonjava/http-testserver)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.test.http.common;
+
+/**
+ * A bandwidth cap in bytes per second, and the size of the chunks a shaped body is written in. Smaller chunks give
+ * smoother pacing at the cost of more writes.
+ * <pre>
+ * server.throttle( url, Bandwidth.bytesPerSecond( 64 * 1024 ).withChunkSize( 4096 ) );
+ * </pre>
+ */
+public final class Bandwidth
+{
+    public static final int DEFAULT_CHUNK_SIZE = 16 * 1024;
+
+    private final long bytesPerSecond;
+
+    private final int chunkSize;
+
+    private Bandwidth( final long bytesPerSecond, final int chunkSize )
+    {
+        if ( bytesPerSecond < 1 )
+        {
+            throw new IllegalArgumentException( "Bandwidth must be positive. Got: " + bytesPerSecond );
+        }
+        if ( chunkSize < 1 )
+        {
+            throw new IllegalArgumentException( "Chunk size must be positive. Got: " + chunkSize );
+        }
+        this.bytesPerSecond = bytesPerSecond;
+        this.chunkSize = chunkSize;
+    }
+
+    public static Bandwidth bytesPerSecond( final long bytesPerSecond )
+    {
+        return new Bandwidth( bytesPerSecond, DEFAULT_CHUNK_SIZE );
+    }
+
+    public Bandwidth withChunkSize( final int chunkSize )
+    {
+        return new Bandwidth( bytesPerSecond, chunkSize );
+    }
+
+    public long bytesPerSecond()
+    {
+        return bytesPerSecond;
+    }
+
+    public int chunkSize()
+    {
+        return chunkSize;
+    }
+
+    /**
+     * @return a new limiter enforcing this cap, with nothing reserved yet
+     */
+    public BandwidthLimiter newLimiter()
+    {
+        return new BandwidthLimiter( bytesPerSecond );
+    }
+
+    @Override
+    public String toString()
+    {
+        return "Bandwidth{" + bytesPerSecond + " bytes/s, chunkSize=" + chunkSize + '}';
+    }
+}
@@ -0,0 +1,72 @@
+/**
+ * Copyright (C) 2011-2024 Red Hat, Inc. (https://github.com/Commonjava/http-testserver)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.test.http.common;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Shapes traffic to a fixed rate, shared by any number of concurrent responses. Each chunk reserves its share of the
+ * bandwidth, and the writer pauses until that share is paid for before writing the next chunk. Nothing blocks here;
+ * the caller schedules the pause.
+ */
+public final class BandwidthLimiter
+{
+    private final long bytesPerSecond;
+
+    private final AtomicLong paidUntil = new AtomicLong( System.nanoTime() );
+
+    public BandwidthLimiter( final long bytesPerSecond )
+    {
+        if ( bytesPerSecond < 1 )
+        {
+            throw new IllegalArgumentException( "Bandwidth must be positive. Got: " + bytesPerSecond );
+        }
+        this.bytesPerSecond = bytesPerSecond;
+    }
+
+    /**
+     * Reserve bandwidth for bytes that were just written.
+     *
+     * @return nanoseconds to wait before writing more
+     */
+    public long reserve( final long bytes )
+    {
+        final long cost = (long) ( bytes * 1_000_000_000d / bytesPerSecond );
+        final long now = System.nanoTime();
+
+        long prev;
+        long next;
+        do
+        {
+            prev = paidUntil.get();
+            next = ( prev - now < 0 ? now : prev ) + cost;
+        }
+        while ( !paidUntil.compareAndSet( prev, next ) );
+
+        return next - now;
+    }
+
+    public long bytesPerSecond()
+    {
+        return bytesPerSecond;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "BandwidthLimiter{" + bytesPerSecond + " bytes/s}";
+    }
+}
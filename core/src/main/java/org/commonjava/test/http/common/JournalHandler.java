@@ -0,0 +1,59 @@
+/**
+ * Copyright (C) 2011-2024 Red Hat, Inc. (https://github.com/Commonjava/http-testserver)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.test.http.common;
+
+import io.undertow.server.ExchangeCompletionListener;
+import io.undertow.server.HttpHandler;
+import io.undertow.server.HttpServerExchange;
+
+/**
+ * Root handler that records every exchange in a {@link RequestJournal} once its response is complete. Start times are
+ * the request start recorded by Undertow; see {@link ServerOptions#undertowBuilder()}.
+ */
+public final class JournalHandler
+        implements HttpHandler
+{
+    private final RequestJournal journal;
+
+    private final HttpHandler next;
+
+    // shared by all exchanges, like MetricsHandler's, so journaling a request allocates no listener
+    private final ExchangeCompletionListener completionListener = ( exchange, nextListener ) -> {
+        try
+        {
+            final long start = exchange.getRequestStartTime();
+            journal.record( exchange, start > 0 ? start : System.nanoTime() );
+        }
+        finally
+        {
+            nextListener.proceed();
+        }
+    };
+
+    public JournalHandler( final RequestJournal journal, final HttpHandler next )
+    {
+        this.journal = journal;
+        this.next = next;
+    }
+
+    @Override
+    public void handleRequest( final HttpServerExchange exchange )
+            throws Exception
+    {
+        exchange.addExchangeCompleteListener( completionListener );
+        next.handleRequest( exchange );
+    }
+}
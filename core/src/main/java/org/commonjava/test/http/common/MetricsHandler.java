@@ -0,0 +1,78 @@
+/**
+ * Copyright (C) 2011-2024 Red Hat, Inc. (https://github.com/Commonjava/http-testserver)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.test.http.common;
+
+import io.undertow.server.ExchangeCompletionListener;
+import io.undertow.server.HttpHandler;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.server.ResponseCommitListener;
+
+/**
+ * Root handler that times every exchange into the {@link RouteMetrics} attached to it. Each exchange starts out
+ * counted as {@link ServerMetrics#UNMATCHED} until the server attaches its route. Times are measured from the request
+ * start recorded by Undertow; see {@link ServerOptions#undertowBuilder()}.
+ */
+public final class MetricsHandler
+        implements HttpHandler
+{
+    private final ServerMetrics metrics;
+
+    private final HttpHandler next;
+
+    // shared by all exchanges, so timing a request allocates nothing here
+    private final ResponseCommitListener commitListener = exchange -> {
+        final RouteMetrics route = exchange.getAttachment( RouteMetrics.ATTACHMENT );
+        final long start = exchange.getRequestStartTime();
+        if ( route != null && start > 0 )
+        {
+            route.firstByte( System.nanoTime() - start );
+        }
+    };
+
+    private final ExchangeCompletionListener completionListener = ( exchange, nextListener ) -> {
+        try
+        {
+            final RouteMetrics route = exchange.getAttachment( RouteMetrics.ATTACHMENT );
+            if ( route != null )
+            {
+                final long start = exchange.getRequestStartTime();
+                route.complete( start > 0 ? System.nanoTime() - start : -1, exchange.getRequestBytesRead(),
+                                exchange.getResponseBytesSent() );
+            }
+            metrics.countStatus( exchange.getStatusCode() );
+        }
+        finally
+        {
+            nextListener.proceed();
+        }
+    };
+
+    public MetricsHandler( final ServerMetrics metrics, final HttpHandler next )
+    {
+        this.metrics = metrics;
+        this.next = next;
+    }
+
+    @Override
+    public void handleRequest( final HttpServerExchange exchange )
+            throws Exception
+    {
+        metrics.unmatched().attach( exchange );
+        exchange.addResponseCommitListener( commitListener );
+        exchange.addExchangeCompleteListener( completionListener );
+        next.handleRequest( exchange );
+    }
+}
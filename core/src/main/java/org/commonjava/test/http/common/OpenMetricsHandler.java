@@ -0,0 +1,231 @@
+/**
+ * Copyright (C) 2011-2024 Red Hat, Inc. (https://github.com/Commonjava/http-testserver)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.test.http.common;
+
+import io.undertow.Undertow;
+import io.undertow.server.ConnectorStatistics;
+import io.undertow.server.HttpHandler;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.Headers;
+import io.undertow.util.Methods;
+import org.HdrHistogram.Histogram;
+import org.xnio.XnioWorker;
+import org.xnio.management.XnioWorkerMXBean;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Root handler that answers GET requests for one path with the server's metrics in OpenMetrics text format, for
+ * Prometheus to scrape, and passes everything else on. The page is rendered from snapshots on a worker thread, so a
+ * scrape never holds up an IO thread or a request being served. Scrapes are not journaled or measured themselves.
+ * <p>
+ * Exposes, with an <code>http_testserver_</code> prefix: accesses by access key, responses by status code, time to
+ * first byte and service time histograms, bytes received and sent and requests in flight by route, open connections,
+ * and the size, busy threads and queue of the worker pool.
+ */
+public final class OpenMetricsHandler
+        implements HttpHandler
+{
+    public static final String DEFAULT_PATH = "/_metrics";
+
+    public static final String CONTENT_TYPE = "application/openmetrics-text; version=1.0.0; charset=utf-8";
+
+    private static final String PREFIX = "http_testserver_";
+
+    private static final double[] BUCKETS_SECONDS =
+            { 0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10 };
+
+    private final String path;
+
+    private final ServerMetrics metrics;
+
+    private final Supplier<Map<String, Integer>> accesses;
+
+    private final Supplier<Undertow> server;
+
+    private final HttpHandler next;
+
+    /**
+     * @param accesses the server's access counts by key
+     * @param server the running server, for connection and worker statistics; may supply null before it has started
+     */
+    public OpenMetricsHandler( final String path, final ServerMetrics metrics,
+                               final Supplier<Map<String, Integer>> accesses, final Supplier<Undertow> server,
+                               final HttpHandler next )
+    {
+        this.path = path;
+        this.metrics = metrics;
+        this.accesses = accesses;
+        this.server = server;
+        this.next = next;
+    }
+
+    @Override
+    public void handleRequest( final HttpServerExchange exchange )
+            throws Exception
+    {
+        if ( !path.equals( exchange.getRequestPath() ) || !Methods.GET.equals( exchange.getRequestMethod() ) )
+        {
+            next.handleRequest( exchange );
+            return;
+        }
+
+        if ( exchange.isInIoThread() )
+        {
+            exchange.dispatch( this );
+            return;
+        }
+
+        final byte[] page = render().getBytes( StandardCharsets.UTF_8 );
+        exchange.getResponseHeaders().put( Headers.CONTENT_TYPE, CONTENT_TYPE );
+        exchange.getResponseSender().send( ByteBuffer.wrap( page ) );
+    }
+
+    String render()
+    {
+        final StringBuilder out = new StringBuilder( 4096 );
+
+        family( out, "accesses", "counter", "Requests by access key (method and path)." );
+        accesses.get().forEach( ( key, count ) -> sample( out, "accesses_total", "key", key, count ) );
+
+        family( out, "responses", "counter", "Responses by status code." );
+        metrics.statusCounts()
+               .forEach( ( code, count ) -> sample( out, "responses_total", "code", Integer.toString( code ), count ) );
+
+        final Map<String, RouteMetrics.Snapshot> routes = metrics.snapshot();
+
+        family( out, "first_byte_seconds", "histogram", "Time from request start to response commit, by route." );
+        routes.forEach( ( route, snapshot ) -> histogram( out, "first_byte_seconds", route, snapshot.firstByte() ) );
+
+        family( out, "service_seconds", "histogram", "Time from request start to response end, by route." );
+        routes.forEach( ( route, snapshot ) -> histogram( out, "service_seconds", route, snapshot.service() ) );
+
+        family( out, "received_bytes", "counter", "Request body bytes read, by route." );
+        routes.forEach( ( route, snapshot ) -> sample( out, "received_bytes_total", "route", route,
+                                                       snapshot.bytesReceived() ) );
+
+        family( out, "sent_bytes", "counter", "Response body bytes sent, by route." );
+        routes.forEach(
+                ( route, snapshot ) -> sample( out, "sent_bytes_total", "route", route, snapshot.bytesServed() ) );
+
+        family( out, "in_flight_requests", "gauge", "Requests being served, by route." );
+        routes.forEach(
+                ( route, snapshot ) -> sample( out, "in_flight_requests", "route", route, snapshot.inFlight() ) );
+
+        final Undertow undertow = server.get();
+        if ( undertow != null )
+        {
+            long open = 0;
+            for ( Undertow.ListenerInfo listener : undertow.getListenerInfo() )
+            {
+                final ConnectorStatistics statistics = listener.getConnectorStatistics();
+                if ( statistics != null )
+                {
+                    open += statistics.getActiveConnections();
+                }
+            }
+            family( out, "open_connections", "gauge", "Open client connections." );
+            sample( out, "open_connections", null, null, open );
+
+            final XnioWorker worker = undertow.getWorker();
+            final XnioWorkerMXBean pool = worker == null ? null : worker.getMXBean();
+            if ( pool != null )
+            {
+                family( out, "worker_threads", "gauge", "Worker pool threads." );
+                sample( out, "worker_threads", null, null, pool.getWorkerPoolSize() );
+                family( out, "worker_max_threads", "gauge", "Maximum worker pool threads." );
+                sample( out, "worker_max_threads", null, null, pool.getMaxWorkerPoolSize() );
+                family( out, "worker_busy_threads", "gauge", "Worker pool threads running a task." );
+                sample( out, "worker_busy_threads", null, null, pool.getBusyWorkerThreadCount() );
+                family( out, "worker_queue_size", "gauge", "Tasks waiting for a worker thread." );
+                sample( out, "worker_queue_size", null, null, pool.getWorkerQueueSize() );
+            }
+        }
+
+        return out.append( "# EOF\n" ).toString();
+    }
+
+    private static void family( final StringBuilder out, final String name, final String type, final String help )
+    {
+        out.append( "# TYPE " ).append( PREFIX ).append( name ).append( ' ' ).append( type ).append( '\n' );
+        out.append( "# HELP " ).append( PREFIX ).append( name ).append( ' ' ).append( help ).append( '\n' );
+    }
+
+    private static void sample( final StringBuilder out, final String name, final String label, final String value,
+                                final long count )
+    {
+        out.append( PREFIX ).append( name );
+        if ( label != null )
+        {
+            out.append( '{' ).append( label ).append( "=\"" );
+            escape( out, value );
+            out.append( "\"}" );
+        }
+        out.append( ' ' ).append( count ).append( '\n' );
+    }
+
+    private static void histogram( final StringBuilder out, final String name, final String route,
+                                   final Histogram micros )
+    {
+        for ( double le : BUCKETS_SECONDS )
+        {
+            bucket( out, name, route, Double.toString( le ), micros.getCountBetweenValues( 0, (long) ( le * 1e6 ) ) );
+        }
+        bucket( out, name, route, "+Inf", micros.getTotalCount() );
+
+        out.append( PREFIX ).append( name ).append( "_count{route=\"" );
+        escape( out, route );
+        out.append( "\"} " ).append( micros.getTotalCount() ).append( '\n' );
+
+        // the histogram keeps no exact sum, so derive it from the mean, to the histogram's precision
+        out.append( PREFIX ).append( name ).append( "_sum{route=\"" );
+        escape( out, route );
+        out.append( "\"} " ).append( micros.getMean() * micros.getTotalCount() / 1e6 ).append( '\n' );
+    }
+
+    private static void bucket( final StringBuilder out, final String name, final String route, final String le,
+                                final long count )
+    {
+        out.append( PREFIX ).append( name ).append( "_bucket{route=\"" );
+        escape( out, route );
+        out.append( "\",le=\"" ).append( le ).append( "\"} " ).append( count ).append( '\n' );
+    }
+
+    private static void escape( final StringBuilder out, final String value )
+    {
+        for ( int i = 0; i < value.length(); i++ )
+        {
+            final char c = value.charAt( i );
+            switch ( c )
+            {
+                case '\\':
+                    out.append( "\\\\" );
+                    break;
+                case '"':
+                    out.append( "\\\"" );
+                    break;
+                case '\n':
+                    out.append( "\\n" );
+                    break;
+                default:
+                    out.append( c );
+            }
+        }
+    }
+}
@@ -0,0 +1,166 @@
+/**
+ * Copyright (C) 2011-2024 Red Hat, Inc. (https://github.com/Commonjava/http-testserver)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.test.http.common;
+
+import io.undertow.servlet.handlers.ServletRequestContext;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xnio.XnioIoThread;
+
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.ServletResponse;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntToLongFunction;
+import java.util.function.LongSupplier;
+
+/**
+ * Writes a servlet response chunk by chunk with a pause after each chunk, for latency and bandwidth shaping. Pauses
+ * wait on the connection's IO-thread timer, and each chunk is written through {@link AsyncContext#start(Runnable)},
+ * so a paced response only holds a thread while it is actually writing.
+ */
+public final class PacedWriter
+{
+    /**
+     * Source of the chunks to write. Closed once the response is complete or fails.
+     */
+    public interface ChunkSource
+            extends Closeable
+    {
+        boolean hasNext()
+                throws IOException;
+
+        /**
+         * @return the number of bytes written
+         */
+        int writeNext( OutputStream out )
+                throws IOException;
+    }
+
+    private PacedWriter()
+    {
+    }
+
+    /**
+     * @return the IO thread of the request being serviced on the current thread, to schedule pauses on
+     */
+    public static XnioIoThread currentTimer()
+    {
+        return ServletRequestContext.requireCurrent().getExchange().getIoThread();
+    }
+
+    /**
+     * Wait on the timer, then run the task through {@link AsyncContext#start(Runnable)}.
+     */
+    public static void later( final AsyncContext context, final XnioIoThread timer, final long nanos,
+                              final Runnable task )
+    {
+        timer.executeAfter( () -> context.start( task ), Math.max( 0, nanos ), TimeUnit.NANOSECONDS );
+    }
+
+    /**
+     * Write the next chunk now, then schedule the rest after the pause <code>pauses</code> returns for the chunk's
+     * size. Completes the async context after the last chunk.
+     */
+    public static void write( final AsyncContext context, final XnioIoThread timer, final OutputStream out,
+                              final ChunkSource source, final IntToLongFunction pauses )
+    {
+        try
+        {
+            final int written = source.hasNext() ? source.writeNext( out ) : 0;
+            out.flush();
+
+            if ( source.hasNext() )
+            {
+                later( context, timer, pauses.applyAsLong( written ),
+                       () -> write( context, timer, out, source, pauses ) );
+                return;
+            }
+        }
+        catch ( final IOException e )
+        {
+            final Logger logger = LoggerFactory.getLogger( PacedWriter.class );
+            logger.warn( "Failed to write response chunk: {}", e.getMessage() );
+        }
+        catch ( final Throwable e )
+        {
+            // the context has no timeout, so it must be completed whatever the chunk source throws
+            final Logger logger = LoggerFactory.getLogger( PacedWriter.class );
+            logger.error( "Failed to write response chunk", e );
+
+            final ServletResponse response = context.getResponse();
+            if ( !response.isCommitted() )
+            {
+                response.reset();
+                if ( response instanceof HttpServletResponse )
+                {
+                    ( (HttpServletResponse) response ).setStatus( 500 );
+                }
+            }
+        }
+
+        IOUtils.closeQuietly( source );
+        context.complete();
+    }
+
+    /**
+     * Combine a per-chunk delay and bandwidth limiters into one pause function. The pause after a chunk is the longest
+     * of them, and every limiter is charged for the chunk.
+     *
+     * @param delay per-chunk delay in nanoseconds, or null
+     * @param limiters limiters to charge; null entries are skipped
+     * @return the pause function, or null if there is nothing to pace by
+     */
+    public static IntToLongFunction pauses( final LongSupplier delay, final BandwidthLimiter... limiters )
+    {
+        int count = 0;
+        for ( BandwidthLimiter limiter : limiters )
+        {
+            if ( limiter != null )
+            {
+                count++;
+            }
+        }
+
+        if ( delay == null && count == 0 )
+        {
+            return null;
+        }
+
+        final BandwidthLimiter[] active = new BandwidthLimiter[count];
+        int i = 0;
+        for ( BandwidthLimiter limiter : limiters )
+        {
+            if ( limiter != null )
+            {
+                active[i++] = limiter;
+            }
+        }
+
+        return bytes -> {
+            long pause = delay == null ? 0 : delay.getAsLong();
+            for ( BandwidthLimiter limiter : active )
+            {
+                pause = Math.max( pause, limiter.reserve( bytes ) );
+            }
+            return pause;
+        };
+    }
+}
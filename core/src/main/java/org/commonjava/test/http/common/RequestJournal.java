@@ -0,0 +1,308 @@
+/**
+ * Copyright (C) 2011-2024 Red Hat, Inc. (https://github.com/Commonjava/http-testserver)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.test.http.common;
+
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.HeaderMap;
+import io.undertow.util.HttpString;
+
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * Bounded journal of the requests a server handled, in completion order. Records live in a ring of preallocated
+ * slots, so memory use is fixed by the capacity and the oldest records are overwritten once it is full.
+ * <p>
+ * Recording is lock-free: a writer claims a sequence number, fills the slot it maps to and publishes it. Readers copy
+ * a slot and check that it wasn't overwritten meanwhile, so queries never block the server.
+ * <pre>
+ * List&lt;RequestRecord&gt; misses = server.getRequestJournal().query().method( "GET" ).status( 404 ).list();
+ * </pre>
+ */
+public final class RequestJournal
+{
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private final Slot[] slots;
+
+    private final int mask;
+
+    private final String[] headerNames;
+
+    private final HttpString[] headerKeys;
+
+    private final AtomicLong next = new AtomicLong();
+
+    private volatile long floor;
+
+    /**
+     * @param capacity number of records kept; rounded up to a power of two
+     * @param headers names of the request headers to record
+     */
+    public RequestJournal( final int capacity, final String... headers )
+    {
+        if ( capacity < 1 )
+        {
+            throw new IllegalArgumentException( "Journal capacity must be positive. Got: " + capacity );
+        }
+
+        final int size = capacity == 1 ? 1 : Integer.highestOneBit( capacity - 1 ) << 1;
+        this.mask = size - 1;
+        this.headerNames = headers.clone();
+        this.headerKeys = new HttpString[headers.length];
+        for ( int i = 0; i < headers.length; i++ )
+        {
+            headerKeys[i] = new HttpString( headers[i] );
+        }
+
+        this.slots = new Slot[size];
+        for ( int i = 0; i < size; i++ )
+        {
+            slots[i] = new Slot( headers.length );
+        }
+    }
+
+    /**
+     * Record a completed exchange.
+     */
+    void record( final HttpServerExchange exchange, final long startNanos )
+    {
+        final long seq = next.getAndIncrement();
+        final Slot slot = slots[(int) ( seq & mask )];
+
+        slot.seq = -1;
+        VarHandle.storeStoreFence();
+
+        slot.startNanos = startNanos;
+        slot.endNanos = System.nanoTime();
+        slot.method = exchange.getRequestMethod().toString();
+        slot.path = exchange.getRequestURI();
+        final String query = exchange.getQueryString();
+        slot.query = query == null || query.isEmpty() ? null : query;
+        slot.status = exchange.getStatusCode();
+        slot.bytesIn = exchange.getRequestBytesRead();
+        slot.bytesOut = exchange.getResponseBytesSent();
+
+        final HeaderMap requestHeaders = exchange.getRequestHeaders();
+        for ( int i = 0; i < headerKeys.length; i++ )
+        {
+            slot.headers[i] = requestHeaders.getFirst( headerKeys[i] );
+        }
+
+        slot.seq = seq;
+    }
+
+    public int capacity()
+    {
+        return slots.length;
+    }
+
+    /**
+     * @return the number of requests recorded since the server started, including overwritten and cleared ones
+     */
+    public long totalRecorded()
+    {
+        return next.get();
+    }
+
+    /**
+     * Hide everything recorded so far from later queries.
+     */
+    public void clear()
+    {
+        floor = next.get();
+    }
+
+    /**
+     * @return the records still held, oldest first
+     */
+    public List<RequestRecord> snapshot()
+    {
+        return find( r -> true );
+    }
+
+    /**
+     * @return the held records matching the filter, oldest first
+     */
+    public List<RequestRecord> find( final Predicate<RequestRecord> filter )
+    {
+        final long end = next.get();
+        final long start = Math.max( floor, end - slots.length );
+
+        final List<RequestRecord> result = new ArrayList<>();
+        for ( long seq = start; seq < end; seq++ )
+        {
+            final RequestRecord record = read( seq );
+            if ( record != null && filter.test( record ) )
+            {
+                result.add( record );
+            }
+        }
+        return result;
+    }
+
+    public Query query()
+    {
+        return new Query();
+    }
+
+    private RequestRecord read( final long seq )
+    {
+        final Slot slot = slots[(int) ( seq & mask )];
+        if ( slot.seq != seq )
+        {
+            return null;
+        }
+
+        final long startNanos = slot.startNanos;
+        final long endNanos = slot.endNanos;
+        final String method = slot.method;
+        final String path = slot.path;
+        final String query = slot.query;
+        final int status = slot.status;
+        final long bytesIn = slot.bytesIn;
+        final long bytesOut = slot.bytesOut;
+        final String[] headers = slot.headers.clone();
+
+        VarHandle.loadLoadFence();
+        if ( slot.seq != seq )
+        {
+            // overwritten while we were copying it
+            return null;
+        }
+
+        return new RequestRecord( seq, startNanos, endNanos, method, path, query, status, bytesIn, bytesOut,
+                                  headerNames, headers );
+    }
+
+    @Override
+    public String toString()
+    {
+        return "RequestJournal{capacity=" + slots.length + ", recorded=" + next.get() + ", headers=" + Arrays.toString(
+                headerNames ) + '}';
+    }
+
+    /**
+     * Fluent filter over the journal, for assertions. Every condition added must match.
+     */
+    public final class Query
+    {
+        private Predicate<RequestRecord> filter = r -> true;
+
+        private Query()
+        {
+        }
+
+        public Query method( final String method )
+        {
+            return matching( r -> r.method().equalsIgnoreCase( method ) );
+        }
+
+        public Query path( final String path )
+        {
+            return matching( r -> r.path().equals( path ) );
+        }
+
+        public Query pathStartsWith( final String prefix )
+        {
+            return matching( r -> r.path().startsWith( prefix ) );
+        }
+
+        public Query status( final int status )
+        {
+            return matching( r -> r.status() == status );
+        }
+
+        public Query header( final String name, final String value )
+        {
+            return matching( r -> value.equals( r.header( name ) ) );
+        }
+
+        /**
+         * Only match records after the given sequence number, e.g. from a record taken earlier in the test.
+         */
+        public Query after( final long sequence )
+        {
+            return matching( r -> r.sequence() > sequence );
+        }
+
+        public Query matching( final Predicate<RequestRecord> condition )
+        {
+            filter = filter.and( condition );
+            return this;
+        }
+
+        public List<RequestRecord> list()
+        {
+            return find( filter );
+        }
+
+        public int count()
+        {
+            return list().size();
+        }
+
+        /**
+         * @return the oldest matching record, or null
+         */
+        public RequestRecord first()
+        {
+            final List<RequestRecord> records = list();
+            return records.isEmpty() ? null : records.get( 0 );
+        }
+
+        /**
+         * @return the most recent matching record, or null
+         */
+        public RequestRecord last()
+        {
+            final List<RequestRecord> records = list();
+            return records.isEmpty() ? null : records.get( records.size() - 1 );
+        }
+    }
+
+    private static final class Slot
+    {
+        private volatile long seq = -1;
+
+        private long startNanos;
+
+        private long endNanos;
+
+        private String method;
+
+        private String path;
+
+        private String query;
+
+        private int status;
+
+        private long bytesIn;
+
+        private long bytesOut;
+
+        private final String[] headers;
+
+        private Slot( final int headers )
+        {
+            this.headers = new String[headers];
+        }
+    }
+}
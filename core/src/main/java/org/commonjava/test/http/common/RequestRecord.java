@@ -0,0 +1,180 @@
+/**
+ * Copyright (C) 2011-2024 Red Hat, Inc. (https://github.com/Commonjava/http-testserver)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.test.http.common;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * One request as recorded in a {@link RequestJournal}.
+ */
+public final class RequestRecord
+{
+    private final long sequence;
+
+    private final long startNanos;
+
+    private final long endNanos;
+
+    private final String method;
+
+    private final String path;
+
+    private final String query;
+
+    private final int status;
+
+    private final long bytesIn;
+
+    private final long bytesOut;
+
+    private final Map<String, String> headers;
+
+    RequestRecord( final long sequence, final long startNanos, final long endNanos, final String method,
+                   final String path, final String query, final int status, final long bytesIn, final long bytesOut,
+                   final String[] headerNames, final String[] headerValues )
+    {
+        this.sequence = sequence;
+        this.startNanos = startNanos;
+        this.endNanos = endNanos;
+        this.method = method;
+        this.path = path;
+        this.query = query;
+        this.status = status;
+        this.bytesIn = bytesIn;
+        this.bytesOut = bytesOut;
+
+        if ( headerNames.length == 0 )
+        {
+            this.headers = Collections.emptyMap();
+        }
+        else
+        {
+            final Map<String, String> headers = new LinkedHashMap<>();
+            for ( int i = 0; i < headerNames.length; i++ )
+            {
+                if ( headerValues[i] != null )
+                {
+                    headers.put( headerNames[i], headerValues[i] );
+                }
+            }
+            this.headers = Collections.unmodifiableMap( headers );
+        }
+    }
+
+    /**
+     * @return the order in which the request completed, starting at 0 for the first request the server handled
+     */
+    public long sequence()
+    {
+        return sequence;
+    }
+
+    /**
+     * @return {@link System#nanoTime()} when the server started handling the request
+     */
+    public long startNanos()
+    {
+        return startNanos;
+    }
+
+    /**
+     * @return {@link System#nanoTime()} when the response was complete
+     */
+    public long endNanos()
+    {
+        return endNanos;
+    }
+
+    public long durationNanos()
+    {
+        return endNanos - startNanos;
+    }
+
+    public String method()
+    {
+        return method;
+    }
+
+    /**
+     * @return the request URI, without query string
+     */
+    public String path()
+    {
+        return path;
+    }
+
+    /**
+     * @return the query string, or null if there was none
+     */
+    public String query()
+    {
+        return query;
+    }
+
+    public int status()
+    {
+        return status;
+    }
+
+    /**
+     * @return request body bytes read by the server
+     */
+    public long bytesIn()
+    {
+        return bytesIn;
+    }
+
+    /**
+     * @return response bytes sent, including headers
+     */
+    public long bytesOut()
+    {
+        return bytesOut;
+    }
+
+    /**
+     * @return the value of a header selected for recording, or null if it wasn't selected or sent
+     */
+    public String header( final String name )
+    {
+        for ( Map.Entry<String, String> e : headers.entrySet() )
+        {
+            if ( e.getKey().equalsIgnoreCase( name ) )
+            {
+                return e.getValue();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the recorded headers, keyed by the names they were selected with
+     */
+    public Map<String, String> headers()
+    {
+        return headers;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "RequestRecord{#" + sequence + " " + method + " " + path + ( query == null ? "" : "?" + query ) + " -> "
+                + status + ", in=" + bytesIn + ", out=" + bytesOut + ", " + durationNanos() / 1000 + "us" + (
+                headers.isEmpty() ? "" : ", headers=" + headers ) + '}';
+    }
+}
@@ -0,0 +1,274 @@
+/**
+ * Copyright (C) 2011-2024 Red Hat, Inc. (https://github.com/Commonjava/http-testserver)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.test.http.common;
+
+import io.undertow.server.HttpServerExchange;
+import io.undertow.servlet.handlers.ServletRequestContext;
+import io.undertow.util.AttachmentKey;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency and throughput of one route: time to first byte and total service time as HdrHistograms in microseconds
+ * (two significant digits, up to ten minutes), plus requests, bytes received and served, and requests in flight.
+ * <p>
+ * Recording goes through HdrHistogram {@link Recorder}s and adders, which don't allocate or lock, so it is safe on the
+ * IO threads. {@link #snapshot()} folds the recorded intervals into running totals.
+ */
+public final class RouteMetrics
+{
+    /**
+     * The metrics the exchange is counted against; replaced once the exchange is dispatched to a route.
+     */
+    public static final AttachmentKey<RouteMetrics> ATTACHMENT = AttachmentKey.create( RouteMetrics.class );
+
+    public static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.MINUTES.toMicros( 10 );
+
+    private static final int SIGNIFICANT_DIGITS = 2;
+
+    private final String key;
+
+    private final Recorder firstByte = newRecorder();
+
+    private final Recorder service = newRecorder();
+
+    private final LongAdder requests = new LongAdder();
+
+    private final LongAdder bytes = new LongAdder();
+
+    private final LongAdder bytesReceived = new LongAdder();
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final LongAccumulator peakInFlight = new LongAccumulator( Math::max, 0 );
+
+    // guarded by this; created on the first snapshot, so routes that are never read cost only the recorders
+    private Histogram firstByteTotal;
+
+    private Histogram serviceTotal;
+
+    private Histogram firstByteInterval;
+
+    private Histogram serviceInterval;
+
+    RouteMetrics( final String key )
+    {
+        this.key = key;
+    }
+
+    private static Recorder newRecorder()
+    {
+        return new Recorder( 1, HIGHEST_TRACKABLE_MICROS, SIGNIFICANT_DIGITS );
+    }
+
+    public String key()
+    {
+        return key;
+    }
+
+    /**
+     * Count the exchange against this route, moving it from whatever it was counted against before (normally the
+     * server's {@link ServerMetrics#UNMATCHED} bucket).
+     */
+    public void attach( final HttpServerExchange exchange )
+    {
+        final RouteMetrics previous = exchange.putAttachment( ATTACHMENT, this );
+        if ( previous == this )
+        {
+            return;
+        }
+        if ( previous != null )
+        {
+            previous.inFlight.decrementAndGet();
+        }
+        peakInFlight.accumulate( inFlight.incrementAndGet() );
+    }
+
+    /**
+     * {@link #attach(HttpServerExchange)} the exchange of the servlet request being handled on this thread, if any.
+     */
+    public void attachCurrent()
+    {
+        final ServletRequestContext context = ServletRequestContext.current();
+        if ( context != null )
+        {
+            attach( context.getExchange() );
+        }
+    }
+
+    void firstByte( final long nanos )
+    {
+        firstByte.recordValue( micros( nanos ) );
+    }
+
+    void complete( final long nanos, final long bytesRead, final long bytesSent )
+    {
+        if ( nanos >= 0 )
+        {
+            service.recordValue( micros( nanos ) );
+        }
+        requests.increment();
+        bytesReceived.add( Math.max( bytesRead, 0 ) );
+        bytes.add( Math.max( bytesSent, 0 ) );
+        inFlight.decrementAndGet();
+    }
+
+    private static long micros( final long nanos )
+    {
+        return Math.min( Math.max( nanos / 1000, 0 ), HIGHEST_TRACKABLE_MICROS );
+    }
+
+    public synchronized Snapshot snapshot()
+    {
+        drain();
+        return new Snapshot( key, requests.sum(), bytesReceived.sum(), bytes.sum(), inFlight.get(),
+                             peakInFlight.get(), firstByteTotal.copy(), serviceTotal.copy() );
+    }
+
+    /**
+     * Zero the histograms and counters. Requests in flight stay counted, and are recorded when they complete.
+     */
+    public synchronized void reset()
+    {
+        drain();
+        firstByteTotal.reset();
+        serviceTotal.reset();
+        requests.reset();
+        bytesReceived.reset();
+        bytes.reset();
+        peakInFlight.reset();
+        peakInFlight.accumulate( inFlight.get() );
+    }
+
+    private void drain()
+    {
+        firstByteInterval = firstByte.getIntervalHistogram( firstByteInterval );
+        serviceInterval = service.getIntervalHistogram( serviceInterval );
+        if ( firstByteTotal == null )
+        {
+            firstByteTotal = new Histogram( 1, HIGHEST_TRACKABLE_MICROS, SIGNIFICANT_DIGITS );
+            serviceTotal = new Histogram( 1, HIGHEST_TRACKABLE_MICROS, SIGNIFICANT_DIGITS );
+        }
+        firstByteTotal.add( firstByteInterval );
+        serviceTotal.add( serviceInterval );
+    }
+
+    /**
+     * Point-in-time copy of a route's metrics. The histograms are in microseconds.
+     */
+    public static final class Snapshot
+    {
+        private final String key;
+
+        private final long requests;
+
+        private final long bytesReceived;
+
+        private final long bytesServed;
+
+        private final int inFlight;
+
+        private final long peakInFlight;
+
+        private final Histogram firstByte;
+
+        private final Histogram service;
+
+        private Snapshot( final String key, final long requests, final long bytesReceived, final long bytesServed,
+                          final int inFlight, final long peakInFlight, final Histogram firstByte,
+                          final Histogram service )
+        {
+            this.key = key;
+            this.requests = requests;
+            this.bytesReceived = bytesReceived;
+            this.bytesServed = bytesServed;
+            this.inFlight = inFlight;
+            this.peakInFlight = peakInFlight;
+            this.firstByte = firstByte;
+            this.service = service;
+        }
+
+        /**
+         * @return the route's method and path, or {@link ServerMetrics#UNMATCHED}
+         */
+        public String key()
+        {
+            return key;
+        }
+
+        /**
+         * @return the number of completed requests
+         */
+        public long requests()
+        {
+            return requests;
+        }
+
+        /**
+         * @return request body bytes read
+         */
+        public long bytesReceived()
+        {
+            return bytesReceived;
+        }
+
+        public long bytesServed()
+        {
+            return bytesServed;
+        }
+
+        public int inFlight()
+        {
+            return inFlight;
+        }
+
+        public long peakInFlight()
+        {
+            return peakInFlight;
+        }
+
+        /**
+         * @return time from the start of the request to the response being committed, in microseconds
+         */
+        public Histogram firstByte()
+        {
+            return firstByte;
+        }
+
+        /**
+         * @return time from the start of the request to the end of the response, in microseconds
+         */
+        public Histogram service()
+        {
+            return service;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format( "%s: %d requests, %d bytes, %d in flight (peak %d), first byte p50/p99 %d/%d us, "
+                                          + "service p50/p99 %d/%d us", key, requests, bytesServed, inFlight,
+                                  peakInFlight, firstByte.getValueAtPercentile( 50 ),
+                                  firstByte.getValueAtPercentile( 99 ), service.getValueAtPercentile( 50 ),
+                                  service.getValueAtPercentile( 99 ) );
+        }
+    }
+}
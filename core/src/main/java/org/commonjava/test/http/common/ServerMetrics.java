@@ -0,0 +1,119 @@
+/**
+ * Copyright (C) 2011-2024 Red Hat, Inc. (https://github.com/Commonjava/http-testserver)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.test.http.common;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The {@link RouteMetrics} of one server, keyed by route. Requests that match no route are counted under
+ * {@link #UNMATCHED}.
+ */
+public final class ServerMetrics
+{
+    public static final String UNMATCHED = "UNMATCHED";
+
+    private static final int MAX_STATUS = 599;
+
+    private final ConcurrentMap<String, RouteMetrics> routes = new ConcurrentHashMap<>();
+
+    private final AtomicLongArray statuses = new AtomicLongArray( MAX_STATUS + 1 );
+
+    /**
+     * Return the metrics for a route key, creating them on first use. Callers that see the same route repeatedly can
+     * hold on to the result and skip the lookup.
+     */
+    public RouteMetrics route( final String key )
+    {
+        final RouteMetrics metrics = routes.get( key );
+        if ( metrics != null )
+        {
+            return metrics;
+        }
+
+        return routes.computeIfAbsent( key, RouteMetrics::new );
+    }
+
+    public RouteMetrics unmatched()
+    {
+        return route( UNMATCHED );
+    }
+
+    void countStatus( final int status )
+    {
+        if ( status >= 0 && status <= MAX_STATUS )
+        {
+            statuses.incrementAndGet( status );
+        }
+    }
+
+    /**
+     * @return the number of responses sent with each status code, for codes that have been sent
+     */
+    public Map<Integer, Long> statusCounts()
+    {
+        final Map<Integer, Long> result = new TreeMap<>();
+        for ( int i = 0; i <= MAX_STATUS; i++ )
+        {
+            final long count = statuses.get( i );
+            if ( count > 0 )
+            {
+                result.put( i, count );
+            }
+        }
+        return Collections.unmodifiableMap( result );
+    }
+
+    /**
+     * @return a point-in-time snapshot of every route that has been requested, sorted by key
+     */
+    public Map<String, RouteMetrics.Snapshot> snapshot()
+    {
+        final Map<String, RouteMetrics.Snapshot> result = new TreeMap<>();
+        routes.forEach( ( key, metrics ) -> result.put( key, metrics.snapshot() ) );
+        return Collections.unmodifiableMap( result );
+    }
+
+    /**
+     * Zero all routes' metrics, e.g. between the warm-up and measured phases of a test. Routes stay attached.
+     */
+    public void reset()
+    {
+        routes.values().forEach( RouteMetrics::reset );
+        resetStatuses();
+    }
+
+    private void resetStatuses()
+    {
+        for ( int i = 0; i <= MAX_STATUS; i++ )
+        {
+            statuses.set( i, 0 );
+        }
+    }
+
+    /**
+     * Drop all routes. Unlike {@link #reset()}, metrics handed out earlier are detached and no longer reported.
+     */
+    public void clear()
+    {
+        routes.clear();
+        resetStatuses();
+    }
+}
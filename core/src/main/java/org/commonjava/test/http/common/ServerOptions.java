@@ -0,0 +1,413 @@
+/**
+ * Copyright (C) 2011-2024 Red Hat, Inc. (https://github.com/Commonjava/http-testserver)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.test.http.common;
+
+import io.undertow.Undertow;
+import io.undertow.UndertowOptions;
+import io.undertow.connector.ByteBufferPool;
+import io.undertow.server.DefaultByteBufferPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xnio.OptionMap;
+import org.xnio.Options;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tuning for the Undertow instance behind a test server: thread counts, buffers, backlog and timeouts, and where
+ * blocking request handling runs. Anything left unset keeps Undertow's default.
+ * <pre>
+ * ServerOptions options = ServerOptions.builder().ioThreads( 2 ).workerThreads( 200 ).virtualThreads( true ).build();
+ * ExpectationServer server = new ExpectationServer( "repos" ).withOptions( options ).start();
+ * </pre>
+ */
+public final class ServerOptions
+{
+    private static final ServerOptions DEFAULTS = builder().build();
+
+    private final Integer ioThreads;
+
+    private final Integer workerThreads;
+
+    private final Integer bufferSize;
+
+    private final Boolean directBuffers;
+
+    private final Integer backlog;
+
+    private final Integer idleTimeout;
+
+    private final Integer noRequestTimeout;
+
+    private final boolean virtualThreads;
+
+    private final Bandwidth bandwidthLimit;
+
+    private final int journalCapacity;
+
+    private final String[] journalHeaders;
+
+    private final boolean sharedRuntime;
+
+    private final String metricsPath;
+
+    private ServerOptions( final Builder builder )
+    {
+        this.ioThreads = builder.ioThreads;
+        this.workerThreads = builder.workerThreads;
+        this.bufferSize = builder.bufferSize;
+        this.directBuffers = builder.directBuffers;
+        this.backlog = builder.backlog;
+        this.idleTimeout = builder.idleTimeout;
+        this.noRequestTimeout = builder.noRequestTimeout;
+        this.virtualThreads = builder.virtualThreads;
+        this.bandwidthLimit = builder.bandwidthLimit;
+        this.journalCapacity = builder.journalCapacity;
+        this.journalHeaders = builder.journalHeaders;
+        this.sharedRuntime = builder.sharedRuntime;
+        this.metricsPath = builder.metricsPath;
+    }
+
+    public static Builder builder()
+    {
+        return new Builder();
+    }
+
+    public static ServerOptions defaults()
+    {
+        return DEFAULTS;
+    }
+
+    /**
+     * @return a new Undertow builder with these options applied
+     */
+    public Undertow.Builder undertowBuilder()
+    {
+        final Undertow.Builder builder = Undertow.builder();
+        if ( ioThreads != null )
+        {
+            builder.setIoThreads( ioThreads );
+        }
+        if ( workerThreads != null )
+        {
+            builder.setWorkerThreads( workerThreads );
+        }
+        if ( bufferSize != null )
+        {
+            builder.setBufferSize( bufferSize );
+        }
+        if ( directBuffers != null )
+        {
+            builder.setDirectBuffers( directBuffers );
+        }
+        if ( backlog != null )
+        {
+            builder.setSocketOption( Options.BACKLOG, backlog );
+        }
+        if ( idleTimeout != null )
+        {
+            builder.setServerOption( UndertowOptions.IDLE_TIMEOUT, idleTimeout );
+        }
+        if ( noRequestTimeout != null )
+        {
+            builder.setServerOption( UndertowOptions.NO_REQUEST_TIMEOUT, noRequestTimeout );
+        }
+
+        // the start time MetricsHandler measures from
+        builder.setServerOption( UndertowOptions.RECORD_REQUEST_START_TIME, true );
+        if ( metricsPath != null )
+        {
+            // connection counts for the OpenMetrics endpoint
+            builder.setServerOption( UndertowOptions.ENABLE_STATISTICS, true );
+        }
+
+        return builder;
+    }
+
+    /**
+     * @return a new Undertow builder with these options applied, attached to the shared runtime's worker and buffer
+     * pool if a lease is given
+     */
+    public Undertow.Builder undertowBuilder( final SharedRuntime.Lease runtime )
+    {
+        final Undertow.Builder builder = undertowBuilder();
+        if ( runtime != null )
+        {
+            builder.setWorker( runtime.worker() ).setByteBufferPool( runtime.bufferPool() );
+        }
+        return builder;
+    }
+
+    /**
+     * @return a lease on the shared runtime if these options enable it, otherwise null
+     */
+    public SharedRuntime.Lease acquireRuntime()
+    {
+        return sharedRuntime ? SharedRuntime.acquire( this ) : null;
+    }
+
+    OptionMap sharedWorkerOptions()
+    {
+        final int io = ioThreads != null ? ioThreads : Math.max( Runtime.getRuntime().availableProcessors(), 2 );
+        final int workers = workerThreads != null ? workerThreads : io * 8;
+        return OptionMap.builder()
+                        .set( Options.WORKER_NAME, "http-testserver-shared" )
+                        .set( Options.WORKER_IO_THREADS, io )
+                        .set( Options.WORKER_TASK_CORE_THREADS, workers )
+                        .set( Options.WORKER_TASK_MAX_THREADS, workers )
+                        .set( Options.TCP_NODELAY, true )
+                        .set( Options.CORK, true )
+                        .getMap();
+    }
+
+    ByteBufferPool createBufferPool()
+    {
+        return new DefaultByteBufferPool( directBuffers == null || directBuffers,
+                                          bufferSize == null ? 16 * 1024 - 20 : bufferSize );
+    }
+
+    /**
+     * Create the executor for blocking request handling (servlets and
+     * {@link org.commonjava.test.http.expect.ExpectationHandler}s), or return null to use the XNIO worker pool.
+     * <p>
+     * With {@link Builder#virtualThreads(boolean)} set, this is a virtual-thread-per-task executor on JDK 21+. Older
+     * JDKs get an unbounded pool of daemon threads instead, so slow handlers still can't exhaust the worker pool.
+     */
+    public ExecutorService createBlockingExecutor()
+    {
+        if ( !virtualThreads )
+        {
+            return null;
+        }
+
+        try
+        {
+            final Method factory = Executors.class.getMethod( "newVirtualThreadPerTaskExecutor" );
+            return (ExecutorService) factory.invoke( null );
+        }
+        catch ( final ReflectiveOperationException e )
+        {
+            final Logger logger = LoggerFactory.getLogger( getClass() );
+            logger.info( "Virtual threads are not available on Java {}; using a cached thread pool for blocking handlers",
+                         System.getProperty( "java.version" ) );
+
+            final AtomicInteger count = new AtomicInteger();
+            return Executors.newCachedThreadPool( r -> {
+                final Thread t = new Thread( r, "http-testserver-blocking-" + count.incrementAndGet() );
+                t.setDaemon( true );
+                return t;
+            } );
+        }
+    }
+
+    /**
+     * @return a new, empty request journal with the configured capacity and recorded headers
+     */
+    public RequestJournal createJournal()
+    {
+        return new RequestJournal( journalCapacity, journalHeaders );
+    }
+
+    public boolean isSharedRuntime()
+    {
+        return sharedRuntime;
+    }
+
+    /**
+     * @return the path the OpenMetrics endpoint is served on, or null if it is disabled
+     */
+    public String getMetricsPath()
+    {
+        return metricsPath;
+    }
+
+    public boolean isVirtualThreads()
+    {
+        return virtualThreads;
+    }
+
+    /**
+     * @return the cap on the bandwidth shared by all responses from a server, or null for none
+     */
+    public Bandwidth getBandwidthLimit()
+    {
+        return bandwidthLimit;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "ServerOptions{" + "ioThreads=" + ioThreads + ", workerThreads=" + workerThreads + ", bufferSize="
+                + bufferSize + ", directBuffers=" + directBuffers + ", backlog=" + backlog + ", idleTimeout="
+                + idleTimeout + ", noRequestTimeout=" + noRequestTimeout + ", virtualThreads=" + virtualThreads + ", bandwidthLimit="
+                + bandwidthLimit + ", sharedRuntime=" + sharedRuntime + ", journalCapacity=" + journalCapacity + ", journalHeaders=" + Arrays.toString(
+                journalHeaders ) + ", metricsPath=" + metricsPath + '}';
+    }
+
+    public static final class Builder
+    {
+        private Integer ioThreads;
+
+        private Integer workerThreads;
+
+        private Integer bufferSize;
+
+        private Boolean directBuffers;
+
+        private Integer backlog;
+
+        private Integer idleTimeout;
+
+        private Integer noRequestTimeout;
+
+        private boolean virtualThreads;
+
+        private Bandwidth bandwidthLimit;
+
+        private int journalCapacity = RequestJournal.DEFAULT_CAPACITY;
+
+        private String[] journalHeaders = new String[0];
+
+        private boolean sharedRuntime = Boolean.getBoolean( SharedRuntime.SHARED_RUNTIME_PROPERTY );
+
+        private String metricsPath;
+
+        private Builder()
+        {
+        }
+
+        public Builder ioThreads( final int ioThreads )
+        {
+            this.ioThreads = ioThreads;
+            return this;
+        }
+
+        public Builder workerThreads( final int workerThreads )
+        {
+            this.workerThreads = workerThreads;
+            return this;
+        }
+
+        /**
+         * Size in bytes of each pooled IO buffer.
+         */
+        public Builder bufferSize( final int bufferSize )
+        {
+            this.bufferSize = bufferSize;
+            return this;
+        }
+
+        public Builder directBuffers( final boolean directBuffers )
+        {
+            this.directBuffers = directBuffers;
+            return this;
+        }
+
+        /**
+         * Length of the listen queue for connections that haven't been accepted yet.
+         */
+        public Builder backlog( final int backlog )
+        {
+            this.backlog = backlog;
+            return this;
+        }
+
+        /**
+         * Milliseconds a connection may sit idle before it is closed.
+         */
+        public Builder idleTimeout( final int idleTimeout )
+        {
+            this.idleTimeout = idleTimeout;
+            return this;
+        }
+
+        /**
+         * Milliseconds a connection may stay open without sending a request before it is closed.
+         */
+        public Builder noRequestTimeout( final int noRequestTimeout )
+        {
+            this.noRequestTimeout = noRequestTimeout;
+            return this;
+        }
+
+        /**
+         * Run blocking handlers on a virtual thread per request (JDK 21+), falling back to an unbounded thread pool on
+         * older JDKs. See {@link ServerOptions#createBlockingExecutor()}.
+         */
+        public Builder virtualThreads( final boolean virtualThreads )
+        {
+            this.virtualThreads = virtualThreads;
+            return this;
+        }
+
+        /**
+         * Cap the bandwidth shared by all response bodies a server sends. Bodies are then written in chunks of the
+         * bandwidth's chunk size, with pauses scheduled on the IO-thread timer.
+         */
+        public Builder bandwidthLimit( final Bandwidth bandwidthLimit )
+        {
+            this.bandwidthLimit = bandwidthLimit;
+            return this;
+        }
+
+        /**
+         * Number of requests kept in the server's {@link RequestJournal}; older ones are overwritten.
+         */
+        public Builder journalCapacity( final int journalCapacity )
+        {
+            this.journalCapacity = journalCapacity;
+            return this;
+        }
+
+        /**
+         * Request headers to record in the journal. None are recorded by default.
+         */
+        public Builder journalHeaders( final String... journalHeaders )
+        {
+            this.journalHeaders = journalHeaders.clone();
+            return this;
+        }
+
+        /**
+         * Attach the server to the JVM-wide {@link SharedRuntime} instead of starting its own IO threads, worker pool
+         * and buffer pool. Defaults to the <code>http-testserver.shared-runtime</code> system property.
+         */
+        public Builder sharedRuntime( final boolean sharedRuntime )
+        {
+            this.sharedRuntime = sharedRuntime;
+            return this;
+        }
+
+        /**
+         * Serve the server's metrics in OpenMetrics text format on this path (e.g.
+         * {@value OpenMetricsHandler#DEFAULT_PATH}) for Prometheus to scrape. Disabled by default.
+         */
+        public Builder metricsPath( final String metricsPath )
+        {
+            this.metricsPath = metricsPath == null || metricsPath.startsWith( "/" ) ? metricsPath : "/" + metricsPath;
+            return this;
+        }
+
+        public ServerOptions build()
+        {
+            return new ServerOptions( this );
+        }
+    }
+}
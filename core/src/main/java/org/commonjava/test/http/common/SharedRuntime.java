@@ -0,0 +1,143 @@
+/**
+ * Copyright (C) 2011-2024 Red Hat, Inc. (https://github.com/Commonjava/http-testserver)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.test.http.common;
+
+import io.undertow.Undertow;
+import io.undertow.connector.ByteBufferPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xnio.Xnio;
+import org.xnio.XnioWorker;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * One XNIO worker and one byte buffer pool for all test servers in the JVM that enable
+ * {@link ServerOptions.Builder#sharedRuntime(boolean)}. Each server holds a {@link Lease} while it runs; the worker
+ * and pool are created by the first lease and shut down when the last one is closed.
+ * <p>
+ * Thread counts and buffer settings come from the options of the server that creates the runtime.
+ */
+public final class SharedRuntime
+{
+    public static final String SHARED_RUNTIME_PROPERTY = "http-testserver.shared-runtime";
+
+    private static final Object LOCK = new Object();
+
+    private static XnioWorker worker;
+
+    private static ByteBufferPool bufferPool;
+
+    private static int leases;
+
+    private SharedRuntime()
+    {
+    }
+
+    public static Lease acquire( final ServerOptions options )
+    {
+        synchronized ( LOCK )
+        {
+            if ( leases == 0 )
+            {
+                try
+                {
+                    worker = Xnio.getInstance( Undertow.class.getClassLoader() )
+                                 .createWorker( options.sharedWorkerOptions() );
+                }
+                catch ( final IOException e )
+                {
+                    throw new IllegalStateException( "Failed to start shared XNIO worker: " + e.getMessage(), e );
+                }
+                bufferPool = options.createBufferPool();
+
+                final Logger logger = LoggerFactory.getLogger( SharedRuntime.class );
+                logger.info( "Started shared runtime: {}, {}", worker, bufferPool );
+            }
+
+            leases++;
+            return new Lease( worker, bufferPool );
+        }
+    }
+
+    /**
+     * @return the number of open leases
+     */
+    public static int leases()
+    {
+        synchronized ( LOCK )
+        {
+            return leases;
+        }
+    }
+
+    private static void release()
+    {
+        synchronized ( LOCK )
+        {
+            if ( --leases == 0 )
+            {
+                worker.shutdown();
+                bufferPool.close();
+
+                final Logger logger = LoggerFactory.getLogger( SharedRuntime.class );
+                logger.info( "Stopped shared runtime: {}", worker );
+
+                worker = null;
+                bufferPool = null;
+            }
+        }
+    }
+
+    /**
+     * A server's hold on the shared runtime. Close it after the server has stopped.
+     */
+    public static final class Lease
+            implements AutoCloseable
+    {
+        private final XnioWorker worker;
+
+        private final ByteBufferPool bufferPool;
+
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        private Lease( final XnioWorker worker, final ByteBufferPool bufferPool )
+        {
+            this.worker = worker;
+            this.bufferPool = bufferPool;
+        }
+
+        public XnioWorker worker()
+        {
+            return worker;
+        }
+
+        public ByteBufferPool bufferPool()
+        {
+            return bufferPool;
+        }
+
+        @Override
+        public void close()
+        {
+            if ( closed.compareAndSet( false, true ) )
+            {
+                release();
+            }
+        }
+    }
+}
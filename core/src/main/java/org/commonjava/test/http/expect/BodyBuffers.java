@@ -0,0 +1,149 @@
+/**
+ * Copyright (C) 2011-2024 Red Hat, Inc. (https://github.com/Commonjava/http-testserver)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.test.http.expect;
+
+import io.undertow.io.BufferWritableOutputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Helpers shared by the buffer-backed {@link ResponseBody} implementations.
+ */
+final class BodyBuffers
+{
+    /**
+     * Largest region mapped at once. A single MappedByteBuffer can't exceed 2 GiB.
+     */
+    static final long MAX_SEGMENT = 1L << 30;
+
+    private static final int COPY_CHUNK = 8192;
+
+    // body views are read-only and never expose their array, so plain streams are written through this
+    private static final ThreadLocal<byte[]> COPY_BUFFER = ThreadLocal.withInitial( () -> new byte[COPY_CHUNK] );
+
+    private BodyBuffers()
+    {
+    }
+
+    static ByteBuffer[] duplicates( final ByteBuffer[] buffers )
+    {
+        final ByteBuffer[] result = new ByteBuffer[buffers.length];
+        for ( int i = 0; i < buffers.length; i++ )
+        {
+            result[i] = buffers[i].duplicate();
+        }
+        return result;
+    }
+
+    static long length( final ByteBuffer[] buffers )
+    {
+        long length = 0;
+        for ( ByteBuffer buffer : buffers )
+        {
+            length += buffer.remaining();
+        }
+        return length;
+    }
+
+    /**
+     * Write a view of the buffer. Undertow's servlet and exchange streams take the buffer directly; anything else goes
+     * through a copy buffer kept per thread.
+     */
+    static void write( final ByteBuffer view, final OutputStream out )
+            throws IOException
+    {
+        if ( out instanceof BufferWritableOutputStream )
+        {
+            ( (BufferWritableOutputStream) out ).write( view );
+            return;
+        }
+
+        final byte[] chunk = COPY_BUFFER.get();
+        while ( view.hasRemaining() )
+        {
+            final int len = Math.min( chunk.length, view.remaining() );
+            view.get( chunk, 0, len );
+            out.write( chunk, 0, len );
+        }
+    }
+
+    /**
+     * Map the first <code>size</code> bytes of the channel read-only, in segments of at most {@link #MAX_SEGMENT}.
+     */
+    static ByteBuffer[] map( final FileChannel channel, final long size )
+            throws IOException
+    {
+        final int count = (int) Math.max( 1, ( size + MAX_SEGMENT - 1 ) / MAX_SEGMENT );
+        final ByteBuffer[] segments = new ByteBuffer[count];
+        for ( int i = 0; i < count; i++ )
+        {
+            final long offset = i * MAX_SEGMENT;
+            final long len = Math.min( MAX_SEGMENT, size - offset );
+            segments[i] = channel.map( FileChannel.MapMode.READ_ONLY, offset, len ).asReadOnlyBuffer();
+        }
+        return segments;
+    }
+
+    /**
+     * Read-only stream over views of the buffers, for callers that still want an InputStream.
+     */
+    static InputStream stream( final ByteBuffer[] views )
+    {
+        return new InputStream()
+        {
+            private int idx;
+
+            @Override
+            public int read()
+            {
+                final ByteBuffer current = current();
+                return current == null ? -1 : current.get() & 0xff;
+            }
+
+            @Override
+            public int read( final byte[] b, final int off, final int len )
+            {
+                if ( len == 0 )
+                {
+                    return 0;
+                }
+
+                final ByteBuffer current = current();
+                if ( current == null )
+                {
+                    return -1;
+                }
+
+                final int n = Math.min( len, current.remaining() );
+                current.get( b, off, n );
+                return n;
+            }
+
+            private ByteBuffer current()
+            {
+                while ( idx < views.length && !views[idx].hasRemaining() )
+                {
+                    idx++;
+                }
+                return idx < views.length ? views[idx] : null;
+            }
+        };
+    }
+}
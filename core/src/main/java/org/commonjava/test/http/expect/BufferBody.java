@@ -0,0 +1,141 @@
+/**
+ * Copyright (C) 2011-2024 Red Hat, Inc. (https://github.com/Commonjava/http-testserver)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.test.http.expect;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * {@link ResponseBody} held in a single, immutable buffer, encoded once up front. Heap bodies are written straight
+ * from their backing array; direct bodies can be handed to the connection without copying them onto the heap.
+ */
+public final class BufferBody
+        implements ResponseBody
+{
+    public static final String DEFAULT_TEXT_TYPE = "text/plain";
+
+    private final ByteBuffer buffer;
+
+    private final byte[] bytes;
+
+    private final String contentType;
+
+    private BufferBody( final ByteBuffer buffer, final byte[] bytes, final String contentType )
+    {
+        this.buffer = buffer.asReadOnlyBuffer();
+        this.bytes = bytes;
+        this.contentType = contentType;
+    }
+
+    /**
+     * Encode text as text/plain in UTF-8.
+     */
+    public static BufferBody of( final String text )
+    {
+        return of( text, null );
+    }
+
+    /**
+     * Encode text with the charset named in the content type. If the content type is null it defaults to text/plain,
+     * and if it names no charset the text is encoded in UTF-8 and the charset is added to it.
+     */
+    public static BufferBody of( final String text, final String contentType )
+    {
+        final String type = contentType == null ? DEFAULT_TEXT_TYPE : contentType;
+        Charset charset = charsetOf( type );
+        String declared = type;
+        if ( charset == null )
+        {
+            charset = StandardCharsets.UTF_8;
+            declared = type + ";charset=" + charset.name();
+        }
+
+        return of( text.getBytes( charset ), declared );
+    }
+
+    /**
+     * Wrap the bytes as-is. The array must not be modified afterward.
+     */
+    public static BufferBody of( final byte[] bytes, final String contentType )
+    {
+        return new BufferBody( ByteBuffer.wrap( bytes ), bytes, contentType );
+    }
+
+    /**
+     * Copy the bytes into a direct buffer, for bodies that are large or served very often.
+     */
+    public static BufferBody direct( final byte[] bytes, final String contentType )
+    {
+        final ByteBuffer direct = ByteBuffer.allocateDirect( bytes.length );
+        direct.put( bytes ).flip();
+        return new BufferBody( direct, null, contentType );
+    }
+
+    @Override
+    public long length()
+    {
+        return buffer.remaining();
+    }
+
+    @Override
+    public String contentType()
+    {
+        return contentType;
+    }
+
+    @Override
+    public ByteBuffer[] buffers()
+    {
+        return new ByteBuffer[] { buffer.duplicate() };
+    }
+
+    @Override
+    public void writeTo( final OutputStream out )
+            throws IOException
+    {
+        if ( bytes != null )
+        {
+            out.write( bytes );
+            return;
+        }
+
+        BodyBuffers.write( buffer.duplicate(), out );
+    }
+
+    private static Charset charsetOf( final String contentType )
+    {
+        for ( String param : contentType.split( ";" ) )
+        {
+            final String p = param.trim();
+            if ( p.regionMatches( true, 0, "charset=", 0, 8 ) )
+            {
+                return Charset.forName( p.substring( 8 ).replace( "\"", "" ).trim() );
+            }
+        }
+
+        return null;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "BufferBody{length=" + length() + ", contentType='" + contentType + "', direct=" + buffer.isDirect()
+                + "}";
+    }
+}
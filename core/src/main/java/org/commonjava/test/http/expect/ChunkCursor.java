@@ -0,0 +1,139 @@
+/**
+ * Copyright (C) 2011-2024 Red Hat, Inc. (https://github.com/Commonjava/http-testserver)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.test.http.expect;
+
+import org.commonjava.test.http.common.PacedWriter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Walks views of a body's buffers in slices of at most <code>chunkSize</code> bytes, without copying. A body generated
+ * from a repeated block, like {@link SyntheticBody}, is walked over one view of the block that is rewound as often as
+ * needed, so bodies of any length can be paced.
+ */
+final class ChunkCursor
+        implements PacedWriter.ChunkSource
+{
+    private final ByteBuffer[] views;
+
+    private final int chunkSize;
+
+    // the repeated block, or null
+    private final ByteBuffer block;
+
+    // bytes of a repeated body not yet covered by the view
+    private long unviewed;
+
+    private int idx;
+
+    ChunkCursor( final ByteBuffer[] views, final int chunkSize )
+    {
+        this( views, chunkSize, null, 0 );
+    }
+
+    private ChunkCursor( final ByteBuffer[] views, final int chunkSize, final ByteBuffer block, final long length )
+    {
+        this.views = views;
+        this.chunkSize = chunkSize;
+        this.block = block;
+        this.unviewed = length;
+    }
+
+    /**
+     * @return a cursor over <code>length</code> bytes made of the block's remaining bytes repeated
+     */
+    static ChunkCursor repeating( final ByteBuffer block, final long length, final int chunkSize )
+    {
+        final ByteBuffer view = block.duplicate();
+        view.limit( view.position() );
+        return new ChunkCursor( new ByteBuffer[] { view }, chunkSize, block, length );
+    }
+
+    /**
+     * @return a cursor over the body, or null if it is neither generated from a block nor held in buffers
+     */
+    static ChunkCursor of( final ResponseBody body, final int chunkSize )
+    {
+        if ( body instanceof SyntheticBody )
+        {
+            return ( (SyntheticBody) body ).chunks( chunkSize );
+        }
+
+        final ByteBuffer[] views = body.buffers();
+        return views == null ? null : new ChunkCursor( views, chunkSize );
+    }
+
+    @Override
+    public boolean hasNext()
+    {
+        while ( idx < views.length && !views[idx].hasRemaining() )
+        {
+            if ( unviewed > 0 )
+            {
+                // previous slices are duplicates, so the view can be rewound under them
+                final int size = (int) Math.min( block.remaining(), unviewed );
+                views[idx].limit( block.position() + size ).position( block.position() );
+                unviewed -= size;
+            }
+            else
+            {
+                idx++;
+            }
+        }
+
+        return idx < views.length;
+    }
+
+    /**
+     * @return the next slice, or null once the body is exhausted
+     */
+    ByteBuffer next()
+    {
+        if ( !hasNext() )
+        {
+            return null;
+        }
+
+        final ByteBuffer current = views[idx];
+        final int len = Math.min( chunkSize, current.remaining() );
+        final ByteBuffer slice = current.duplicate();
+        slice.limit( slice.position() + len );
+        current.position( current.position() + len );
+        return slice;
+    }
+
+    @Override
+    public int writeNext( final OutputStream out )
+            throws IOException
+    {
+        final ByteBuffer chunk = next();
+        if ( chunk == null )
+        {
+            return 0;
+        }
+
+        final int size = chunk.remaining();
+        BodyBuffers.write( chunk, out );
+        return size;
+    }
+
+    @Override
+    public void close()
+    {
+    }
+}
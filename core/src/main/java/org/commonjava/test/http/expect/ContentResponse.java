@@ -21,10 +21,10 @@ public final class ContentResponse
 {
     private final Integer code;
 
-    private final InputStream bodyStream;
-
     private final String body;
 
+    private final ResponseBody content;
+
     private final String path;
 
     private final ExpectationHandler handler;
@@ -32,23 +32,29 @@ public final class ContentResponse
     private final String method;
 
     ContentResponse( final String method, final String path, final int code, final String body )
+    {
+        this( method, path, code, body, null );
+    }
+
+    ContentResponse( final String method, final String path, final int code, final String body,
+                     final String contentType )
     {
         this.method = method;
         this.path = path;
         this.code = code;
         this.body = body;
-        this.bodyStream = null;
+        this.content = body == null ? null : BufferBody.of( body, contentType );
         handler = null;
     }
 
-    ContentResponse( final String method, final String path, final int code, final InputStream bodyStream )
+    ContentResponse( final String method, final String path, final int code, final ResponseBody content )
     {
         this.method = method;
         this.path = path;
         this.code = code;
         this.body = null;
+        this.content = content;
         handler = null;
-        this.bodyStream = bodyStream;
     }
 
     ContentResponse( String method, String path, ExpectationHandler handler )
@@ -57,7 +63,7 @@ public final class ContentResponse
         this.path = path;
         this.handler = handler;
         this.body = null;
-        this.bodyStream = null;
+        this.content = null;
         code = null;
     }
 
@@ -81,9 +87,22 @@ public final class ContentResponse
         return body;
     }
 
+    /**
+     * @return the pre-encoded body served for this response, or null if it has none
+     */
+    public ResponseBody content()
+    {
+        return content;
+    }
+
+    /**
+     * @return a new stream over the captured body if this response was registered with an InputStream, otherwise null
+     * @deprecated stream bodies are captured at registration and replayed from {@link #content()}
+     */
+    @Deprecated
     public InputStream bodyStream()
     {
-        return bodyStream;
+        return content instanceof SpooledBody ? BodyBuffers.stream( content.buffers() ) : null;
     }
 
     public ExpectationHandler handler()
@@ -96,8 +115,8 @@ public final class ContentResponse
     {
         return "ContentResponse{" +
                 "\n\tcode=" + code +
-                "\n\tbodyStream=" + bodyStream +
                 "\n\tbody='" + body + '\'' +
+                "\n\tcontent=" + content +
                 "\n\tpath='" + path + '\'' +
                 "\n\thandler=" + handler +
                 "\n\tmethod='" + method + '\'' +
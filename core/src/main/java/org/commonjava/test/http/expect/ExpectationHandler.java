@@ -19,6 +19,7 @@ import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.util.Map;
 
 /**
  * Created by jdcasey on 11/11/15.
@@ -28,4 +29,15 @@ public interface ExpectationHandler
 
     void handle( HttpServletRequest request, HttpServletResponse response )
         throws ServletException, IOException;
+
+    /**
+     * Called instead of {@link #handle(HttpServletRequest, HttpServletResponse)} when the expectation was registered
+     * with a path template. The map holds the values bound to each <code>{var}</code> segment, and to
+     * <code>**</code> if the template ends with one. It is empty for literal paths.
+     */
+    default void handle( HttpServletRequest request, HttpServletResponse response, Map<String, String> pathVariables )
+        throws ServletException, IOException
+    {
+        handle( request, response );
+    }
 }
@@ -0,0 +1,171 @@
+/**
+ * Copyright (C) 2011-2024 Red Hat, Inc. (https://github.com/Commonjava/http-testserver)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.test.http.expect;
+
+import io.undertow.server.HttpHandler;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.HeaderMap;
+import io.undertow.util.Headers;
+import io.undertow.util.Methods;
+import org.commonjava.test.http.jfr.RequestEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.util.function.IntToLongFunction;
+import java.util.function.Supplier;
+
+/**
+ * Serves the expectations registered in an {@link ExpectationServlet} directly from Undertow, without going through
+ * the servlet container. Pre-encoded bodies are sent asynchronously from the IO thread. Only expectations backed by an
+ * {@link ExpectationHandler}, which need the servlet API, are passed on to the servlet deployment, which runs them on
+ * a worker thread. Delays registered with a {@link Latency}, and pauses for bandwidth shaping, wait on the IO thread's timer.
+ */
+public final class ExpectationHttpHandler
+        implements HttpHandler
+{
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final ExpectationServlet servlet;
+
+    private final Supplier<HttpHandler> servletHandler;
+
+    /**
+     * @param servlet holds the registered expectations and access counts
+     * @param servletHandler supplies the servlet deployment's handler; only called once a request needs it
+     */
+    public ExpectationHttpHandler( final ExpectationServlet servlet, final Supplier<HttpHandler> servletHandler )
+    {
+        this.servlet = servlet;
+        this.servletHandler = servletHandler;
+    }
+
+    @Override
+    public void handleRequest( final HttpServerExchange exchange )
+            throws Exception
+    {
+        final String method = exchange.getRequestMethod().toString();
+        final String uri = exchange.getRequestURI();
+        final String queryString = exchange.getQueryString();
+        final String query = queryString == null || queryString.isEmpty() ? null : queryString;
+
+        final HeaderMap headers = exchange.getRequestHeaders();
+        final ExpectationServlet session =
+                servlet.sessionFor( headers.getFirst( ExpectationServlet.SESSION_HEADER ),
+                                    headers.getFirst( Headers.HOST ), uri );
+        final ExpectationServlet owner = session != null ? session : servlet;
+
+        final RouteTable.Route<ExpectationRoute> route = owner.findRoute( method, uri, query );
+        owner.metricsFor( route ).attach( exchange );
+        final ExpectationRoute target = route == null ? null : route.value();
+
+        final ContentResponse response = target == null ? null : target.response();
+        if ( response != null && response.handler() != null )
+        {
+            // the servlet finds the session and route again, records the access and applies any latency itself
+            servletHandler.get().handleRequest( exchange );
+            return;
+        }
+
+        owner.recordAccess( route, method, uri, query );
+        if ( target != null && RequestEvent.enabled() )
+        {
+            RequestEvent.describe( exchange, target.responseKind( response ),
+                                   ExpectationRoute.responseType( response ) );
+        }
+
+        final Latency latency = target == null ? null : target.latency;
+        if ( latency != null )
+        {
+            Pacing.later( exchange, latency.sampleNanos(), ex -> respond( ex, owner, target, response, latency ) );
+            return;
+        }
+
+        respond( exchange, owner, target, response, null );
+    }
+
+    private void respond( final HttpServerExchange exchange, final ExpectationServlet owner,
+                          final ExpectationRoute target, final ContentResponse response, final Latency latency )
+    {
+        if ( response == null )
+        {
+            logger.debug( "No expectation registered for: {} {}", exchange.getRequestMethod(),
+                          exchange.getRequestURI() );
+            exchange.setStatusCode( 404 );
+            exchange.endExchange();
+            return;
+        }
+
+        exchange.setStatusCode( response.code() );
+
+        final ResponseBody body = response.content();
+        if ( body == null )
+        {
+            exchange.endExchange();
+            return;
+        }
+
+        exchange.getResponseHeaders().put( Headers.CONTENT_LENGTH, body.length() );
+        if ( body.contentType() != null )
+        {
+            exchange.getResponseHeaders().put( Headers.CONTENT_TYPE, body.contentType() );
+        }
+
+        if ( Methods.HEAD.equals( exchange.getRequestMethod() ) )
+        {
+            exchange.endExchange();
+            return;
+        }
+
+        final IntToLongFunction pauses =
+                target.isPaceable( response ) ? target.pauses( latency, owner.serverLimiter() ) : null;
+        if ( pauses != null )
+        {
+            final ChunkCursor chunks =
+                    target.chunks( response, target.chunkSize( latency, owner.serverBandwidth() ) );
+            if ( chunks != null )
+            {
+                Pacing.sendChunks( exchange, chunks, pauses );
+                return;
+            }
+            logger.warn( "Cannot pace {}, which has no buffers; sending it in one go", body );
+        }
+
+        final ByteBuffer[] buffers = body.buffers();
+
+        if ( buffers != null )
+        {
+            exchange.getResponseSender().send( buffers );
+            return;
+        }
+
+        exchange.dispatch( () -> {
+            exchange.startBlocking();
+            try
+            {
+                body.writeTo( exchange.getOutputStream() );
+            }
+            catch ( final Exception e )
+            {
+                logger.error( "Failed to write body for: " + response.method() + " " + response.path(), e );
+            }
+            finally
+            {
+                exchange.endExchange();
+            }
+        } );
+    }
+}
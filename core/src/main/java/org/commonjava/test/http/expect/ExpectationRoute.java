@@ -0,0 +1,146 @@
+/**
+ * Copyright (C) 2011-2024 Red Hat, Inc. (https://github.com/Commonjava/http-testserver)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.test.http.expect;
+
+import org.commonjava.test.http.common.Bandwidth;
+import org.commonjava.test.http.common.BandwidthLimiter;
+import org.commonjava.test.http.common.PacedWriter;
+import org.commonjava.test.http.common.RouteMetrics;
+import org.commonjava.test.http.jfr.RequestEvent;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntToLongFunction;
+
+/**
+ * What is registered for one method + path in the {@link RouteTable}: an optional error, which takes precedence, an
+ * optional expectation, and an optional latency and bandwidth applied to either. Also holds the access counter for the
+ * route's own key, so literal hits can be counted without building the key again.
+ */
+final class ExpectationRoute
+{
+    final LongAdder accesses;
+
+    final boolean hasQuery;
+
+    volatile ContentResponse error;
+
+    volatile ContentResponse expectation;
+
+    volatile Latency latency;
+
+    volatile Bandwidth bandwidth;
+
+    // created when the route is first requested
+    volatile RouteMetrics metrics;
+
+    ExpectationRoute( final LongAdder accesses, final boolean hasQuery )
+    {
+        this.accesses = accesses;
+        this.hasQuery = hasQuery;
+    }
+
+    /**
+     * @return the response to send for this route, or null if only a latency is registered
+     */
+    ContentResponse response()
+    {
+        final ContentResponse error = this.error;
+        return error != null ? error : expectation;
+    }
+
+    /**
+     * @return whether the response is this route's error or expectation, for {@link RequestEvent}s
+     */
+    String responseKind( final ContentResponse response )
+    {
+        if ( response == null )
+        {
+            return null;
+        }
+        return response == error ? "error" : "expectation";
+    }
+
+    /**
+     * @return how the response is produced, for {@link RequestEvent}s
+     */
+    static String responseType( final ContentResponse response )
+    {
+        if ( response == null )
+        {
+            return null;
+        }
+        if ( response.handler() != null )
+        {
+            return "handler";
+        }
+        if ( response.content() != null )
+        {
+            return response.content().getClass().getSimpleName();
+        }
+        return response.body() != null ? "error page" : "status";
+    }
+
+    /**
+     * @return whether the response has a body that is written chunk by chunk when it is paced. Handlers write their
+     * own output, and error pages with a plain body go through
+     * {@link jakarta.servlet.http.HttpServletResponse#sendError(int, String)}.
+     */
+    boolean isPaceable( final ContentResponse response )
+    {
+        return response != null && response.handler() == null && response.content() != null && !( response == error
+                && response.body() != null );
+    }
+
+    /**
+     * @return a cursor over the response's body in chunks of <code>chunkSize</code>, or null if it can't be paced. Only
+     * called once pacing is known to apply, since it duplicates every view of the body.
+     */
+    ChunkCursor chunks( final ContentResponse response, final int chunkSize )
+    {
+        return isPaceable( response ) ? ChunkCursor.of( response.content(), chunkSize ) : null;
+    }
+
+    /**
+     * Build the pause taken after each chunk of one response: the latency's chunk delay, this route's bandwidth (with
+     * a limiter of its own for each response) and the server-wide limiter, whichever is slowest.
+     *
+     * @return the pause function, or null if the response is sent in one go
+     */
+    IntToLongFunction pauses( final Latency latency, final BandwidthLimiter serverLimiter )
+    {
+        final Latency chunkDelay = latency == null ? null : latency.chunkDelay();
+        final Bandwidth bandwidth = this.bandwidth;
+        return PacedWriter.pauses( chunkDelay == null ? null : chunkDelay::sampleNanos,
+                                   bandwidth == null ? null : bandwidth.newLimiter(), serverLimiter );
+    }
+
+    /**
+     * @return the chunk size for paced responses: from this route's bandwidth, else the latency, else the server's
+     */
+    int chunkSize( final Latency latency, final Bandwidth serverBandwidth )
+    {
+        final Bandwidth bandwidth = this.bandwidth;
+        if ( bandwidth != null )
+        {
+            return bandwidth.chunkSize();
+        }
+        if ( latency != null && latency.chunkDelay() != null )
+        {
+            return latency.chunkSize();
+        }
+        return serverBandwidth == null ? Bandwidth.DEFAULT_CHUNK_SIZE : serverBandwidth.chunkSize();
+    }
+}
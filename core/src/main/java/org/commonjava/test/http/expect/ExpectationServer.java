@@ -16,13 +16,23 @@
 package org.commonjava.test.http.expect;
 
 import io.undertow.Undertow;
+import io.undertow.server.HttpHandler;
 import io.undertow.servlet.Servlets;
 import io.undertow.servlet.api.DeploymentInfo;
 import io.undertow.servlet.api.DeploymentManager;
 import io.undertow.servlet.api.ServletInfo;
 import io.undertow.servlet.util.ImmediateInstanceFactory;
+import org.commonjava.test.http.common.Bandwidth;
 import org.commonjava.test.http.common.CommonMethod;
 import org.commonjava.test.http.common.HttpServerFixture;
+import org.commonjava.test.http.common.JournalHandler;
+import org.commonjava.test.http.common.MetricsHandler;
+import org.commonjava.test.http.common.OpenMetricsHandler;
+import org.commonjava.test.http.common.RequestJournal;
+import org.commonjava.test.http.common.RouteMetrics;
+import org.commonjava.test.http.common.ServerOptions;
+import org.commonjava.test.http.common.SharedRuntime;
+import org.commonjava.test.http.jfr.FlightRecorderHandler;
 import org.commonjava.test.http.util.PortFinder;
 import org.commonjava.test.http.util.UrlUtils;
 import org.slf4j.Logger;
@@ -30,14 +40,16 @@ import org.slf4j.LoggerFactory;
 
 import jakarta.servlet.Servlet;
 import jakarta.servlet.ServletException;
-import java.io.IOException;
 import java.io.InputStream;
 import java.net.BindException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 @SuppressWarnings( "unused" )
 public class ExpectationServer
@@ -50,8 +62,60 @@ public class ExpectationServer
 
     private final ExpectationServlet servlet;
 
+    private final ExpectationServer parent;
+
+    private final String sessionId;
+
+    private final String host;
+
+    private final AtomicLong sessionIds = new AtomicLong();
+
     private Undertow server;
 
+    private Engine engine = Engine.fromSystemProperty();
+
+    private HttpHandler servletHandler;
+
+    // runs blocking servlet requests when ServerOptions asks for virtual threads; shut down by discard()
+    private ExecutorService blockingExecutor;
+
+    private ServerOptions options = ServerOptions.defaults();
+
+    private SharedRuntime.Lease runtime;
+
+    private RequestJournal journal;
+
+    // set once a pool has lent this server out; from then on only the pool stops it, via discard()
+    private volatile ExpectationServerPool pool;
+
+    // true while lent out; the first stop() clears it and returns the server, later ones are no-ops
+    private final AtomicBoolean lent = new AtomicBoolean();
+
+    /**
+     * How requests are dispatched to the registered expectations.
+     */
+    public enum Engine
+    {
+        /**
+         * Deploy {@link ExpectationServlet} in an Undertow servlet container (the default).
+         */
+        SERVLET,
+
+        /**
+         * Serve expectations from an Undertow {@link HttpHandler} on the IO thread, and only deploy the servlet for
+         * {@link ExpectationHandler} callbacks, which run on a worker thread.
+         */
+        NATIVE;
+
+        public static final String ENGINE_PROPERTY = "http-testserver.engine";
+
+        static Engine fromSystemProperty()
+        {
+            final String value = System.getProperty( ENGINE_PROPERTY );
+            return value == null ? SERVLET : valueOf( value.trim().toUpperCase() );
+        }
+    }
+
     public ExpectationServer()
     {
         this( null );
@@ -65,93 +129,397 @@ public class ExpectationServer
     public ExpectationServer( final String baseResource )
     {
         servlet = new ExpectationServlet( baseResource );
+        parent = null;
+        sessionId = null;
+        host = null;
+        journal = options.createJournal();
     }
 
     public ExpectationServer( final String baseResource, final int port )
     {
         servlet = new ExpectationServlet( baseResource );
+        parent = null;
+        sessionId = null;
+        host = null;
+        journal = options.createJournal();
         if ( port >= 80 )
         {
             this.port = port;
         }
     }
 
+    private ExpectationServer( final ExpectationServer parent, final ExpectationServlet servlet,
+                               final String sessionId, final String host )
+    {
+        this.servlet = servlet;
+        this.parent = parent;
+        this.sessionId = sessionId;
+        this.host = host;
+        this.port = parent.port;
+        this.engine = parent.engine;
+        this.options = parent.options;
+        this.journal = parent.journal;
+    }
+
+    /**
+     * Open an isolated session on this running server, addressed by a path prefix. See
+     * {@link #openSession(boolean)}.
+     */
+    public ExpectationServer openSession()
+    {
+        return openSession( false );
+    }
+
+    /**
+     * Open an isolated session on this running server, so concurrently running tests can share one listener. The
+     * returned server has its own expectations, errors, latencies and access counts. Requests reach it either through
+     * its own base resource, which {@link #formatUrl(String...)} prefixes with
+     * <code>{@value ExpectationServlet#SESSION_PATH_PREFIX}{id}</code>, or, with <code>byHeader</code>, through the
+     * usual URLs plus a {@value ExpectationServlet#SESSION_HEADER} header carrying {@link #getSessionId()}.
+     * <p>
+     * Sessions share this server's request journal. Stopping a session closes it; the listener keeps running.
+     */
+    public ExpectationServer openSession( final boolean byHeader )
+    {
+        if ( port == null )
+        {
+            throw new IllegalStateException( "Start the server before opening sessions on it." );
+        }
+
+        final String id = Long.toString( sessionIds.incrementAndGet(), 36 );
+        return new ExpectationServer( this, servlet.openSession( id, !byHeader ), id, host );
+    }
+
+    /**
+     * Open an independent expectation registry on this running server for requests whose Host header names
+     * <code>host</code>, to simulate another upstream without another listener. It shares this server's port, threads
+     * and buffers; each one costs little more than its registered expectations.
+     * <p>
+     * {@link #getBaseUri()} and {@link #formatUrl(String...)} of the returned server use <code>host</code>, so clients
+     * must resolve it to 127.0.0.1 (names under <code>.localhost</code> usually do), or connect to 127.0.0.1 and send
+     * the Host header themselves. Stopping the returned server removes the virtual host.
+     */
+    public ExpectationServer openVirtualHost( final String host )
+    {
+        if ( port == null )
+        {
+            throw new IllegalStateException( "Start the server before opening virtual hosts on it." );
+        }
+        if ( parent != null )
+        {
+            throw new IllegalStateException( "Virtual hosts can only be opened on the server that owns the listener." );
+        }
+
+        return new ExpectationServer( this, servlet.openVirtualHost( host ), null, host );
+    }
+
+    /**
+     * @return the virtual host this server answers for, or null if it answers on 127.0.0.1
+     */
+    public String getVirtualHost()
+    {
+        return host;
+    }
+
+    private String hostUrl()
+    {
+        return "http://" + ( host == null ? "127.0.0.1" : host ) + ":" + port;
+    }
+
+    /**
+     * @return this session's id, or null if this is not a session
+     */
+    public String getSessionId()
+    {
+        return sessionId;
+    }
+
     public int getPort()
     {
         return port;
     }
 
     public void stop()
+    {
+        final ExpectationServerPool lender = pool;
+        if ( lender != null )
+        {
+            if ( lent.compareAndSet( true, false ) )
+            {
+                lender.release( this );
+            }
+            return;
+        }
+
+        if ( parent != null )
+        {
+            if ( sessionId != null )
+            {
+                parent.servlet.closeSession( sessionId );
+            }
+            else
+            {
+                parent.servlet.closeVirtualHost( host );
+            }
+            return;
+        }
+
+        discard();
+    }
+
+    /**
+     * Stop the listener for good. Pools use this for servers they own, whose {@link #stop()} only returns them.
+     */
+    void discard()
     {
         if ( server != null )
         {
             server.stop();
             logger.info( "STOPPED Test HTTP Server on 127.0.0.1:" + port );
         }
+        shutdownBlockingExecutor();
+        releaseRuntime();
     }
 
-    public ExpectationServer start()
+    /**
+     * Shut down the executor the servlet deployment was given, and drop the deployment so a restart builds a new one.
+     */
+    private synchronized void shutdownBlockingExecutor()
+    {
+        if ( blockingExecutor != null )
+        {
+            blockingExecutor.shutdown();
+            blockingExecutor = null;
+            servletHandler = null;
+        }
+    }
+
+    private void releaseRuntime()
+    {
+        if ( runtime != null )
+        {
+            runtime.close();
+            runtime = null;
+        }
+    }
+
+    /**
+     * Clear all expectations, errors, latencies, throttles, access counts, metrics and the request journal, so a
+     * running server can be reused by the next test without rebinding its port.
+     */
+    public ExpectationServer reset()
+    {
+        servlet.reset();
+        if ( parent == null )
+        {
+            // sessions share the parent's journal
+            journal.clear();
+        }
+        return this;
+    }
+
+    /**
+     * Hand this idle, pooled server to a fixture in place of the fixture's own, not yet started server.
+     */
+    void lend( final ExpectationServerPool pool, final ExpectationServer standIn )
+    {
+        servlet.rebase( standIn.servlet.getBaseResource() );
+        this.pool = pool;
+        lent.set( true );
+    }
+
+    /**
+     * Clear everything a fixture may have left behind, including its sessions and virtual hosts.
+     */
+    void recycle()
+    {
+        servlet.recycle();
+        journal.clear();
+    }
+
+    /**
+     * @return true if this server has not been started or configured in a way that a pooled server can't stand in for
+     */
+    boolean isPoolable( final Engine engine, final ServerOptions options )
+    {
+        return parent == null && server == null && port == null && this.engine == engine && this.options == options
+                && servlet.isPristine();
+    }
+
+    /**
+     * Choose how requests are served. Must be called before {@link #start()}.
+     */
+    public ExpectationServer withEngine( final Engine engine )
+    {
+        this.engine = engine;
+        return this;
+    }
+
+    public Engine getEngine()
+    {
+        return engine;
+    }
+
+    /**
+     * Tune threads, buffers and timeouts. Must be called before {@link #start()}.
+     */
+    public ExpectationServer withOptions( final ServerOptions options )
+    {
+        this.options = options;
+        this.journal = options.createJournal();
+        return this;
+    }
+
+    public ServerOptions getOptions()
     {
-        final ServletInfo si = Servlets.servlet( "TEST", ExpectationServlet.class )
-                                       .addMapping( "*" )
-                                       .addMapping( "/*" )
-                                       .setLoadOnStartup( 1 );
+        return options;
+    }
 
-        si.setInstanceFactory( new ImmediateInstanceFactory<Servlet>( servlet ) );
+    /**
+     * @return a snapshot of per-route latency and throughput metrics, keyed by method and registered path; see
+     * {@link RouteMetrics}
+     */
+    public Map<String, RouteMetrics.Snapshot> getMetrics()
+    {
+        return servlet.getMetrics().snapshot();
+    }
 
-        final DeploymentInfo di = new DeploymentInfo().addServlet( si )
-                                                      .setDeploymentName( "TEST" )
-                                                      .setContextPath( "/" )
-                                                      .setClassLoader( Thread.currentThread().getContextClassLoader() );
+    /**
+     * Zero the metrics, e.g. after a warm-up phase, without touching expectations or access counts.
+     */
+    public ExpectationServer resetMetrics()
+    {
+        servlet.getMetrics().reset();
+        return this;
+    }
 
-        final DeploymentManager dm = Servlets.defaultContainer().addDeployment( di );
-        dm.deploy();
+    /**
+     * @return the journal of requests this server handled, in completion order; see {@link RequestJournal}
+     */
+    public RequestJournal getRequestJournal()
+    {
+        return journal;
+    }
 
-        boolean started = false;
-        if ( this.port != null && this.port >= 80 )
+    public ExpectationServer start()
+    {
+        if ( parent != null )
         {
-            try
-            {
-                server = Undertow.builder().setHandler( dm.start() ).addHttpListener( this.port, "127.0.0.1" ).build();
-                server.start();
-                started = true;
-            }
-            catch ( Exception e )
-            {
-                logger.warn( "The port {} is occupied, will find another port to try!", this.port );
-            }
+            throw new IllegalStateException(
+                    "Sessions and virtual hosts run on their parent server; start that instead." );
+        }
+
+        servlet.limitBandwidth( options.getBandwidthLimit() );
+
+        final HttpHandler engineHandler;
+        if ( engine == Engine.NATIVE )
+        {
+            engineHandler = new ExpectationHttpHandler( servlet, this::servletHandler );
+        }
+        else
+        {
+            engineHandler = servletHandler();
+        }
+        HttpHandler handler = new JournalHandler( journal, new FlightRecorderHandler(
+                new MetricsHandler( servlet.getMetrics(), engineHandler ) ) );
+        if ( options.getMetricsPath() != null )
+        {
+            handler = new OpenMetricsHandler( options.getMetricsPath(), servlet.getMetrics(),
+                                              servlet::getAccessesByPath, () -> server, handler );
         }
-        if ( !started )
+
+        runtime = options.acquireRuntime();
+        try
         {
-            final AtomicReference<Integer> foundPort = new AtomicReference<>();
-            server = PortFinder.findPortFor( 16, p -> {
-                foundPort.set( p );
+            boolean started = false;
+            if ( this.port != null && this.port >= 80 )
+            {
                 try
                 {
-                    Undertow s = Undertow.builder().setHandler( dm.start() ).addHttpListener( p, "127.0.0.1" ).build();
-                    s.start();
-
-                    return s;
+                    server = options.undertowBuilder( runtime )
+                                    .setHandler( handler )
+                                    .addHttpListener( this.port, "127.0.0.1" )
+                                    .build();
+                    server.start();
+                    started = true;
                 }
-                catch ( ServletException e )
+                catch ( Exception e )
                 {
-                    throw new IOException( "Failed to start: " + e.getMessage(), e );
+                    logger.warn( "The port {} is occupied, will use an OS-assigned port instead!", this.port );
                 }
-            } );
+            }
+            if ( !started )
+            {
+                server = options.undertowBuilder( runtime )
+                                .setHandler( handler )
+                                .addHttpListener( PortFinder.EPHEMERAL_PORT, "127.0.0.1" )
+                                .build();
+                server.start();
 
-            this.port = foundPort.get();
+                this.port = PortFinder.boundPort( server );
+            }
+        }
+        catch ( final RuntimeException e )
+        {
+            shutdownBlockingExecutor();
+            releaseRuntime();
+            throw e;
         }
 
-        logger.info( "STARTED Test HTTP Server on 127.0.0.1:{}", port );
+        logger.info( "STARTED Test HTTP Server on 127.0.0.1:{} ({} engine)", port, engine );
 
         return this;
     }
 
+    /**
+     * Deploy the servlet the first time it is needed. With the native engine that only happens once a request hits an
+     * {@link ExpectationHandler}.
+     */
+    private synchronized HttpHandler servletHandler()
+    {
+        if ( servletHandler == null )
+        {
+            final ServletInfo si = Servlets.servlet( "TEST", ExpectationServlet.class )
+                                           .addMapping( "*" )
+                                           .addMapping( "/*" )
+                                           .setLoadOnStartup( 1 )
+                                           .setAsyncSupported( true );
+
+            si.setInstanceFactory( new ImmediateInstanceFactory<Servlet>( servlet ) );
+
+            final DeploymentInfo di = new DeploymentInfo().addServlet( si )
+                                                          .setDeploymentName( "TEST" )
+                                                          .setContextPath( "/" )
+                                                          .setClassLoader( Thread.currentThread()
+                                                                                 .getContextClassLoader() );
+
+            blockingExecutor = options.createBlockingExecutor();
+            if ( blockingExecutor != null )
+            {
+                di.setExecutor( blockingExecutor );
+            }
+
+            final DeploymentManager dm = Servlets.defaultContainer().addDeployment( di );
+            dm.deploy();
+            try
+            {
+                servletHandler = dm.start();
+            }
+            catch ( final ServletException e )
+            {
+                shutdownBlockingExecutor();
+                throw new IllegalStateException( "Failed to start servlet deployment: " + e.getMessage(), e );
+            }
+        }
+
+        return servletHandler;
+    }
+
     public String formatUrl( final String... subpath )
     {
         try
         {
-            return UrlUtils.buildUrl( "http://127.0.0.1:" + port, servlet.getBaseResource(), subpath );
+            return UrlUtils.buildUrl( hostUrl(), servlet.getBaseResource(), subpath );
         }
         catch ( final MalformedURLException e )
         {
@@ -175,7 +543,7 @@ public class ExpectationServer
     {
         try
         {
-            return UrlUtils.buildUrl( "http://127.0.0.1:" + port, servlet.getBaseResource() );
+            return UrlUtils.buildUrl( hostUrl(), servlet.getBaseResource() );
         }
         catch ( final MalformedURLException e )
         {
@@ -221,11 +589,75 @@ public class ExpectationServer
         servlet.registerException( method, url, responseCode, error );
     }
 
+    /**
+     * Delay GET and HEAD responses for the URL; see {@link Latency}.
+     */
+    public void delay( final String testUrl, final Latency latency )
+    {
+        servlet.delay( "GET", testUrl, latency );
+        servlet.delay( "HEAD", testUrl, latency );
+    }
+
+    public void delay( final String method, final String testUrl, final Latency latency )
+    {
+        servlet.delay( method, testUrl, latency );
+    }
+
+    /**
+     * Shape GET response bodies for the URL to the bandwidth; see {@link Bandwidth}.
+     */
+    public void throttle( final String testUrl, final Bandwidth bandwidth )
+    {
+        servlet.throttle( "GET", testUrl, bandwidth );
+    }
+
+    public void throttle( final String method, final String testUrl, final Bandwidth bandwidth )
+    {
+        servlet.throttle( method, testUrl, bandwidth );
+    }
+
     public void expect( final String testUrl, final int responseCode, final String body )
             throws Exception
     {
-        servlet.expect( "GET", testUrl, responseCode, body );
-        servlet.expect( "HEAD", testUrl, responseCode, (String) null );
+        expect( testUrl, responseCode, body == null ? null : BufferBody.of( body ) );
+    }
+
+    /**
+     * Register a GET expectation with a body that is encoded once and served with the given content type and an
+     * explicit Content-Length, plus a HEAD expectation reporting the same headers.
+     */
+    public void expect( final String testUrl, final int responseCode, final String body, final String contentType )
+            throws Exception
+    {
+        expect( testUrl, responseCode, body == null ? null : BufferBody.of( body, contentType ) );
+    }
+
+    public void expect( final String testUrl, final int responseCode, final ResponseBody body )
+            throws Exception
+    {
+        if ( body == null )
+        {
+            servlet.expect( "GET", testUrl, responseCode, (String) null );
+            servlet.expect( "HEAD", testUrl, responseCode, (String) null );
+        }
+        else
+        {
+            servlet.expect( "GET", testUrl, responseCode, body );
+            servlet.expect( "HEAD", testUrl, responseCode, body );
+        }
+    }
+
+    public void expect( final String method, final String testUrl, final int responseCode, final String body,
+                        final String contentType )
+            throws Exception
+    {
+        servlet.expect( method, testUrl, responseCode, body, contentType );
+    }
+
+    public void expect( final String method, final String testUrl, final int responseCode, final ResponseBody body )
+            throws Exception
+    {
+        servlet.expect( method, testUrl, responseCode, body );
     }
 
     public void expect( final String method, final String testUrl, final int responseCode, final String body )
@@ -234,11 +666,30 @@ public class ExpectationServer
         servlet.expect( method, testUrl, responseCode, body );
     }
 
+    /**
+     * Register a GET expectation (plus HEAD) with a body read from the stream. The stream is drained right away and
+     * replayed on every request; see {@link SpooledBody}.
+     */
     public void expect( final String testUrl, final int responseCode, final InputStream bodyStream )
             throws Exception
     {
-        servlet.expect( "GET", testUrl, responseCode, bodyStream );
-        servlet.expect( "HEAD", testUrl, responseCode, (String) null );
+        expect( testUrl, responseCode,
+                SpooledBody.capture( bodyStream, MappedFileBody.DEFAULT_CONTENT_TYPE ) );
+    }
+
+    /**
+     * Register a GET expectation (plus HEAD) serving the file, which is memory-mapped on first use instead of copied.
+     */
+    public void expect( final String testUrl, final int responseCode, final Path file )
+            throws Exception
+    {
+        expect( testUrl, responseCode, new MappedFileBody( file ) );
+    }
+
+    public void expect( final String method, final String testUrl, final int responseCode, final Path file )
+            throws Exception
+    {
+        servlet.expect( method, testUrl, responseCode, file );
     }
 
     public void expect( final String method, final String testUrl, final int responseCode,
@@ -0,0 +1,235 @@
+/**
+ * Copyright (C) 2011-2024 Red Hat, Inc. (https://github.com/Commonjava/http-testserver)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.test.http.expect;
+
+import org.commonjava.test.http.common.ServerOptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps a number of started, empty {@link ExpectationServer}s ready in the background, so test fixtures don't pay for
+ * the listener and servlet deployment on the test's critical path. A fixture calls {@link #start(ExpectationServer)}
+ * with the server it would otherwise start; if that server has no port, engine, options or expectations of its own,
+ * a pooled server with the same base resource is returned instead. {@link ExpectationServer#stop()} on the borrowed
+ * server resets it and puts it back.
+ * <p>
+ * The JVM-wide pool from {@link #shared()} is sized by the {@value #SIZE_PROPERTY} system property, and is disabled
+ * (size 0) by default.
+ */
+public final class ExpectationServerPool
+        implements AutoCloseable
+{
+    public static final String SIZE_PROPERTY = "http-testserver.pool.size";
+
+    private static volatile ExpectationServerPool shared;
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final int size;
+
+    private final ExpectationServer.Engine engine = ExpectationServer.Engine.fromSystemProperty();
+
+    // pooled servers use the defaults, so only fixtures that haven't changed them can borrow one
+    private final ServerOptions options = ServerOptions.defaults();
+
+    private final BlockingQueue<ExpectationServer> idle = new LinkedBlockingQueue<>();
+
+    // idle servers plus the ones being started in the background
+    private final AtomicInteger warm = new AtomicInteger();
+
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    private final ExecutorService starter;
+
+    public ExpectationServerPool( final int size )
+    {
+        if ( size < 0 )
+        {
+            throw new IllegalArgumentException( "Pool size must not be negative: " + size );
+        }
+
+        this.size = size;
+        this.starter = size == 0 ? null : Executors.newSingleThreadExecutor( r -> {
+            final Thread t = new Thread( r, "expectation-server-pool" );
+            t.setDaemon( true );
+            return t;
+        } );
+        refill();
+    }
+
+    /**
+     * @return the JVM-wide pool, sized by {@value #SIZE_PROPERTY}; it is closed when the JVM shuts down
+     */
+    public static ExpectationServerPool shared()
+    {
+        ExpectationServerPool pool = shared;
+        if ( pool == null )
+        {
+            synchronized ( ExpectationServerPool.class )
+            {
+                pool = shared;
+                if ( pool == null )
+                {
+                    pool = new ExpectationServerPool( Integer.getInteger( SIZE_PROPERTY, 0 ) );
+                    Runtime.getRuntime()
+                           .addShutdownHook( new Thread( pool::close, "expectation-server-pool-shutdown" ) );
+                    shared = pool;
+                }
+            }
+        }
+        return pool;
+    }
+
+    public boolean isEnabled()
+    {
+        return size > 0 && !closed.get();
+    }
+
+    public int getSize()
+    {
+        return size;
+    }
+
+    /**
+     * @return the number of started servers waiting to be borrowed
+     */
+    public int idleCount()
+    {
+        return idle.size();
+    }
+
+    /**
+     * Start a server for a fixture: borrow a pooled one in place of <code>server</code> if possible, otherwise start
+     * <code>server</code> itself.
+     *
+     * @return the running server the fixture should use
+     */
+    public ExpectationServer start( final ExpectationServer server )
+    {
+        if ( !isEnabled() || !server.isPoolable( engine, options ) )
+        {
+            return server.start();
+        }
+
+        ExpectationServer pooled = idle.poll();
+        if ( pooled != null )
+        {
+            warm.decrementAndGet();
+        }
+        else
+        {
+            // the background starter hasn't caught up; don't make the test wait for it
+            pooled = newServer();
+        }
+        refill();
+
+        pooled.lend( this, server );
+        return pooled;
+    }
+
+    void release( final ExpectationServer server )
+    {
+        server.recycle();
+        if ( !closed.get() && warm.incrementAndGet() <= size )
+        {
+            idle.offer( server );
+            if ( closed.get() && idle.remove( server ) )
+            {
+                // lost a race with close()
+                server.discard();
+            }
+            return;
+        }
+
+        warm.decrementAndGet();
+        server.discard();
+    }
+
+    private void refill()
+    {
+        while ( starter != null && !closed.get() )
+        {
+            final int current = warm.get();
+            if ( current >= size )
+            {
+                return;
+            }
+            if ( warm.compareAndSet( current, current + 1 ) )
+            {
+                starter.execute( this::startIdle );
+            }
+        }
+    }
+
+    private void startIdle()
+    {
+        if ( closed.get() )
+        {
+            warm.decrementAndGet();
+            return;
+        }
+
+        try
+        {
+            final ExpectationServer server = newServer();
+            idle.offer( server );
+            if ( closed.get() && idle.remove( server ) )
+            {
+                server.discard();
+            }
+        }
+        catch ( final RuntimeException e )
+        {
+            warm.decrementAndGet();
+            logger.warn( "Failed to pre-start a pooled expectation server: " + e.getMessage(), e );
+        }
+    }
+
+    private ExpectationServer newServer()
+    {
+        return new ExpectationServer().withEngine( engine ).start();
+    }
+
+    /**
+     * Stop all idle servers. Servers that are still borrowed are stopped when they are returned.
+     */
+    @Override
+    public void close()
+    {
+        if ( !closed.compareAndSet( false, true ) )
+        {
+            return;
+        }
+
+        if ( starter != null )
+        {
+            starter.shutdown();
+        }
+
+        ExpectationServer server;
+        while ( ( server = idle.poll() ) != null )
+        {
+            server.discard();
+        }
+    }
+}
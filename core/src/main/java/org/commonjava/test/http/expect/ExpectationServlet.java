@@ -15,11 +15,20 @@
  */
 package org.commonjava.test.http.expect;
 
-import org.apache.commons.io.IOUtils;
+import org.commonjava.test.http.common.AccessCounts;
+import org.commonjava.test.http.common.Bandwidth;
+import org.commonjava.test.http.common.BandwidthLimiter;
 import org.commonjava.test.http.common.CommonMethod;
+import org.commonjava.test.http.common.PacedWriter;
+import org.commonjava.test.http.common.RouteMetrics;
+import org.commonjava.test.http.common.ServerMetrics;
+import org.commonjava.test.http.jfr.RequestEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import org.xnio.XnioIoThread;
+
+import jakarta.servlet.AsyncContext;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServlet;
 import jakarta.servlet.http.HttpServletRequest;
@@ -28,18 +37,11 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.util.HashMap;
+import java.nio.file.Path;
+import java.util.Collections;
 import java.util.Map;
-
-import jakarta.servlet.ServletException;
-import jakarta.servlet.http.HttpServlet;
-import jakarta.servlet.http.HttpServletRequest;
-import jakarta.servlet.http.HttpServletResponse;
-
-import org.apache.commons.io.IOUtils;
-import org.commonjava.test.http.common.CommonMethod;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntToLongFunction;
 
 public final class ExpectationServlet
         extends HttpServlet
@@ -48,13 +50,34 @@ public final class ExpectationServlet
 
     private static final long serialVersionUID = 1L;
 
-    private final String baseResource;
+    /**
+     * Request header naming the session a request belongs to, for sessions opened without a path prefix.
+     */
+    public static final String SESSION_HEADER = "X-Http-Testserver-Session";
 
-    private final Map<String, ContentResponse> expectations = new HashMap<>();
+    /**
+     * Path prefix of sessions opened with one: <code>/_session/{id}/...</code>
+     */
+    public static final String SESSION_PATH_PREFIX = "/_session/";
 
-    private final Map<String, Integer> accessesByPath = new HashMap<>();
+    // only changed while a pooled server is idle; see ExpectationServerPool
+    private volatile String baseResource;
 
-    private final Map<String, ContentResponse> errors = new HashMap<>();
+    private final RouteTable<ExpectationRoute> routes = new RouteTable<>();
+
+    private final AccessCounts accessesByPath = new AccessCounts();
+
+    private final ServerMetrics metrics = new ServerMetrics();
+
+    private final Map<String, ContentResponse> errors = new ConcurrentHashMap<>();
+
+    private volatile Bandwidth serverBandwidth;
+
+    private volatile BandwidthLimiter serverLimiter;
+
+    private final Map<String, ExpectationServlet> sessions = new ConcurrentHashMap<>();
+
+    private final Map<String, ExpectationServlet> virtualHosts = new ConcurrentHashMap<>();
 
     public ExpectationServlet()
     {
@@ -63,6 +86,11 @@ public final class ExpectationServlet
     }
 
     public ExpectationServlet( final String baseResource )
+    {
+        this.baseResource = normalizeBase( baseResource );
+    }
+
+    private static String normalizeBase( final String baseResource )
     {
         String br = baseResource;
         if ( br == null )
@@ -73,17 +101,154 @@ public final class ExpectationServlet
         {
             br = "/" + br;
         }
-        this.baseResource = br;
+        return br;
     }
 
+    /**
+     * @return a point-in-time snapshot of the access counts; it is not updated by later requests.
+     */
     public Map<String, Integer> getAccessesByPath()
     {
-        return accessesByPath;
+        return accessesByPath.snapshot();
     }
 
     public Map<String, ContentResponse> getRegisteredErrors()
     {
-        return errors;
+        return Collections.unmodifiableMap( errors );
+    }
+
+    /**
+     * @return per-route latency and throughput metrics; see {@link ServerMetrics}
+     */
+    public ServerMetrics getMetrics()
+    {
+        return metrics;
+    }
+
+    /**
+     * Forget all expectations, errors, latencies, throttles, access counts and metrics.
+     */
+    public void reset()
+    {
+        routes.clear();
+        errors.clear();
+        accessesByPath.reset();
+        metrics.clear();
+    }
+
+    /**
+     * Reset and close all sessions and virtual hosts, so a pooled server can be handed to another test.
+     */
+    void recycle()
+    {
+        reset();
+        sessions.clear();
+        virtualHosts.clear();
+    }
+
+    void rebase( final String baseResource )
+    {
+        this.baseResource = normalizeBase( baseResource );
+    }
+
+    /**
+     * @return true if nothing has been registered with this servlet yet
+     */
+    boolean isPristine()
+    {
+        return routes.isEmpty() && errors.isEmpty() && serverBandwidth == null;
+    }
+
+    /**
+     * Open an isolated session: a servlet with its own expectations, errors and access counts, which this servlet
+     * dispatches to when a request carries the session's path prefix or {@link #SESSION_HEADER}.
+     *
+     * @param pathPrefix if true, the session's base resource is prefixed with
+     * <code>{@value #SESSION_PATH_PREFIX}{id}</code>; otherwise requests must carry the header
+     */
+    ExpectationServlet openSession( final String id, final boolean pathPrefix )
+    {
+        final String base = pathPrefix ? SESSION_PATH_PREFIX + id + ( "/".equals( baseResource ) ? "" : baseResource )
+                : baseResource;
+
+        final ExpectationServlet session = new ExpectationServlet( base );
+        session.serverBandwidth = serverBandwidth;
+        session.serverLimiter = serverLimiter;
+
+        if ( sessions.putIfAbsent( id, session ) != null )
+        {
+            throw new IllegalStateException( "Session already open: " + id );
+        }
+        return session;
+    }
+
+    void closeSession( final String id )
+    {
+        sessions.remove( id );
+    }
+
+    /**
+     * Open an independent registry for a virtual host, which this servlet dispatches to when a request's Host header
+     * names it. The registry shares this servlet's base resource.
+     */
+    ExpectationServlet openVirtualHost( final String host )
+    {
+        final ExpectationServlet vhost = new ExpectationServlet( baseResource );
+        vhost.serverBandwidth = serverBandwidth;
+        vhost.serverLimiter = serverLimiter;
+
+        if ( virtualHosts.putIfAbsent( host.toLowerCase(), vhost ) != null )
+        {
+            throw new IllegalStateException( "Virtual host already open: " + host );
+        }
+        return vhost;
+    }
+
+    void closeVirtualHost( final String host )
+    {
+        virtualHosts.remove( host.toLowerCase() );
+    }
+
+    /**
+     * @return the session or virtual host the request belongs to, or null if none
+     */
+    ExpectationServlet sessionFor( final String sessionHeader, final String hostHeader, final String uri )
+    {
+        if ( hostHeader != null && !virtualHosts.isEmpty() )
+        {
+            final int colon = hostHeader.lastIndexOf( ':' );
+            final String host = colon < 0 || hostHeader.endsWith( "]" ) ? hostHeader : hostHeader.substring( 0, colon );
+            final ExpectationServlet vhost = virtualHosts.get( host.toLowerCase() );
+            if ( vhost != null )
+            {
+                // sessions may be opened on a virtual host, too
+                final ExpectationServlet session = vhost.sessionFor( sessionHeader, null, uri );
+                return session != null ? session : vhost;
+            }
+        }
+
+        if ( sessions.isEmpty() )
+        {
+            return null;
+        }
+
+        if ( sessionHeader != null )
+        {
+            return sessions.get( sessionHeader );
+        }
+
+        if ( uri.startsWith( SESSION_PATH_PREFIX ) )
+        {
+            final int start = SESSION_PATH_PREFIX.length();
+            int end = uri.indexOf( '/', start );
+            if ( end < 0 )
+            {
+                end = uri.length();
+            }
+            return sessions.get( uri.substring( start, end ) );
+        }
+
+        return null;
     }
 
     public String getBaseResource()
@@ -96,7 +261,10 @@ public final class ExpectationServlet
         final String realPath = getPath( path );
         final String key = getAccessKey( method, realPath );
         logger.info( "Registering error: {}, code: {}, body:\n{}", key, code, error );
-        this.errors.put( key, new ContentResponse( method, realPath, code, error ) );
+
+        final ContentResponse response = new ContentResponse( method, realPath, code, error );
+        route( method, realPath ).error = response;
+        this.errors.put( key, response );
     }
 
     public String getAccessKey( final String method, final String path )
@@ -117,22 +285,90 @@ public final class ExpectationServlet
         return testUrl;
     }
 
+    private ExpectationRoute route( final String method, final String path )
+    {
+        return routes.computeIfAbsent( method, path, r -> new ExpectationRoute( accessesByPath.counter( r.toString() ),
+                                                                                r.path().indexOf( '?' ) >= 0 ) );
+    }
+
+    /**
+     * Register a body for the method and URL. The URL's path may be a template, using <code>{var}</code> for single
+     * segments and a trailing <code>**</code> for the rest of the path; see {@link RouteTable}.
+     */
     public void expect( final String method, final String testUrl, final int responseCode, final String body )
     {
         final String path = getPath( testUrl );
         final String key = getAccessKey( method, path );
         logger.info( "Registering expectation: {}, code: {}, body:\n{}", key, responseCode, body );
-        expectations.put( key, new ContentResponse( method, path, responseCode, body ) );
+        route( method, path ).expectation = new ContentResponse( method, path, responseCode, body );
+    }
+
+    /**
+     * Register a body that is encoded once, using the charset named in the content type (UTF-8 if none), and served
+     * with that content type and an explicit Content-Length.
+     */
+    public void expect( final String method, final String testUrl, final int responseCode, final String body,
+                        final String contentType )
+    {
+        final String path = getPath( testUrl );
+        final String key = getAccessKey( method, path );
+        logger.info( "Registering expectation: {}, code: {}, content type: {}, body:\n{}", key, responseCode,
+                     contentType, body );
+        route( method, path ).expectation = new ContentResponse( method, path, responseCode, body, contentType );
+    }
+
+    public void expect( final String method, final String testUrl, final int responseCode, final ResponseBody body )
+    {
+        final String path = getPath( testUrl );
+        final String key = getAccessKey( method, path );
+        logger.info( "Registering expectation: {}, code: {}, body: {}", key, responseCode, body );
+        route( method, path ).expectation = new ContentResponse( method, path, responseCode, body );
     }
 
+    /**
+     * Register a body read from the stream. The stream is drained and closed right away; its content is captured once
+     * (spilling large bodies to a memory-mapped temp file, see {@link SpooledBody}) and replayed on every request.
+     */
     public void expect( final String method, final String testUrl, final int responseCode,
                         final InputStream bodyStream )
     {
         final String path = getPath( testUrl );
 
         final String key = getAccessKey( method, path );
-        logger.info( "Registering expectation: {}, code: {}, body stream:\n{}", key, responseCode, bodyStream );
-        expectations.put( key, new ContentResponse( method, path, responseCode, bodyStream ) );
+        final SpooledBody body;
+        try
+        {
+            body = SpooledBody.capture( bodyStream, MappedFileBody.DEFAULT_CONTENT_TYPE );
+        }
+        catch ( final IOException e )
+        {
+            throw new IllegalArgumentException( "Failed to read body stream for: " + key, e );
+        }
+
+        logger.info( "Registering expectation: {}, code: {}, body stream: {}", key, responseCode, body );
+        route( method, path ).expectation = new ContentResponse( method, path, responseCode, body );
+    }
+
+    /**
+     * Register the content of a file, memory-mapped the first time it is served rather than copied.
+     */
+    public void expect( final String method, final String testUrl, final int responseCode, final Path file )
+    {
+        final String path = getPath( testUrl );
+
+        final String key = getAccessKey( method, path );
+        final MappedFileBody body;
+        try
+        {
+            body = new MappedFileBody( file );
+        }
+        catch ( final IOException e )
+        {
+            throw new IllegalArgumentException( "Failed to read file: " + file + " for: " + key, e );
+        }
+
+        logger.info( "Registering expectation: {}, code: {}, file: {}", key, responseCode, body );
+        route( method, path ).expectation = new ContentResponse( method, path, responseCode, body );
     }
 
     public void expect( String method, String testUrl, ExpectationHandler handler )
@@ -141,56 +377,224 @@ public final class ExpectationServlet
 
         final String key = getAccessKey( method, path );
         logger.info( "Registering expectation: {}, handler: {}", key, handler );
-        expectations.put( key, new ContentResponse( method, path, handler ) );
+        route( method, path ).expectation = new ContentResponse( method, path, handler );
+    }
+
+    /**
+     * Delay responses for the method and URL by a sample of the latency; see {@link Latency}. Applies to whatever is
+     * registered for the route, now or later, including errors and handlers.
+     */
+    public void delay( final String method, final String testUrl, final Latency latency )
+    {
+        final String path = getPath( testUrl );
+        logger.info( "Registering latency: {}, {}", getAccessKey( method, path ), latency );
+        route( method, path ).latency = latency;
+    }
+
+    /**
+     * Shape response bodies for the method and URL to the bandwidth. Each response gets the full bandwidth; see
+     * {@link #limitBandwidth(Bandwidth)} for a cap shared by all responses. Bodies produced by an
+     * {@link ExpectationHandler} are not shaped.
+     */
+    public void throttle( final String method, final String testUrl, final Bandwidth bandwidth )
+    {
+        final String path = getPath( testUrl );
+        logger.info( "Registering bandwidth: {}, {}", getAccessKey( method, path ), bandwidth );
+        route( method, path ).bandwidth = bandwidth;
+    }
+
+    /**
+     * Cap the bandwidth shared by all response bodies served from this servlet, or remove the cap if null.
+     */
+    public void limitBandwidth( final Bandwidth bandwidth )
+    {
+        this.serverBandwidth = bandwidth;
+        this.serverLimiter = bandwidth == null ? null : bandwidth.newLimiter();
+    }
+
+    Bandwidth serverBandwidth()
+    {
+        return serverBandwidth;
+    }
+
+    BandwidthLimiter serverLimiter()
+    {
+        return serverLimiter;
     }
 
     @Override
     protected void service( final HttpServletRequest req, final HttpServletResponse resp )
             throws ServletException, IOException
     {
-        String wholePath = getWholePath( req );
-        String key = getAccessKey( req.getMethod(), wholePath );
-        accessesByPath.merge(key, 1, Integer::sum);
+        final String method = req.getMethod();
+        final String uri = req.getRequestURI();
+        final String query = req.getQueryString();
 
-        boolean handled = handle( key, req, resp );
-        if (!handled)
+        final ExpectationServlet session = sessionFor( req.getHeader( SESSION_HEADER ), req.getHeader( "Host" ), uri );
+        if ( session != null )
         {
-            // try simple path
-            String simplePath = getSimplePath(req);
-            if (!simplePath.equals(wholePath))
-            {
-                key = getAccessKey(req.getMethod(), simplePath);
-                handled = handle(key, req, resp);
-            }
+            session.service( req, resp );
+            return;
+        }
+
+        final RouteTable.Route<ExpectationRoute> route = findRoute( method, uri, query );
+        final ExpectationRoute target = route == null ? null : route.value();
+        metricsFor( route ).attachCurrent();
+        recordAccess( route, method, uri, query );
+
+        final Latency latency = target == null ? null : target.latency;
+        final ContentResponse response = target == null ? null : target.response();
+        if ( target != null && RequestEvent.enabled() )
+        {
+            RequestEvent.describeCurrent( target.responseKind( response ), ExpectationRoute.responseType( response ) );
+        }
+        final IntToLongFunction pauses = "HEAD".equals( method ) || target == null || !target.isPaceable( response )
+                ? null
+                : target.pauses( latency, serverLimiter );
+        if ( latency != null || pauses != null )
+        {
+            respondLater( route, target, response, latency, pauses, req, resp );
+            return;
         }
 
-        if (!handled)
+        if ( target == null || !handle( route, target, req, resp ) )
         {
+            logger.debug( "No expectation registered for: {} {}", method, uri );
             resp.setStatus( 404 );
         }
     }
 
-    private boolean handle(String key, HttpServletRequest req, HttpServletResponse resp)
+    RouteTable.Route<ExpectationRoute> findRoute( final String method, final String uri, final String query )
+    {
+        return routes.find( method, uri, query );
+    }
+
+    /**
+     * @return the metrics to count a request for the route against; the route may be null if nothing matched
+     */
+    RouteMetrics metricsFor( final RouteTable.Route<ExpectationRoute> route )
+    {
+        final ExpectationRoute target = route == null ? null : route.value();
+        if ( target == null )
+        {
+            return metrics.unmatched();
+        }
+
+        RouteMetrics routeMetrics = target.metrics;
+        if ( routeMetrics == null )
+        {
+            routeMetrics = metrics.route( route.toString() );
+            target.metrics = routeMetrics;
+        }
+        return routeMetrics;
+    }
+
+    /**
+     * Count the request against its access key. The route may be null if nothing matched.
+     */
+    void recordAccess( final RouteTable.Route<ExpectationRoute> route, final String method, final String uri,
+                       final String query )
+    {
+        final ExpectationRoute target = route == null ? null : route.value();
+        if ( target != null && route.isLiteral() && method.equals( route.method() ) && ( query == null
+                || target.hasQuery ) )
+        {
+            // the request's access key is exactly the route's key
+            target.accesses.increment();
+        }
+        else
+        {
+            accessesByPath.increment( getAccessKey( method, query == null ? uri : uri + "?" + query ) );
+        }
+    }
+
+    /**
+     * Suspend the request and respond from a container thread once the IO thread's timer fires, pacing the body if
+     * there are pauses, so no thread is held while the request waits.
+     */
+    private void respondLater( final RouteTable.Route<ExpectationRoute> route, final ExpectationRoute target,
+                               final ContentResponse response, final Latency latency,
+                               final IntToLongFunction pauses, final HttpServletRequest req,
+                               final HttpServletResponse resp )
+    {
+        final AsyncContext context = req.startAsync();
+        context.setTimeout( 0 );
+
+        final XnioIoThread timer = PacedWriter.currentTimer();
+        final Runnable respond = () -> {
+            try
+            {
+                // views are taken here, so a body that fails to provide them gets a 500 like any other failure
+                final ChunkCursor chunks = pauses == null
+                        ? null
+                        : target.chunks( response, target.chunkSize( latency, serverBandwidth ) );
+                if ( chunks != null )
+                {
+                    resp.setStatus( response.code() );
+                    resp.setContentLengthLong( response.content().length() );
+                    if ( response.content().contentType() != null )
+                    {
+                        resp.setContentType( response.content().contentType() );
+                    }
+
+                    PacedWriter.write( context, timer, resp.getOutputStream(), chunks, pauses );
+                    return;
+                }
+                if ( pauses != null )
+                {
+                    logger.warn( "Cannot pace {}, which has no buffers; sending it in one go", response.content() );
+                }
+
+                if ( !handle( route, target, req, resp ) )
+                {
+                    resp.setStatus( 404 );
+                }
+            }
+            catch ( final Throwable e )
+            {
+                // handlers throw assertion errors too; with no async timeout, not completing would hang the client
+                logger.error( "Failed to send delayed response for: " + route, e );
+                if ( !resp.isCommitted() )
+                {
+                    resp.reset();
+                    resp.setStatus( 500 );
+                }
+            }
+
+            context.complete();
+        };
+
+        if ( latency == null )
+        {
+            respond.run();
+        }
+        else
+        {
+            PacedWriter.later( context, timer, latency.sampleNanos(), respond );
+        }
+    }
+
+    private boolean handle( final RouteTable.Route<ExpectationRoute> route, final ExpectationRoute target,
+                            final HttpServletRequest req, final HttpServletResponse resp )
             throws IOException, ServletException
     {
-        logger.info( "Looking for error: '{}' in:\n{}", key, errors );
-        if ( errors.containsKey( key ) )
+        final ContentResponse error = target.error;
+        if ( error != null )
         {
-            final ContentResponse error = errors.get( key );
             logger.error( "Returning registered error: {}", error );
 
             if ( error.handler() != null )
             {
-                error.handler().handle( req, resp );
+                error.handler().handle( req, resp, route.bindVariables( req.getRequestURI() ) );
             }
             else if ( error.body() != null )
             {
                 resp.sendError( error.code(), error.body() );
             }
-            else if ( error.bodyStream() != null )
+            else if ( error.content() != null )
             {
                 resp.setStatus( error.code() );
-                IOUtils.copy( error.bodyStream(), resp.getOutputStream() );
+                send( error.content(), req, resp );
             }
             else
             {
@@ -199,35 +603,27 @@ public final class ExpectationServlet
             return true;
         }
 
-        logger.info( "Looking for expectation: '{}'", key );
-        if ( expectations.containsKey( key ) )
+        final ContentResponse expectation = target.expectation;
+        if ( expectation != null )
         {
-            final ContentResponse expectation = expectations.get( key );
-            logger.info( "Responding via registered expectation: {}", expectation );
+            logger.debug( "Responding via registered expectation: {}", expectation );
 
             if ( expectation.handler() != null )
             {
-                expectation.handler().handle( req, resp );
-                logger.info( "Using handler..." );
+                expectation.handler().handle( req, resp, route.bindVariables( req.getRequestURI() ) );
+                logger.debug( "Using handler..." );
             }
-            else if ( expectation.body() != null )
+            else if ( expectation.content() != null )
             {
                 resp.setStatus( expectation.code() );
 
-                logger.info( "Set status: {} with body string", expectation.code() );
-                resp.getWriter().write( expectation.body() );
-            }
-            else if ( expectation.bodyStream() != null )
-            {
-                resp.setStatus( expectation.code() );
-
-                logger.info( "Set status: {} with body InputStream", expectation.code() );
-                IOUtils.copy( expectation.bodyStream(), resp.getOutputStream() );
+                logger.debug( "Set status: {} with body: {}", expectation.code(), expectation.content() );
+                send( expectation.content(), req, resp );
             }
             else
             {
                 resp.setStatus( expectation.code() );
-                logger.info( "Set status: {} with no body", expectation.code() );
+                logger.debug( "Set status: {} with no body", expectation.code() );
             }
             return true;
         }
@@ -235,29 +631,21 @@ public final class ExpectationServlet
         return false;
     }
 
-    /**
-     * Get path with query string.
-     */
-    private String getWholePath( HttpServletRequest request )
+    private void send( final ResponseBody body, final HttpServletRequest req, final HttpServletResponse resp )
+            throws IOException
     {
-        String requestURI = request.getRequestURI();
-        String queryString = request.getQueryString();
-
-        if ( queryString == null )
+        resp.setContentLengthLong( body.length() );
+        if ( body.contentType() != null )
         {
-            return requestURI;
+            resp.setContentType( body.contentType() );
         }
-        else
+
+        if ( !"HEAD".equals( req.getMethod() ) )
         {
-            return requestURI + "?" + queryString;
+            body.writeTo( resp.getOutputStream() );
         }
     }
 
-    private String getSimplePath( HttpServletRequest request )
-    {
-        return request.getRequestURI();
-    }
-
     public String getAccessKey( final CommonMethod method, final String path )
     {
         return getAccessKey( method.name(), path );
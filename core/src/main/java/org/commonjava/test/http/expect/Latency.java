@@ -0,0 +1,149 @@
+/**
+ * Copyright (C) 2011-2024 Red Hat, Inc. (https://github.com/Commonjava/http-testserver)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.test.http.expect;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Artificial latency for an expectation, registered with
+ * {@link ExpectationServer#delay(String, String, Latency)}. The server waits on Undertow's IO-thread timer rather than
+ * sleeping, so a delayed response doesn't hold a worker thread while it waits.
+ * <p>
+ * The delay applies to the first byte of the response (status line and headers). An optional per-chunk delay can be
+ * added with {@link #withChunkDelay(Latency, int)}. The body is then sent in chunks of the given size, with a pause
+ * sampled from the chunk latency after each one.
+ * <pre>
+ * server.delay( "GET", url, Latency.logNormal( 200, 0.5, TimeUnit.MILLISECONDS )
+ *                                  .withChunkDelay( Latency.uniform( 5, 20, TimeUnit.MILLISECONDS ), 4096 ) );
+ * </pre>
+ */
+public final class Latency
+{
+    private enum Distribution
+    {
+        FIXED, UNIFORM, LOG_NORMAL
+    }
+
+    private final Distribution distribution;
+
+    private final long nanos;
+
+    private final long maxNanos;
+
+    private final double sigma;
+
+    private final Latency chunkDelay;
+
+    private final int chunkSize;
+
+    private Latency( final Distribution distribution, final long nanos, final long maxNanos, final double sigma,
+                     final Latency chunkDelay, final int chunkSize )
+    {
+        this.distribution = distribution;
+        this.nanos = nanos;
+        this.maxNanos = maxNanos;
+        this.sigma = sigma;
+        this.chunkDelay = chunkDelay;
+        this.chunkSize = chunkSize;
+    }
+
+    public static Latency fixed( final long delay, final TimeUnit unit )
+    {
+        return new Latency( Distribution.FIXED, unit.toNanos( delay ), 0, 0, null, 0 );
+    }
+
+    /**
+     * Delay drawn uniformly from [min, max].
+     */
+    public static Latency uniform( final long min, final long max, final TimeUnit unit )
+    {
+        if ( max < min )
+        {
+            throw new IllegalArgumentException( "Uniform latency needs min <= max. Got: " + min + ", " + max );
+        }
+        return new Latency( Distribution.UNIFORM, unit.toNanos( min ), unit.toNanos( max ), 0, null, 0 );
+    }
+
+    /**
+     * Delay drawn from a log-normal distribution with the given median, and standard deviation <code>sigma</code> of the
+     * underlying normal distribution. This gives the long tail typical of real network latency.
+     */
+    public static Latency logNormal( final long median, final double sigma, final TimeUnit unit )
+    {
+        return new Latency( Distribution.LOG_NORMAL, unit.toNanos( median ), 0, sigma, null, 0 );
+    }
+
+    /**
+     * No delay before the first byte. The body is sent in chunks of <code>chunkSize</code> bytes, and the server waits
+     * for <code>delay</code> after each one.
+     */
+    public static Latency perChunk( final Latency delay, final int chunkSize )
+    {
+        return fixed( 0, TimeUnit.NANOSECONDS ).withChunkDelay( delay, chunkSize );
+    }
+
+    /**
+     * @return a copy of this latency that also sends the body in chunks of <code>chunkSize</code> bytes, waiting for
+     * <code>delay</code> after each one
+     */
+    public Latency withChunkDelay( final Latency delay, final int chunkSize )
+    {
+        if ( chunkSize < 1 )
+        {
+            throw new IllegalArgumentException( "Chunk size must be positive. Got: " + chunkSize );
+        }
+        return new Latency( distribution, nanos, maxNanos, sigma, delay, chunkSize );
+    }
+
+    /**
+     * @return a delay drawn from this distribution, in nanoseconds
+     */
+    public long sampleNanos()
+    {
+        switch ( distribution )
+        {
+            case UNIFORM:
+                return maxNanos == nanos ? nanos : ThreadLocalRandom.current().nextLong( nanos, maxNanos + 1 );
+            case LOG_NORMAL:
+                return (long) ( nanos * Math.exp( sigma * ThreadLocalRandom.current().nextGaussian() ) );
+            default:
+                return nanos;
+        }
+    }
+
+    /**
+     * @return the delay after each body chunk, or null if the body is sent in one go
+     */
+    public Latency chunkDelay()
+    {
+        return chunkDelay;
+    }
+
+    public int chunkSize()
+    {
+        return chunkSize;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "Latency{" + distribution + ", nanos=" + nanos + ( distribution == Distribution.UNIFORM ?
+                ", maxNanos=" + maxNanos :
+                "" ) + ( distribution == Distribution.LOG_NORMAL ? ", sigma=" + sigma : "" ) + (
+                chunkDelay == null ? "" : ", chunkDelay=" + chunkDelay + ", chunkSize=" + chunkSize ) + '}';
+    }
+}
@@ -0,0 +1,131 @@
+/**
+ * Copyright (C) 2011-2024 Red Hat, Inc. (https://github.com/Commonjava/http-testserver)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.test.http.expect;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * {@link ResponseBody} served from a file without copying it. The file is memory-mapped the first time the body is
+ * served, and every later request reads from the same mapping. The file must not change while it is registered.
+ */
+public final class MappedFileBody
+        implements ResponseBody
+{
+    public static final String DEFAULT_CONTENT_TYPE = "application/octet-stream";
+
+    private final Path file;
+
+    private final long length;
+
+    private final String contentType;
+
+    private volatile ByteBuffer[] buffers;
+
+    public MappedFileBody( final Path file )
+            throws IOException
+    {
+        this( file, null );
+    }
+
+    public MappedFileBody( final Path file, final String contentType )
+            throws IOException
+    {
+        this.file = file;
+        this.length = Files.size( file );
+
+        String type = contentType;
+        if ( type == null )
+        {
+            type = Files.probeContentType( file );
+        }
+        this.contentType = type == null ? DEFAULT_CONTENT_TYPE : type;
+    }
+
+    public Path getFile()
+    {
+        return file;
+    }
+
+    @Override
+    public long length()
+    {
+        return length;
+    }
+
+    @Override
+    public String contentType()
+    {
+        return contentType;
+    }
+
+    @Override
+    public ByteBuffer[] buffers()
+    {
+        try
+        {
+            return BodyBuffers.duplicates( mapped() );
+        }
+        catch ( IOException e )
+        {
+            throw new UncheckedIOException( "Cannot map: " + file, e );
+        }
+    }
+
+    @Override
+    public void writeTo( final OutputStream out )
+            throws IOException
+    {
+        for ( ByteBuffer buffer : mapped() )
+        {
+            BodyBuffers.write( buffer.duplicate(), out );
+        }
+    }
+
+    private ByteBuffer[] mapped()
+            throws IOException
+    {
+        ByteBuffer[] result = buffers;
+        if ( result == null )
+        {
+            synchronized ( this )
+            {
+                result = buffers;
+                if ( result == null )
+                {
+                    try (FileChannel channel = FileChannel.open( file, StandardOpenOption.READ ))
+                    {
+                        result = BodyBuffers.map( channel, length );
+                    }
+                    buffers = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "MappedFileBody{file=" + file + ", length=" + length + ", contentType='" + contentType + "'}";
+    }
+}
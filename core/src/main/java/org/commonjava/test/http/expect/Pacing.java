@@ -0,0 +1,90 @@
+/**
+ * Copyright (C) 2011-2024 Red Hat, Inc. (https://github.com/Commonjava/http-testserver)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.test.http.expect;
+
+import io.undertow.io.IoCallback;
+import io.undertow.io.Sender;
+import io.undertow.server.Connectors;
+import io.undertow.server.HttpHandler;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.SameThreadExecutor;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntToLongFunction;
+
+/**
+ * Schedules delayed response steps for the native engine on the connection's IO-thread timer instead of sleeping.
+ * Nothing holds a thread while a response waits, so a single server can keep thousands of delayed responses in flight.
+ * The servlet engine does the same through {@link org.commonjava.test.http.common.PacedWriter}.
+ */
+final class Pacing
+{
+    private Pacing()
+    {
+    }
+
+    /**
+     * Run <code>next</code> as a new root handler invocation for the exchange after the delay. Must be called either
+     * from within a handler for the exchange or from one of its IO callbacks.
+     */
+    static void later( final HttpServerExchange exchange, final long nanos, final HttpHandler next )
+    {
+        final Runnable fire = () -> Connectors.executeRootHandler( next, exchange );
+        exchange.dispatch( SameThreadExecutor.INSTANCE,
+                           () -> exchange.getIoThread().executeAfter( fire, Math.max( 0, nanos ), TimeUnit.NANOSECONDS ) );
+    }
+
+    /**
+     * Send the body chunk by chunk with non-blocking writes, pausing after each chunk for whatever
+     * <code>pauses</code> returns for its size. Ends the exchange after the last chunk.
+     */
+    static void sendChunks( final HttpServerExchange exchange, final ChunkCursor cursor,
+                            final IntToLongFunction pauses )
+    {
+        final ByteBuffer chunk = cursor.next();
+        if ( chunk == null )
+        {
+            exchange.endExchange();
+            return;
+        }
+
+        final int size = chunk.remaining();
+        exchange.getResponseSender().send( chunk, new IoCallback()
+        {
+            @Override
+            public void onComplete( final HttpServerExchange exchange, final Sender sender )
+            {
+                if ( cursor.hasNext() )
+                {
+                    later( exchange, pauses.applyAsLong( size ), ex -> sendChunks( ex, cursor, pauses ) );
+                }
+                else
+                {
+                    exchange.endExchange();
+                }
+            }
+
+            @Override
+            public void onException( final HttpServerExchange exchange, final Sender sender,
+                                     final IOException exception )
+            {
+                IoCallback.END_EXCHANGE.onException( exchange, sender, exception );
+            }
+        } );
+    }
+}
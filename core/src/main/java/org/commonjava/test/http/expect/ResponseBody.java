@@ -0,0 +1,46 @@
+/**
+ * Copyright (C) 2011-2024 Red Hat, Inc. (https://github.com/Commonjava/http-testserver)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.test.http.expect;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * A response body that is prepared once, when the expectation is registered, and can then be served any number of
+ * times, from any number of threads.
+ */
+public interface ResponseBody
+{
+    /**
+     * @return the exact number of bytes {@link #writeTo(OutputStream)} will write, sent as Content-Length
+     */
+    long length();
+
+    /**
+     * @return the Content-Type to declare, including the charset where it applies; may be null
+     */
+    String contentType();
+
+    /**
+     * @return read-only views over the whole body, independent of any other caller's views; or null if this body is not
+     * held in buffers and has to be written with {@link #writeTo(OutputStream)}
+     */
+    ByteBuffer[] buffers();
+
+    void writeTo( OutputStream out )
+            throws IOException;
+}
@@ -0,0 +1,439 @@
+/**
+ * Copyright (C) 2011-2024 Red Hat, Inc. (https://github.com/Commonjava/http-testserver)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.test.http.expect;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+
+/**
+ * Method-indexed segment trie used to dispatch requests to registered expectations.
+ * <p>
+ * Paths are split on '/', and each segment of a registered path may be:
+ * <ul>
+ *     <li>a literal, matched exactly</li>
+ *     <li><code>{name}</code>, matching any single segment and binding it to <code>name</code></li>
+ *     <li><code>**</code>, only allowed as the last segment, matching the remainder of the path (zero or more segments)
+ *     </li>
+ * </ul>
+ * Literal segments win over variables, and variables win over <code>**</code>. Registered paths may also carry a
+ * query string, which then has to match the request's query string exactly; such routes win over the same path without
+ * a query.
+ * <p>
+ * Lookups walk the request URI in place and don't allocate. Writes are serialized, but readers never lock.
+ */
+public final class RouteTable<T>
+{
+    private static final String WILDCARD = "**";
+
+    private final ConcurrentMap<String, Node<T>> roots = new ConcurrentHashMap<>();
+
+    /**
+     * Return the value registered for the method and path (which may include a query string), creating it with the
+     * factory if there is none yet.
+     */
+    public synchronized T computeIfAbsent( final String method, final String path, final Function<Route<T>, T> factory )
+    {
+        final String upperMethod = method.toUpperCase();
+        Node<T> node = roots.computeIfAbsent( upperMethod, m -> new Node<>( null ) );
+
+        final int queryIdx = path.indexOf( '?' );
+        final String pathPart = queryIdx < 0 ? path : path.substring( 0, queryIdx );
+        final String query = queryIdx < 0 ? null : path.substring( queryIdx + 1 );
+
+        final String[] segments = split( pathPart );
+        for ( int i = 0; i < segments.length; i++ )
+        {
+            final String segment = segments[i];
+            if ( WILDCARD.equals( segment ) )
+            {
+                if ( i != segments.length - 1 )
+                {
+                    throw new IllegalArgumentException( "'**' is only allowed as the last path segment: " + path );
+                }
+
+                if ( node.wildcard == null )
+                {
+                    node.wildcard = new Node<>( null );
+                }
+                node = node.wildcard;
+            }
+            else if ( isVariable( segment ) )
+            {
+                if ( node.variable == null )
+                {
+                    node.variable = new Node<>( null );
+                }
+                node = node.variable;
+            }
+            else
+            {
+                node = node.literalChild( segment );
+            }
+        }
+
+        Route<T> route = query == null ? node.route : node.queryRoutes().get( query );
+        if ( route == null )
+        {
+            route = new Route<>( upperMethod, path, segments );
+            route.value = factory.apply( route );
+            if ( query == null )
+            {
+                node.route = route;
+            }
+            else
+            {
+                node.queryRoutes().put( query, route );
+            }
+        }
+
+        return route.value;
+    }
+
+    /**
+     * Find the best route for the request.
+     *
+     * @param method HTTP method of the request
+     * @param requestUri the raw request URI, without query string
+     * @param query the raw query string, or null
+     * @return the matching route, or null
+     */
+    public Route<T> find( final String method, final String requestUri, final String query )
+    {
+        Node<T> root = roots.get( method );
+        if ( root == null )
+        {
+            root = roots.get( method.toUpperCase() );
+            if ( root == null )
+            {
+                return null;
+            }
+        }
+
+        final int start = requestUri.startsWith( "/" ) ? 1 : 0;
+        return find( root, requestUri, start, query );
+    }
+
+    public boolean isEmpty()
+    {
+        return roots.isEmpty();
+    }
+
+    public synchronized void clear()
+    {
+        roots.clear();
+    }
+
+    private Route<T> find( final Node<T> node, final String uri, final int start, final String query )
+    {
+        if ( start > uri.length() )
+        {
+            final Route<T> route = node.routeFor( query );
+            if ( route == null && node.wildcard != null )
+            {
+                return node.wildcard.routeFor( query );
+            }
+            return route;
+        }
+
+        int end = uri.indexOf( '/', start );
+        if ( end < 0 )
+        {
+            end = uri.length();
+        }
+
+        final Node<T> literal = node.findLiteral( uri, start, end );
+        if ( literal != null )
+        {
+            final Route<T> route = find( literal, uri, end + 1, query );
+            if ( route != null )
+            {
+                return route;
+            }
+        }
+
+        final Node<T> variable = node.variable;
+        if ( variable != null )
+        {
+            final Route<T> route = find( variable, uri, end + 1, query );
+            if ( route != null )
+            {
+                return route;
+            }
+        }
+
+        final Node<T> wildcard = node.wildcard;
+        if ( wildcard != null )
+        {
+            return wildcard.routeFor( query );
+        }
+
+        return null;
+    }
+
+    private static boolean isVariable( final String segment )
+    {
+        return segment.length() > 2 && segment.charAt( 0 ) == '{' && segment.charAt( segment.length() - 1 ) == '}';
+    }
+
+    private static String[] split( final String path )
+    {
+        final String p = path.startsWith( "/" ) ? path.substring( 1 ) : path;
+        return p.split( "/", -1 );
+    }
+
+    private static int hash( final String s, final int start, final int end )
+    {
+        int h = 0;
+        for ( int i = start; i < end; i++ )
+        {
+            h = 31 * h + s.charAt( i );
+        }
+        return h;
+    }
+
+    /**
+     * A registered method + path template, holding the value stored for it.
+     */
+    public static final class Route<T>
+    {
+        private final String method;
+
+        private final String path;
+
+        private final String[] segments;
+
+        private final boolean literal;
+
+        private volatile T value;
+
+        private Route( final String method, final String path, final String[] segments )
+        {
+            this.method = method;
+            this.path = path;
+            this.segments = segments;
+
+            boolean literal = true;
+            for ( String segment : segments )
+            {
+                if ( WILDCARD.equals( segment ) || isVariable( segment ) )
+                {
+                    literal = false;
+                    break;
+                }
+            }
+            this.literal = literal;
+        }
+
+        public String method()
+        {
+            return method;
+        }
+
+        /**
+         * @return the path this route was registered with, including any query string
+         */
+        public String path()
+        {
+            return path;
+        }
+
+        public T value()
+        {
+            return value;
+        }
+
+        /**
+         * @return true if this route has no <code>{var}</code> or <code>**</code> segments
+         */
+        public boolean isLiteral()
+        {
+            return literal;
+        }
+
+        /**
+         * Extract the values bound to this route's <code>{var}</code> segments (and to <code>**</code>, if present)
+         * from a request URI that this route matched.
+         */
+        public Map<String, String> bindVariables( final String requestUri )
+        {
+            if ( literal )
+            {
+                return Collections.emptyMap();
+            }
+
+            final Map<String, String> bindings = new LinkedHashMap<>();
+            int start = requestUri.startsWith( "/" ) ? 1 : 0;
+            for ( String segment : segments )
+            {
+                if ( WILDCARD.equals( segment ) )
+                {
+                    bindings.put( WILDCARD, start > requestUri.length() ? "" : requestUri.substring( start ) );
+                    break;
+                }
+
+                int end = requestUri.indexOf( '/', start );
+                if ( end < 0 )
+                {
+                    end = requestUri.length();
+                }
+
+                if ( isVariable( segment ) )
+                {
+                    bindings.put( segment.substring( 1, segment.length() - 1 ), requestUri.substring( start, end ) );
+                }
+                start = end + 1;
+            }
+
+            return Collections.unmodifiableMap( bindings );
+        }
+
+        @Override
+        public String toString()
+        {
+            return method + " " + path;
+        }
+    }
+
+    private static final class Node<T>
+    {
+        private final String segment;
+
+        private volatile AtomicReferenceArray<Node<T>> literals;
+
+        private int literalCount;
+
+        private volatile Node<T> variable;
+
+        private volatile Node<T> wildcard;
+
+        private volatile Route<T> route;
+
+        private volatile ConcurrentMap<String, Route<T>> queryRoutes;
+
+        private Node( final String segment )
+        {
+            this.segment = segment;
+        }
+
+        private Route<T> routeFor( final String query )
+        {
+            if ( query != null )
+            {
+                final ConcurrentMap<String, Route<T>> qr = queryRoutes;
+                if ( qr != null )
+                {
+                    final Route<T> route = qr.get( query );
+                    if ( route != null )
+                    {
+                        return route;
+                    }
+                }
+            }
+
+            return route;
+        }
+
+        private ConcurrentMap<String, Route<T>> queryRoutes()
+        {
+            if ( queryRoutes == null )
+            {
+                queryRoutes = new ConcurrentHashMap<>();
+            }
+            return queryRoutes;
+        }
+
+        private Node<T> findLiteral( final String uri, final int start, final int end )
+        {
+            final AtomicReferenceArray<Node<T>> table = literals;
+            if ( table == null )
+            {
+                return null;
+            }
+
+            final int len = end - start;
+            final int mask = table.length() - 1;
+            int idx = spread( hash( uri, start, end ) ) & mask;
+            Node<T> candidate;
+            while ( ( candidate = table.get( idx ) ) != null )
+            {
+                if ( candidate.segment.length() == len && uri.regionMatches( start, candidate.segment, 0, len ) )
+                {
+                    return candidate;
+                }
+                idx = ( idx + 1 ) & mask;
+            }
+
+            return null;
+        }
+
+        // only called while holding the RouteTable lock
+        private Node<T> literalChild( final String segment )
+        {
+            final Node<T> existing = findLiteral( segment, 0, segment.length() );
+            if ( existing != null )
+            {
+                return existing;
+            }
+
+            AtomicReferenceArray<Node<T>> table = literals;
+            if ( table == null )
+            {
+                table = new AtomicReferenceArray<>( 4 );
+            }
+            else if ( ( literalCount + 1 ) * 4 > table.length() * 3 )
+            {
+                final AtomicReferenceArray<Node<T>> resized = new AtomicReferenceArray<>( table.length() * 2 );
+                for ( int i = 0; i < table.length(); i++ )
+                {
+                    final Node<T> n = table.get( i );
+                    if ( n != null )
+                    {
+                        insert( resized, n );
+                    }
+                }
+                table = resized;
+            }
+
+            final Node<T> child = new Node<>( segment );
+            insert( table, child );
+            literalCount++;
+            literals = table;
+
+            return child;
+        }
+
+        private static <T> void insert( final AtomicReferenceArray<Node<T>> table, final Node<T> node )
+        {
+            final int mask = table.length() - 1;
+            int idx = spread( node.segment.hashCode() ) & mask;
+            while ( table.get( idx ) != null )
+            {
+                idx = ( idx + 1 ) & mask;
+            }
+            table.set( idx, node );
+        }
+
+        private static int spread( final int h )
+        {
+            return h ^ ( h >>> 16 );
+        }
+    }
+}
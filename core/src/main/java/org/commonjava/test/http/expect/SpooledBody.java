@@ -0,0 +1,203 @@
+/**
+ * Copyright (C) 2011-2024 Red Hat, Inc. (https://github.com/Commonjava/http-testserver)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.test.http.expect;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * {@link ResponseBody} captured from an {@link InputStream} once, so it can be replayed on every request. Up to
+ * {@link #getDefaultThreshold()} bytes are kept on the heap; anything larger is spilled to a temp file, which is then
+ * memory-mapped and served straight from the page cache.
+ * <p>
+ * The threshold defaults to 4 MiB and can be changed with the <code>http-testserver.spool.threshold</code> system
+ * property (in bytes).
+ */
+public final class SpooledBody
+        implements ResponseBody
+{
+    public static final String THRESHOLD_PROPERTY = "http-testserver.spool.threshold";
+
+    private static final int DEFAULT_THRESHOLD = 4 * 1024 * 1024;
+
+    private final ByteBuffer[] buffers;
+
+    private final long length;
+
+    private final String contentType;
+
+    private final boolean mapped;
+
+    // the captured bytes of a body kept on the heap, written as-is; null if mapped
+    private final byte[] bytes;
+
+    private SpooledBody( final ByteBuffer[] buffers, final String contentType, final boolean mapped,
+                         final byte[] bytes )
+    {
+        this.buffers = buffers;
+        this.length = BodyBuffers.length( buffers );
+        this.contentType = contentType;
+        this.mapped = mapped;
+        this.bytes = bytes;
+    }
+
+    public static int getDefaultThreshold()
+    {
+        return Integer.getInteger( THRESHOLD_PROPERTY, DEFAULT_THRESHOLD );
+    }
+
+    /**
+     * Drain and close the stream, using the default in-memory threshold.
+     */
+    public static SpooledBody capture( final InputStream in, final String contentType )
+            throws IOException
+    {
+        return capture( in, contentType, getDefaultThreshold() );
+    }
+
+    /**
+     * Drain and close the stream, keeping it on the heap if it fits in <code>threshold</code> bytes and spilling it to
+     * a memory-mapped temp file otherwise.
+     */
+    public static SpooledBody capture( final InputStream in, final String contentType, final int threshold )
+            throws IOException
+    {
+        try (InputStream stream = in)
+        {
+            byte[] memory = new byte[Math.min( threshold + 1, 8192 )];
+            int size = 0;
+            int read;
+            while ( size <= threshold && ( read = stream.read( memory, size, memory.length - size ) ) > -1 )
+            {
+                size += read;
+                if ( size == memory.length && size <= threshold )
+                {
+                    memory = Arrays.copyOf( memory, Math.min( threshold + 1, memory.length * 2 ) );
+                }
+            }
+
+            if ( size <= threshold )
+            {
+                final byte[] captured = size == memory.length ? memory : Arrays.copyOf( memory, size );
+                final ByteBuffer heap = ByteBuffer.wrap( captured ).asReadOnlyBuffer();
+                return new SpooledBody( new ByteBuffer[] { heap }, contentType, false, captured );
+            }
+
+            return new SpooledBody( spill( memory, size, stream ), contentType, true, null );
+        }
+    }
+
+    private static ByteBuffer[] spill( final byte[] head, final int headLength, final InputStream rest )
+            throws IOException
+    {
+        final Path tmp = Files.createTempFile( "http-testserver-", ".body" );
+        tmp.toFile().deleteOnExit();
+
+        try (FileChannel channel = FileChannel.open( tmp, StandardOpenOption.READ, StandardOpenOption.WRITE ))
+        {
+            ByteBuffer chunk = ByteBuffer.wrap( head, 0, headLength );
+            while ( chunk.hasRemaining() )
+            {
+                channel.write( chunk );
+            }
+
+            final byte[] copy = new byte[64 * 1024];
+            int read;
+            while ( ( read = rest.read( copy ) ) > -1 )
+            {
+                chunk = ByteBuffer.wrap( copy, 0, read );
+                while ( chunk.hasRemaining() )
+                {
+                    channel.write( chunk );
+                }
+            }
+
+            // mappings stay valid after the channel is closed
+            return BodyBuffers.map( channel, channel.size() );
+        }
+        finally
+        {
+            try
+            {
+                Files.deleteIfExists( tmp );
+            }
+            catch ( IOException e )
+            {
+                // some platforms won't delete a mapped file; deleteOnExit() covers it
+                Logger logger = LoggerFactory.getLogger( SpooledBody.class );
+                logger.debug( "Cannot delete spool file {} yet: {}", tmp, e.getMessage() );
+            }
+        }
+    }
+
+    /**
+     * @return true if the body was spilled to a memory-mapped file
+     */
+    public boolean isMapped()
+    {
+        return mapped;
+    }
+
+    @Override
+    public long length()
+    {
+        return length;
+    }
+
+    @Override
+    public String contentType()
+    {
+        return contentType;
+    }
+
+    @Override
+    public ByteBuffer[] buffers()
+    {
+        return BodyBuffers.duplicates( buffers );
+    }
+
+    @Override
+    public void writeTo( final OutputStream out )
+            throws IOException
+    {
+        if ( bytes != null )
+        {
+            out.write( bytes );
+            return;
+        }
+
+        for ( ByteBuffer buffer : buffers )
+        {
+            BodyBuffers.write( buffer.duplicate(), out );
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return "SpooledBody{length=" + length + ", contentType='" + contentType + "', mapped=" + isMapped() + "}";
+    }
+}
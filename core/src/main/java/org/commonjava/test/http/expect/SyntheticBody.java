@@ -0,0 +1,290 @@
+/**
+ * Copyright (C) 2011-2024 Red Hat, Inc. (https://github.com/Commonjava/http-testserver)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.test.http.expect;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link ResponseBody} of any declared length, generated from one small block that is repeated until the length is
+ * reached, so multi-GB downloads can be tested without a file or array of that size. The block is filled from a seed,
+ * so the same length, pattern, seed and block size always give the same body.
+ * <p>
+ * Clients can check what they downloaded with {@link #checksum(String)}, which is computed once per algorithm and
+ * then remembered, or more cheaply with {@link #verify(InputStream)}.
+ */
+public final class SyntheticBody
+        implements ResponseBody
+{
+    public static final String DEFAULT_CONTENT_TYPE = "application/octet-stream";
+
+    public static final int DEFAULT_BLOCK_SIZE = 64 * 1024;
+
+    /**
+     * Bodies of up to this many blocks are also served as buffer views over the block; larger ones are streamed. Bodies
+     * of any length can be paced by {@link Latency} chunk delays and {@link org.commonjava.test.http.common.Bandwidth}
+     * throttles, which walk a single view of the block.
+     */
+    public static final int MAX_VIEWS = 4096;
+
+    /**
+     * How the block is filled.
+     */
+    public enum Pattern
+    {
+        /**
+         * Pseudo-random bytes from {@link Random} with the seed.
+         */
+        RANDOM,
+
+        /**
+         * The byte values 0 to 255 in turn, starting at the seed's low byte; compresses well and is easy to read.
+         */
+        SEQUENTIAL,
+
+        ZEROS
+    }
+
+    private final long length;
+
+    private final Pattern pattern;
+
+    private final long seed;
+
+    private final String contentType;
+
+    private final byte[] block;
+
+    private final Map<String, String> checksums = new ConcurrentHashMap<>();
+
+    private SyntheticBody( final long length, final Pattern pattern, final long seed, final int blockSize,
+                           final String contentType )
+    {
+        if ( length < 0 )
+        {
+            throw new IllegalArgumentException( "Body length must not be negative: " + length );
+        }
+        if ( blockSize < 1 )
+        {
+            throw new IllegalArgumentException( "Block size must be positive: " + blockSize );
+        }
+
+        this.length = length;
+        this.pattern = pattern;
+        this.seed = seed;
+        this.contentType = contentType == null ? DEFAULT_CONTENT_TYPE : contentType;
+        this.block = fill( new byte[(int) Math.min( blockSize, Math.max( length, 1 ) )], pattern, seed );
+    }
+
+    public static SyntheticBody random( final long length, final long seed )
+    {
+        return new SyntheticBody( length, Pattern.RANDOM, seed, DEFAULT_BLOCK_SIZE, null );
+    }
+
+    public static SyntheticBody sequential( final long length )
+    {
+        return new SyntheticBody( length, Pattern.SEQUENTIAL, 0, DEFAULT_BLOCK_SIZE, null );
+    }
+
+    public static SyntheticBody zeros( final long length )
+    {
+        return new SyntheticBody( length, Pattern.ZEROS, 0, DEFAULT_BLOCK_SIZE, null );
+    }
+
+    public static SyntheticBody of( final long length, final Pattern pattern, final long seed )
+    {
+        return new SyntheticBody( length, pattern, seed, DEFAULT_BLOCK_SIZE, null );
+    }
+
+    /**
+     * @return the same body generated from a block of this size, which is all it keeps in memory
+     */
+    public SyntheticBody withBlockSize( final int blockSize )
+    {
+        return new SyntheticBody( length, pattern, seed, blockSize, contentType );
+    }
+
+    public SyntheticBody withContentType( final String contentType )
+    {
+        return new SyntheticBody( length, pattern, seed, block.length, contentType );
+    }
+
+    private static byte[] fill( final byte[] block, final Pattern pattern, final long seed )
+    {
+        switch ( pattern )
+        {
+            case RANDOM:
+                new Random( seed ).nextBytes( block );
+                break;
+            case SEQUENTIAL:
+                for ( int i = 0; i < block.length; i++ )
+                {
+                    block[i] = (byte) ( seed + i );
+                }
+                break;
+            default:
+                break;
+        }
+        return block;
+    }
+
+    @Override
+    public long length()
+    {
+        return length;
+    }
+
+    @Override
+    public String contentType()
+    {
+        return contentType;
+    }
+
+    public Pattern pattern()
+    {
+        return pattern;
+    }
+
+    public long seed()
+    {
+        return seed;
+    }
+
+    public int blockSize()
+    {
+        return block.length;
+    }
+
+    @Override
+    public ByteBuffer[] buffers()
+    {
+        final long count = ( length + block.length - 1 ) / block.length;
+        if ( count > MAX_VIEWS )
+        {
+            return null;
+        }
+
+        final ByteBuffer view = ByteBuffer.wrap( block ).asReadOnlyBuffer();
+        final ByteBuffer[] views = new ByteBuffer[(int) count];
+        for ( int i = 0; i < views.length; i++ )
+        {
+            final int size = (int) Math.min( block.length, length - (long) i * block.length );
+            views[i] = view.duplicate().limit( size );
+        }
+        return views;
+    }
+
+    /**
+     * @return a cursor over the whole body that rewinds one view of the block, whatever the length
+     */
+    ChunkCursor chunks( final int chunkSize )
+    {
+        return ChunkCursor.repeating( ByteBuffer.wrap( block ).asReadOnlyBuffer(), length, chunkSize );
+    }
+
+    @Override
+    public void writeTo( final OutputStream out )
+            throws IOException
+    {
+        long remaining = length;
+        while ( remaining > 0 )
+        {
+            final int size = (int) Math.min( block.length, remaining );
+            out.write( block, 0, size );
+            remaining -= size;
+        }
+    }
+
+    /**
+     * @return the hex digest of the whole body with the algorithm (e.g. <code>SHA-256</code>), computed the first
+     * time it is asked for
+     */
+    public String checksum( final String algorithm )
+    {
+        return checksums.computeIfAbsent( algorithm, this::digest );
+    }
+
+    public String sha256()
+    {
+        return checksum( "SHA-256" );
+    }
+
+    private String digest( final String algorithm )
+    {
+        final MessageDigest digest;
+        try
+        {
+            digest = MessageDigest.getInstance( algorithm );
+        }
+        catch ( final NoSuchAlgorithmException e )
+        {
+            throw new IllegalArgumentException( "Unknown digest algorithm: " + algorithm, e );
+        }
+
+        long remaining = length;
+        while ( remaining > 0 )
+        {
+            final int size = (int) Math.min( block.length, remaining );
+            digest.update( block, 0, size );
+            remaining -= size;
+        }
+
+        final StringBuilder hex = new StringBuilder();
+        for ( byte b : digest.digest() )
+        {
+            hex.append( Character.forDigit( ( b >> 4 ) & 0xF, 16 ) ).append( Character.forDigit( b & 0xF, 16 ) );
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Read the stream to its end and compare it to this body byte by byte, without hashing or buffering it.
+     *
+     * @return true if the stream holds exactly this body
+     */
+    public boolean verify( final InputStream in )
+            throws IOException
+    {
+        final byte[] buffer = new byte[block.length];
+        long position = 0;
+        int read;
+        while ( ( read = in.read( buffer ) ) > 0 )
+        {
+            for ( int i = 0; i < read; i++, position++ )
+            {
+                if ( position >= length || buffer[i] != block[(int) ( position % block.length )] )
+                {
+                    return false;
+                }
+            }
+        }
+        return position == length;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "SyntheticBody{length=" + length + ", pattern=" + pattern + ", seed=" + seed + ", blockSize="
+                + block.length + ", contentType='" + contentType + "'}";
+    }
+}
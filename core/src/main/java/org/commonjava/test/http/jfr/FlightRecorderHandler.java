@@ -0,0 +1,76 @@
+/**
+ * Copyright (C) 2011-2024 Red Hat, Inc. (https://github.com/Commonjava/http-testserver)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.test.http.jfr;
+
+import io.undertow.server.ExchangeCompletionListener;
+import io.undertow.server.HttpHandler;
+import io.undertow.server.HttpServerExchange;
+import org.commonjava.test.http.common.RouteMetrics;
+
+/**
+ * Root handler that emits a {@link RequestEvent} for every exchange while a JFR recording has it enabled. When it is
+ * not enabled, this costs one check per request and nothing is allocated.
+ */
+public final class FlightRecorderHandler
+        implements HttpHandler
+{
+    private static final ExchangeCompletionListener COMMIT = ( exchange, nextListener ) -> {
+        try
+        {
+            final RequestEvent event = exchange.getAttachment( RequestEvent.ATTACHMENT );
+            if ( event != null )
+            {
+                event.end();
+                if ( event.shouldCommit() )
+                {
+                    final RouteMetrics route = exchange.getAttachment( RouteMetrics.ATTACHMENT );
+                    event.route = route == null ? null : route.key();
+                    event.status = exchange.getStatusCode();
+                    event.bytesRead = exchange.getRequestBytesRead();
+                    event.bytesWritten = exchange.getResponseBytesSent();
+                    event.commit();
+                }
+            }
+        }
+        finally
+        {
+            nextListener.proceed();
+        }
+    };
+
+    private final HttpHandler next;
+
+    public FlightRecorderHandler( final HttpHandler next )
+    {
+        this.next = next;
+    }
+
+    @Override
+    public void handleRequest( final HttpServerExchange exchange )
+            throws Exception
+    {
+        if ( RequestEvent.enabled() )
+        {
+            final RequestEvent event = new RequestEvent();
+            event.method = exchange.getRequestMethod().toString();
+            event.path = exchange.getRequestPath();
+            event.begin();
+            exchange.putAttachment( RequestEvent.ATTACHMENT, event );
+            exchange.addExchangeCompleteListener( COMMIT );
+        }
+        next.handleRequest( exchange );
+    }
+}
@@ -0,0 +1,107 @@
+/**
+ * Copyright (C) 2011-2024 Red Hat, Inc. (https://github.com/Commonjava/http-testserver)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.test.http.jfr;
+
+import io.undertow.server.HttpServerExchange;
+import io.undertow.servlet.handlers.ServletRequestContext;
+import io.undertow.util.AttachmentKey;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * One request handled by a test server, from the start of the request to the end of the response, so the server side
+ * shows up on the same JFR timeline as the client under test.
+ */
+@Name( "org.commonjava.test.http.Request" )
+@Label( "Test Server Request" )
+@Category( { "HTTP Test Server" } )
+@Description( "A request served by an ExpectationServer or StreamServer" )
+@StackTrace( false )
+public final class RequestEvent
+        extends Event
+{
+    static final AttachmentKey<RequestEvent> ATTACHMENT = AttachmentKey.create( RequestEvent.class );
+
+    private static final EventType TYPE = EventType.getEventType( RequestEvent.class );
+
+    @Label( "Method" )
+    String method;
+
+    @Label( "Path" )
+    String path;
+
+    @Label( "Route" )
+    @Description( "The matched expectation or stream key, or UNMATCHED" )
+    String route;
+
+    @Label( "Response Kind" )
+    @Description( "expectation, error, or empty if nothing matched" )
+    String responseKind;
+
+    @Label( "Response Type" )
+    @Description( "How the response is produced: a ResponseBody class, handler, or status" )
+    String responseType;
+
+    @Label( "Status" )
+    int status;
+
+    @Label( "Bytes Read" )
+    @DataAmount
+    long bytesRead;
+
+    @Label( "Bytes Written" )
+    @DataAmount
+    long bytesWritten;
+
+    /**
+     * @return true if a recording has this event enabled; callers check this before doing any work for the event
+     */
+    public static boolean enabled()
+    {
+        return TYPE.isEnabled();
+    }
+
+    /**
+     * Note what kind of response the request matched, if the request is being recorded.
+     */
+    public static void describe( final HttpServerExchange exchange, final String kind, final String type )
+    {
+        final RequestEvent event = exchange.getAttachment( ATTACHMENT );
+        if ( event != null )
+        {
+            event.responseKind = kind;
+            event.responseType = type;
+        }
+    }
+
+    /**
+     * {@link #describe(HttpServerExchange, String, String)} the servlet request being handled on this thread.
+     */
+    public static void describeCurrent( final String kind, final String type )
+    {
+        final ServletRequestContext context = ServletRequestContext.current();
+        if ( context != null )
+        {
+            describe( context.getExchange(), kind, type );
+        }
+    }
+}
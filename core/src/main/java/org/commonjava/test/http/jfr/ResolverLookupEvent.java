@@ -0,0 +1,75 @@
+/**
+ * Copyright (C) 2011-2024 Red Hat, Inc. (https://github.com/Commonjava/http-testserver)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.test.http.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Time a {@link org.commonjava.test.http.stream.StreamResolver} took to resolve the resource for a request. For
+ * resolvers without metadata, this includes opening it.
+ */
+@Name( "org.commonjava.test.http.ResolverLookup" )
+@Label( "Test Server Resolver Lookup" )
+@Category( { "HTTP Test Server" } )
+@Description( "A resolver lookup made by a StreamServer" )
+@StackTrace( false )
+public final class ResolverLookupEvent
+        extends Event
+{
+    private static final EventType TYPE = EventType.getEventType( ResolverLookupEvent.class );
+
+    @Label( "Resolver" )
+    Class<?> resolver;
+
+    @Label( "Path" )
+    String path;
+
+    @Label( "Found" )
+    boolean found;
+
+    /**
+     * @return a started event, or null if no recording has it enabled
+     */
+    public static ResolverLookupEvent start()
+    {
+        if ( !TYPE.isEnabled() )
+        {
+            return null;
+        }
+
+        final ResolverLookupEvent event = new ResolverLookupEvent();
+        event.begin();
+        return event;
+    }
+
+    public void finish( final Object resolver, final String path, final boolean found )
+    {
+        end();
+        if ( shouldCommit() )
+        {
+            this.resolver = resolver.getClass();
+            this.path = path;
+            this.found = found;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,238 @@
+/**
+ * Copyright (C) 2011-2024 Red Hat, Inc. (https://github.com/Commonjava/http-testserver)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.test.http.stream;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.zip.ZipEntry;
+
+/**
+ * Entries of an archive, indexed once by name. Archives up to 2 GiB are also memory-mapped, and the index records
+ * where each stored (uncompressed) entry's bytes start, so they can be served from the mapping without touching the
+ * {@link JarFile}.
+ */
+final class ArchiveIndex
+{
+    private static final int LOCAL_HEADER = 0x04034b50;
+
+    private static final int CENTRAL_HEADER = 0x02014b50;
+
+    private static final int END_HEADER = 0x06054b50;
+
+    private static final int LOCAL_HEADER_SIZE = 30;
+
+    private static final int CENTRAL_HEADER_SIZE = 46;
+
+    private static final int END_SIZE = 22;
+
+    private final Map<String, Entry> entries;
+
+    private final ByteBuffer mapped;
+
+    private ArchiveIndex( final Map<String, Entry> entries, final ByteBuffer mapped )
+    {
+        this.entries = entries;
+        this.mapped = mapped;
+    }
+
+    static ArchiveIndex read( final JarFile jar, final Path archive )
+            throws IOException
+    {
+        ByteBuffer mapped = null;
+        Map<String, Long> offsets = Collections.emptyMap();
+        try (FileChannel channel = FileChannel.open( archive, StandardOpenOption.READ ))
+        {
+            if ( channel.size() <= Integer.MAX_VALUE )
+            {
+                final ByteBuffer zip = channel.map( FileChannel.MapMode.READ_ONLY, 0, channel.size() );
+                zip.order( ByteOrder.LITTLE_ENDIAN );
+                offsets = storedOffsets( zip );
+                mapped = offsets.isEmpty() ? null : zip;
+            }
+        }
+
+        final Map<String, Entry> entries = new HashMap<>();
+        final Enumeration<JarEntry> jarEntries = jar.entries();
+        while ( jarEntries.hasMoreElements() )
+        {
+            final JarEntry jarEntry = jarEntries.nextElement();
+            if ( !jarEntry.isDirectory() )
+            {
+                final Long offset = offsets.get( jarEntry.getName() );
+                entries.put( jarEntry.getName(), new Entry( jarEntry, offset == null ? -1 : offset ) );
+            }
+        }
+
+        return new ArchiveIndex( Collections.unmodifiableMap( entries ), mapped );
+    }
+
+    Entry get( final String name )
+    {
+        return entries.get( name );
+    }
+
+    int size()
+    {
+        return entries.size();
+    }
+
+    /**
+     * @return bytes of the archive mapped into memory, or 0 if it has no stored entries or is too large to map
+     */
+    long mappedBytes()
+    {
+        return mapped == null ? 0 : mapped.capacity();
+    }
+
+    /**
+     * @return a read-only view of a stored entry's bytes in the mapping
+     */
+    ByteBuffer view( final Entry entry )
+    {
+        final ByteBuffer view = mapped.duplicate();
+        view.limit( (int) ( entry.dataOffset + entry.size() ) );
+        view.position( (int) entry.dataOffset );
+        return view.slice();
+    }
+
+    /**
+     * Walk the central directory and return where the data of each stored entry starts. Anything unexpected (zip64,
+     * prefixed archives, truncated headers) yields no offsets, and those entries are read through the JarFile.
+     */
+    private static Map<String, Long> storedOffsets( final ByteBuffer zip )
+    {
+        final int end = findEnd( zip );
+        if ( end < 0 )
+        {
+            return Collections.emptyMap();
+        }
+
+        final int count = u16( zip, end + 10 );
+        final long directory = u32( zip, end + 16 );
+        if ( count == 0xffff || directory == 0xffffffffL )
+        {
+            return Collections.emptyMap();
+        }
+
+        final Map<String, Long> offsets = new HashMap<>();
+        long pos = directory;
+        for ( int i = 0; i < count; i++ )
+        {
+            if ( pos + CENTRAL_HEADER_SIZE > zip.limit() || zip.getInt( (int) pos ) != CENTRAL_HEADER )
+            {
+                return Collections.emptyMap();
+            }
+
+            final int p = (int) pos;
+            final int nameLength = u16( zip, p + 28 );
+            final int extraLength = u16( zip, p + 30 );
+            final int commentLength = u16( zip, p + 32 );
+            if ( u16( zip, p + 10 ) == ZipEntry.STORED )
+            {
+                final long size = u32( zip, p + 24 );
+                final long local = u32( zip, p + 42 );
+                if ( local + LOCAL_HEADER_SIZE <= zip.limit() && zip.getInt( (int) local ) == LOCAL_HEADER )
+                {
+                    final int l = (int) local;
+                    final long data = local + LOCAL_HEADER_SIZE + u16( zip, l + 26 ) + u16( zip, l + 28 );
+                    if ( data + size <= zip.limit() )
+                    {
+                        final byte[] name = new byte[nameLength];
+                        final ByteBuffer names = zip.duplicate();
+                        names.position( p + CENTRAL_HEADER_SIZE );
+                        names.get( name );
+                        offsets.put( new String( name, StandardCharsets.UTF_8 ), data );
+                    }
+                }
+            }
+
+            pos += CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength;
+        }
+
+        return offsets;
+    }
+
+    private static int findEnd( final ByteBuffer zip )
+    {
+        final int last = zip.limit() - END_SIZE;
+        final int first = Math.max( 0, last - 0xffff );
+        for ( int pos = last; pos >= first; pos-- )
+        {
+            if ( zip.getInt( pos ) == END_HEADER )
+            {
+                return pos;
+            }
+        }
+        return -1;
+    }
+
+    private static int u16( final ByteBuffer zip, final int pos )
+    {
+        return zip.getShort( pos ) & 0xffff;
+    }
+
+    private static long u32( final ByteBuffer zip, final int pos )
+    {
+        return zip.getInt( pos ) & 0xffffffffL;
+    }
+
+    static final class Entry
+    {
+        private final JarEntry jarEntry;
+
+        private final long dataOffset;
+
+        private Entry( final JarEntry jarEntry, final long dataOffset )
+        {
+            this.jarEntry = jarEntry;
+            this.dataOffset = dataOffset;
+        }
+
+        JarEntry jarEntry()
+        {
+            return jarEntry;
+        }
+
+        long size()
+        {
+            return jarEntry.getSize();
+        }
+
+        long crc()
+        {
+            return jarEntry.getCrc();
+        }
+
+        /**
+         * @return true if the entry is stored uncompressed and can be read from the archive mapping
+         */
+        boolean isMapped()
+        {
+            return dataOffset >= 0;
+        }
+    }
+}
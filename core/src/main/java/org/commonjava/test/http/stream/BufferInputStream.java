@@ -0,0 +1,70 @@
+/**
+ * Copyright (C) 2011-2024 Red Hat, Inc. (https://github.com/Commonjava/http-testserver)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.test.http.stream;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Stream over a view of a buffer; reading advances the view.
+ */
+final class BufferInputStream
+        extends InputStream
+{
+    private final ByteBuffer view;
+
+    BufferInputStream( final ByteBuffer view )
+    {
+        this.view = view;
+    }
+
+    @Override
+    public int read()
+    {
+        return view.hasRemaining() ? view.get() & 0xff : -1;
+    }
+
+    @Override
+    public int read( final byte[] b, final int off, final int len )
+    {
+        if ( len == 0 )
+        {
+            return 0;
+        }
+        if ( !view.hasRemaining() )
+        {
+            return -1;
+        }
+
+        final int n = Math.min( len, view.remaining() );
+        view.get( b, off, n );
+        return n;
+    }
+
+    @Override
+    public long skip( final long n )
+    {
+        final int skipped = (int) Math.max( 0, Math.min( n, view.remaining() ) );
+        view.position( view.position() + skipped );
+        return skipped;
+    }
+
+    @Override
+    public int available()
+    {
+        return view.remaining();
+    }
+}
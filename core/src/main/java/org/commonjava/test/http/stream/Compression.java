@@ -0,0 +1,109 @@
+/**
+ * Copyright (C) 2011-2024 Red Hat, Inc. (https://github.com/Commonjava/http-testserver)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.test.http.stream;
+
+import java.util.zip.Deflater;
+
+/**
+ * How {@link StreamServer} negotiates <code>Accept-Encoding</code>. Precompressed <code>.br</code> and <code>.gz</code>
+ * siblings of a resource are served when they exist; otherwise bodies of at least {@link #minimumSize()} bytes are
+ * gzipped on the fly. Compressed variants of bodies up to a quarter of {@link #cacheSize()} are kept, so repeated
+ * requests don't recompress them; larger bodies are compressed as they are sent.
+ * <pre>
+ * streamServer.withCompression( Compression.gzip().withLevel( 9 ).withMinimumSize( 256 ) );
+ * </pre>
+ */
+public final class Compression
+{
+    public static final int DEFAULT_MINIMUM_SIZE = 1024;
+
+    public static final long DEFAULT_CACHE_SIZE = 32L * 1024 * 1024;
+
+    private final int level;
+
+    private final long minimumSize;
+
+    private final long cacheSize;
+
+    private Compression( final int level, final long minimumSize, final long cacheSize )
+    {
+        if ( level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION )
+        {
+            throw new IllegalArgumentException( "Compression level must be between -1 and 9. Got: " + level );
+        }
+        if ( minimumSize < 0 )
+        {
+            throw new IllegalArgumentException( "Minimum size must not be negative. Got: " + minimumSize );
+        }
+        if ( cacheSize < 0 )
+        {
+            throw new IllegalArgumentException( "Cache size must not be negative. Got: " + cacheSize );
+        }
+        this.level = level;
+        this.minimumSize = minimumSize;
+        this.cacheSize = cacheSize;
+    }
+
+    public static Compression gzip()
+    {
+        return new Compression( Deflater.DEFAULT_COMPRESSION, DEFAULT_MINIMUM_SIZE, DEFAULT_CACHE_SIZE );
+    }
+
+    /**
+     * @param level deflate level, from 0 (store) to 9 (smallest), or -1 for the default
+     */
+    public Compression withLevel( final int level )
+    {
+        return new Compression( level, minimumSize, cacheSize );
+    }
+
+    /**
+     * @param minimumSize smallest body, in bytes, worth compressing on the fly
+     */
+    public Compression withMinimumSize( final long minimumSize )
+    {
+        return new Compression( level, minimumSize, cacheSize );
+    }
+
+    /**
+     * @param cacheSize bytes of compressed variants to keep; 0 compresses every response as it is sent
+     */
+    public Compression withCacheSize( final long cacheSize )
+    {
+        return new Compression( level, minimumSize, cacheSize );
+    }
+
+    public int level()
+    {
+        return level;
+    }
+
+    public long minimumSize()
+    {
+        return minimumSize;
+    }
+
+    public long cacheSize()
+    {
+        return cacheSize;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "Compression{level=" + level + ", minimumSize=" + minimumSize + ", cacheSize=" + cacheSize + '}';
+    }
+}
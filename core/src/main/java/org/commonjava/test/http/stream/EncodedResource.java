@@ -0,0 +1,206 @@
+/**
+ * Copyright (C) 2011-2024 Red Hat, Inc. (https://github.com/Commonjava/http-testserver)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.test.http.stream;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A content-coded representation of a resource: a precompressed sibling, a cached compressed variant, or the resource
+ * compressed as it is read. It keeps the original's content type, and its version names the coding, so each
+ * representation gets its own ETag.
+ */
+final class EncodedResource
+        implements StreamResource
+{
+    private final StreamResource original;
+
+    private final String coding;
+
+    private final StreamResource sibling;
+
+    private final ByteBuffer buffer;
+
+    private final int level;
+
+    private EncodedResource( final StreamResource original, final String coding, final StreamResource sibling,
+                             final ByteBuffer buffer, final int level )
+    {
+        this.original = original;
+        this.coding = coding;
+        this.sibling = sibling;
+        this.buffer = buffer;
+        this.level = level;
+    }
+
+    static EncodedResource precompressed( final StreamResource original, final StreamResource sibling,
+                                          final String coding )
+    {
+        return new EncodedResource( original, coding, sibling, null, 0 );
+    }
+
+    static EncodedResource cached( final StreamResource original, final ByteBuffer buffer )
+    {
+        return new EncodedResource( original, "gzip", null, buffer, 0 );
+    }
+
+    static EncodedResource compressing( final StreamResource original, final int level )
+    {
+        return new EncodedResource( original, "gzip", null, null, level );
+    }
+
+    /**
+     * Gzip the original to a byte array, for the variant cache.
+     */
+    static byte[] compress( final StreamResource original, final int level )
+            throws IOException
+    {
+        try (InputStream in = new GzipEncodingStream( original.openStream(), level ))
+        {
+            return IOUtils.toByteArray( in );
+        }
+    }
+
+    /**
+     * @return the q-value the Accept-Encoding header gives the coding, falling back to <code>*</code>; 0 if neither is
+     *         listed
+     */
+    static double quality( final String acceptEncoding, final String coding )
+    {
+        double wildcard = 0;
+        for ( String part : acceptEncoding.split( "," ) )
+        {
+            final String[] params = part.split( ";" );
+            final String name = params[0].trim();
+            double q = 1;
+            for ( int i = 1; i < params.length; i++ )
+            {
+                final String param = params[i].trim();
+                if ( param.startsWith( "q=" ) )
+                {
+                    try
+                    {
+                        q = Double.parseDouble( param.substring( 2 ) );
+                    }
+                    catch ( NumberFormatException e )
+                    {
+                        q = 0;
+                    }
+                }
+            }
+
+            if ( name.equalsIgnoreCase( coding ) )
+            {
+                return q;
+            }
+            if ( "*".equals( name ) )
+            {
+                wildcard = q;
+            }
+        }
+        return wildcard;
+    }
+
+    String coding()
+    {
+        return coding;
+    }
+
+    @Override
+    public boolean exists()
+    {
+        return true;
+    }
+
+    @Override
+    public long length()
+    {
+        if ( sibling != null )
+        {
+            return sibling.length();
+        }
+        return buffer == null ? UNKNOWN : buffer.remaining();
+    }
+
+    @Override
+    public long lastModified()
+    {
+        return sibling != null ? sibling.lastModified() : original.lastModified();
+    }
+
+    @Override
+    public String contentType()
+    {
+        return original.contentType();
+    }
+
+    @Override
+    public String version()
+    {
+        return ResourceInfo.tag( sibling != null ? sibling : original ) + "-" + coding;
+    }
+
+    @Override
+    public InputStream openStream()
+            throws IOException
+    {
+        if ( sibling != null )
+        {
+            return sibling.openStream();
+        }
+        if ( buffer != null )
+        {
+            return new BufferInputStream( buffer.duplicate() );
+        }
+        return new GzipEncodingStream( original.openStream(), level );
+    }
+
+    @Override
+    public FileChannel openFileChannel()
+            throws IOException
+    {
+        return sibling == null ? null : sibling.openFileChannel();
+    }
+
+    @Override
+    public ByteBuffer buffer()
+            throws IOException
+    {
+        if ( sibling != null )
+        {
+            return sibling.buffer();
+        }
+        return buffer == null ? null : buffer.duplicate();
+    }
+
+    @Override
+    public void close()
+            throws IOException
+    {
+        IOUtils.closeQuietly( sibling );
+        original.close();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "EncodedResource{coding=" + coding + ", original=" + original + ", sibling=" + sibling + "}";
+    }
+}
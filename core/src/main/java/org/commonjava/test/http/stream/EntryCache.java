@@ -0,0 +1,161 @@
+/**
+ * Copyright (C) 2011-2024 Red Hat, Inc. (https://github.com/Commonjava/http-testserver)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.test.http.stream;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Size-bounded LRU of inflated archive entries, on the heap or in direct buffers. Entries larger than a quarter of the
+ * capacity are never cached, so one large download can't flush everything else.
+ */
+final class EntryCache
+{
+    private final long capacity;
+
+    private final boolean offHeap;
+
+    private final LinkedHashMap<String, ByteBuffer> entries = new LinkedHashMap<>( 16, 0.75f, true );
+
+    private long bytes;
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder evictions = new LongAdder();
+
+    EntryCache( final long capacity, final boolean offHeap )
+    {
+        this.capacity = Math.max( 0, capacity );
+        this.offHeap = offHeap;
+    }
+
+    boolean accepts( final long size )
+    {
+        return capacity > 0 && size >= 0 && size <= capacity / 4;
+    }
+
+    /**
+     * @return a read-only view of the cached entry, or null
+     */
+    ByteBuffer get( final String name )
+    {
+        final ByteBuffer cached;
+        synchronized ( this )
+        {
+            cached = entries.get( name );
+        }
+
+        if ( cached == null )
+        {
+            misses.increment();
+            return null;
+        }
+
+        hits.increment();
+        return cached.duplicate();
+    }
+
+    /**
+     * Cache the entry's bytes, evicting the least recently used entries to make room.
+     *
+     * @return a read-only view of the cached bytes
+     */
+    ByteBuffer put( final String name, final byte[] data )
+    {
+        final ByteBuffer buffer;
+        if ( offHeap )
+        {
+            final ByteBuffer direct = ByteBuffer.allocateDirect( data.length );
+            direct.put( data ).flip();
+            buffer = direct.asReadOnlyBuffer();
+        }
+        else
+        {
+            buffer = ByteBuffer.wrap( data ).asReadOnlyBuffer();
+        }
+
+        synchronized ( this )
+        {
+            final ByteBuffer previous = entries.put( name, buffer );
+            if ( previous != null )
+            {
+                bytes -= previous.capacity();
+            }
+            bytes += buffer.capacity();
+
+            final Iterator<Map.Entry<String, ByteBuffer>> eldest = entries.entrySet().iterator();
+            while ( bytes > capacity && eldest.hasNext() )
+            {
+                final Map.Entry<String, ByteBuffer> entry = eldest.next();
+                if ( entry.getValue() == buffer )
+                {
+                    continue;
+                }
+                bytes -= entry.getValue().capacity();
+                eldest.remove();
+                evictions.increment();
+            }
+        }
+
+        return buffer.duplicate();
+    }
+
+    synchronized void clear()
+    {
+        entries.clear();
+        bytes = 0;
+    }
+
+    long capacity()
+    {
+        return capacity;
+    }
+
+    boolean isOffHeap()
+    {
+        return offHeap;
+    }
+
+    synchronized int size()
+    {
+        return entries.size();
+    }
+
+    synchronized long bytes()
+    {
+        return bytes;
+    }
+
+    long hits()
+    {
+        return hits.sum();
+    }
+
+    long misses()
+    {
+        return misses.sum();
+    }
+
+    long evictions()
+    {
+        return evictions.sum();
+    }
+}
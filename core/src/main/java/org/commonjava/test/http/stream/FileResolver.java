@@ -22,6 +22,7 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Path;
 
 import static org.commonjava.test.http.util.StreamUtils.isDirectoryResource;
 import static org.commonjava.test.http.util.StreamUtils.trimProtocol;
@@ -30,7 +31,7 @@ import static org.commonjava.test.http.util.StreamUtils.trimProtocol;
  * Created by jdcasey on 8/17/15.
  */
 public class FileResolver
-    implements StreamResolver
+    implements PathResolver, ResourceResolver
 {
 
     private File dir;
@@ -62,4 +63,24 @@ public class FileResolver
         logger.info("No file available for: {}", path);
         return null;
     }
+
+    @Override
+    public StreamResource resolve( String path )
+            throws IOException
+    {
+        return FileResource.of( new File( dir, path ).toPath() );
+    }
+
+    @Override
+    public Path getFile( String path )
+    {
+        File f = new File( dir, path );
+        if ( f.exists() && !f.isDirectory() )
+        {
+            return f.toPath();
+        }
+
+        LoggerFactory.getLogger( getClass() ).info( "No file available for: {}", path );
+        return null;
+    }
 }
@@ -0,0 +1,121 @@
+/**
+ * Copyright (C) 2011-2024 Red Hat, Inc. (https://github.com/Commonjava/http-testserver)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.test.http.stream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URLConnection;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * {@link StreamResource} for a plain file. The attributes are read once, when the handle is created.
+ */
+public final class FileResource
+        implements StreamResource
+{
+    private final Path file;
+
+    private final long length;
+
+    private final long lastModified;
+
+    private FileResource( final Path file, final BasicFileAttributes attributes )
+    {
+        this.file = file;
+        this.length = attributes.size();
+        this.lastModified = attributes.lastModifiedTime().toMillis();
+    }
+
+    /**
+     * @return a handle for the file, or {@link StreamResource#missing()} if it doesn't exist or is not a regular file
+     */
+    public static StreamResource of( final Path file )
+            throws IOException
+    {
+        final BasicFileAttributes attributes;
+        try
+        {
+            attributes = Files.readAttributes( file, BasicFileAttributes.class );
+        }
+        catch ( NoSuchFileException e )
+        {
+            return StreamResource.missing();
+        }
+
+        return attributes.isRegularFile() ? new FileResource( file, attributes ) : StreamResource.missing();
+    }
+
+    public Path getFile()
+    {
+        return file;
+    }
+
+    @Override
+    public boolean exists()
+    {
+        return true;
+    }
+
+    @Override
+    public long length()
+    {
+        return length;
+    }
+
+    @Override
+    public long lastModified()
+    {
+        return lastModified;
+    }
+
+    @Override
+    public String contentType()
+    {
+        return URLConnection.guessContentTypeFromName( file.getFileName().toString() );
+    }
+
+    @Override
+    public InputStream openStream()
+            throws IOException
+    {
+        return Files.newInputStream( file );
+    }
+
+    @Override
+    public FileChannel openFileChannel()
+            throws IOException
+    {
+        return FileChannel.open( file, StandardOpenOption.READ );
+    }
+
+    @Override
+    public FileChannel openChannel()
+            throws IOException
+    {
+        return openFileChannel();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "FileResource{file=" + file + ", length=" + length + "}";
+    }
+}
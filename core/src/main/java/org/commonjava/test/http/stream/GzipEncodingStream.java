@@ -0,0 +1,127 @@
+/**
+ * Copyright (C) 2011-2024 Red Hat, Inc. (https://github.com/Commonjava/http-testserver)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.test.http.stream;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterInputStream;
+
+/**
+ * Gzips a stream as it is read, so large bodies can be sent compressed without buffering them.
+ */
+final class GzipEncodingStream
+        extends InputStream
+{
+    private static final byte[] HEADER = { 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff };
+
+    private static final int HEADER_STAGE = 0;
+
+    private static final int BODY = 1;
+
+    private static final int TRAILER = 2;
+
+    private final CRC32 crc = new CRC32();
+
+    private final Deflater deflater;
+
+    private final InputStream body;
+
+    private final byte[] one = new byte[1];
+
+    private InputStream current = new ByteArrayInputStream( HEADER );
+
+    private int stage = HEADER_STAGE;
+
+    GzipEncodingStream( final InputStream in, final int level )
+    {
+        this.deflater = new Deflater( level, true );
+        this.body = new DeflaterInputStream( new CheckedInputStream( in, crc ), deflater, 8192 );
+    }
+
+    @Override
+    public int read()
+            throws IOException
+    {
+        return read( one, 0, 1 ) < 0 ? -1 : one[0] & 0xff;
+    }
+
+    @Override
+    public int read( final byte[] b, final int off, final int len )
+            throws IOException
+    {
+        if ( len == 0 )
+        {
+            return 0;
+        }
+
+        while ( current != null )
+        {
+            final int n = current.read( b, off, len );
+            if ( n > 0 )
+            {
+                return n;
+            }
+            next();
+        }
+        return -1;
+    }
+
+    /**
+     * Move from the header to the deflated body, then to the trailer (CRC and length of the input), then to the end.
+     */
+    private void next()
+    {
+        stage++;
+        if ( stage == BODY )
+        {
+            current = body;
+        }
+        else if ( stage == TRAILER )
+        {
+            final long checksum = crc.getValue();
+            final long size = deflater.getBytesRead();
+            final byte[] trailer = new byte[8];
+            for ( int i = 0; i < 4; i++ )
+            {
+                trailer[i] = (byte) ( checksum >>> ( 8 * i ) );
+                trailer[4 + i] = (byte) ( size >>> ( 8 * i ) );
+            }
+            current = new ByteArrayInputStream( trailer );
+        }
+        else
+        {
+            current = null;
+        }
+    }
+
+    @Override
+    public void close()
+            throws IOException
+    {
+        try
+        {
+            body.close();
+        }
+        finally
+        {
+            deflater.end();
+        }
+    }
+}
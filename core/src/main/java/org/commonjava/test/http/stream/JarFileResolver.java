@@ -15,24 +15,36 @@
  */
 package org.commonjava.test.http.stream;
 
+import org.apache.commons.io.IOUtils;
 import org.commonjava.test.http.util.UrlUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.file.Paths;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.jar.JarFile;
-import java.util.zip.ZipEntry;
+import java.util.zip.CRC32;
 
 import static org.commonjava.test.http.util.StreamUtils.isJarResource;
 import static org.commonjava.test.http.util.StreamUtils.trimProtocol;
 
 /**
  * Created by jdcasey on 8/17/15.
+ * <p>
+ * Entries are indexed when the resolver is created. Stored (uncompressed) entries are served from a memory mapping of
+ * the archive, and inflated entries are kept in a size-bounded LRU cache, sized by the {@value #CACHE_SIZE_PROPERTY}
+ * system property unless given to the constructor. Hit rates and memory use are available from {@link #getStats()}.
  */
 public class JarFileResolver
-        implements StreamResolver
+        implements ResourceResolver
 {
+    public static final String CACHE_SIZE_PROPERTY = "http-testserver.jar.cache.size";
+
+    public static final long DEFAULT_CACHE_SIZE = 64L * 1024 * 1024;
 
     private final String archive;
 
@@ -40,7 +52,22 @@ public class JarFileResolver
 
     private String basePath;
 
+    private final ArchiveIndex index;
+
+    private final EntryCache cache;
+
+    private final LongAdder mappedReads = new LongAdder();
+
     public JarFileResolver( String resource )
+    {
+        this( resource, Long.getLong( CACHE_SIZE_PROPERTY, DEFAULT_CACHE_SIZE ), false );
+    }
+
+    /**
+     * @param cacheSize bytes of inflated entries to keep; 0 disables the cache
+     * @param offHeap keep cached entries in direct buffers instead of on the heap
+     */
+    public JarFileResolver( String resource, long cacheSize, boolean offHeap )
     {
         if ( !isJarResource( resource ) )
         {
@@ -54,6 +81,7 @@ public class JarFileResolver
         {
             this.archive  = parts[0];
             this.dir = new JarFile( parts[0] );
+            this.index = ArchiveIndex.read( dir, Paths.get( parts[0] ) );
             if ( parts.length > 1 && parts[1].length() > 0 )
             {
                 String bp = parts[1];
@@ -80,24 +108,273 @@ public class JarFileResolver
             throw new IllegalArgumentException( "Invalid jar/zip file: " + resource + "(file part: " + parts[0] + "). Reason: " + e.getMessage(),
                                                 e );
         }
+
+        this.cache = new EntryCache( cacheSize, offHeap );
     }
 
     @Override
-    public InputStream get( String path )
+    public StreamResource resolve( String path )
             throws IOException
     {
-        String realPath = UrlUtils.buildPath( basePath, path );
+        String realPath = entryName( path );
         Logger logger = LoggerFactory.getLogger( getClass() );
         logger.info("Looking for: {} in archive: {}", realPath, archive);
 
-        ZipEntry entry = dir.getEntry( realPath );
+        ArchiveIndex.Entry entry = index.get( realPath );
         if ( entry == null )
         {
             logger.info("Not found: {} (basePath: {}, requested path: {})", realPath, basePath, path);
-            return null;
+            return StreamResource.missing();
+        }
+
+        logger.info("Found: {} (basePath: {}, requested path: {})", realPath, basePath, path);
+        return new EntryResource( realPath, entry );
+    }
+
+    /**
+     * @return a snapshot of the entry index, mapping and cache counters
+     */
+    public Stats getStats()
+    {
+        return new Stats( this );
+    }
+
+    /**
+     * Drop all cached entries. The index and the mapping stay.
+     */
+    public void clearCache()
+    {
+        cache.clear();
+    }
+
+    private String entryName( String path )
+            throws IOException
+    {
+        String name = basePath == null ? path : UrlUtils.buildPath( basePath, path );
+        int start = 0;
+        while ( start < name.length() && name.charAt( start ) == '/' )
+        {
+            start++;
         }
+        return name.substring( start );
+    }
+
+    /**
+     * An indexed entry. Stored entries are views of the archive mapping; deflated entries small enough for the cache
+     * are inflated once, checked against their CRC, and kept; anything else streams from the JarFile.
+     */
+    private final class EntryResource
+            implements StreamResource
+    {
+        private final String name;
+
+        private final ArchiveIndex.Entry entry;
+
+        private EntryResource( final String name, final ArchiveIndex.Entry entry )
+        {
+            this.name = name;
+            this.entry = entry;
+        }
+
+        @Override
+        public boolean exists()
+        {
+            return true;
+        }
+
+        @Override
+        public long length()
+        {
+            return entry.size();
+        }
+
+        @Override
+        public long lastModified()
+        {
+            return entry.jarEntry().getTime();
+        }
+
+        @Override
+        public String contentType()
+        {
+            return URLConnection.guessContentTypeFromName( name );
+        }
+
+        @Override
+        public String version()
+        {
+            return Long.toHexString( entry.crc() ) + "-" + Long.toHexString( entry.size() );
+        }
+
+        @Override
+        public InputStream openStream()
+                throws IOException
+        {
+            ByteBuffer buffer = buffer();
+            return buffer == null ? dir.getInputStream( entry.jarEntry() ) : new BufferInputStream( buffer );
+        }
+
+        @Override
+        public ByteBuffer buffer()
+                throws IOException
+        {
+            if ( entry.isMapped() )
+            {
+                mappedReads.increment();
+                return index.view( entry );
+            }
+
+            if ( !cache.accepts( entry.size() ) )
+            {
+                return null;
+            }
+
+            ByteBuffer cached = cache.get( name );
+            if ( cached != null )
+            {
+                return cached;
+            }
+
+            byte[] data;
+            try (InputStream in = dir.getInputStream( entry.jarEntry() ))
+            {
+                data = IOUtils.toByteArray( in );
+            }
 
-        logger.info("Returning stream for: {} (basePath: {}, requested path: {})", realPath, basePath, path);
-        return dir.getInputStream( entry );
+            CRC32 crc = new CRC32();
+            crc.update( data );
+            if ( entry.crc() >= 0 && crc.getValue() != entry.crc() )
+            {
+                throw new IOException( "CRC mismatch for: " + name + " in archive: " + archive );
+            }
+
+            return cache.put( name, data );
+        }
+
+        @Override
+        public String toString()
+        {
+            return "EntryResource{archive=" + archive + ", name=" + name + ", length=" + entry.size() + "}";
+        }
+    }
+
+    /**
+     * Point-in-time counters for a {@link JarFileResolver}.
+     */
+    public static final class Stats
+    {
+        private final int entries;
+
+        private final long mappedBytes;
+
+        private final long mappedReads;
+
+        private final long cacheHits;
+
+        private final long cacheMisses;
+
+        private final long cacheEvictions;
+
+        private final int cachedEntries;
+
+        private final long cachedBytes;
+
+        private final long cacheCapacity;
+
+        private final boolean offHeap;
+
+        private Stats( final JarFileResolver resolver )
+        {
+            this.entries = resolver.index.size();
+            this.mappedBytes = resolver.index.mappedBytes();
+            this.mappedReads = resolver.mappedReads.sum();
+            this.cacheHits = resolver.cache.hits();
+            this.cacheMisses = resolver.cache.misses();
+            this.cacheEvictions = resolver.cache.evictions();
+            this.cachedEntries = resolver.cache.size();
+            this.cachedBytes = resolver.cache.bytes();
+            this.cacheCapacity = resolver.cache.capacity();
+            this.offHeap = resolver.cache.isOffHeap();
+        }
+
+        /**
+         * @return number of file entries in the archive
+         */
+        public int entries()
+        {
+            return entries;
+        }
+
+        /**
+         * @return bytes of the archive mapped into memory, for serving stored entries
+         */
+        public long mappedBytes()
+        {
+            return mappedBytes;
+        }
+
+        /**
+         * @return reads served from the mapping
+         */
+        public long mappedReads()
+        {
+            return mappedReads;
+        }
+
+        public long cacheHits()
+        {
+            return cacheHits;
+        }
+
+        public long cacheMisses()
+        {
+            return cacheMisses;
+        }
+
+        public long cacheEvictions()
+        {
+            return cacheEvictions;
+        }
+
+        /**
+         * @return cache hits as a fraction of cache lookups, or 0 if there were none
+         */
+        public double cacheHitRate()
+        {
+            final long lookups = cacheHits + cacheMisses;
+            return lookups == 0 ? 0 : (double) cacheHits / lookups;
+        }
+
+        public int cachedEntries()
+        {
+            return cachedEntries;
+        }
+
+        /**
+         * @return bytes held by cached entries, on the heap or off it (see {@link #isOffHeap()})
+         */
+        public long cachedBytes()
+        {
+            return cachedBytes;
+        }
+
+        public long cacheCapacity()
+        {
+            return cacheCapacity;
+        }
+
+        public boolean isOffHeap()
+        {
+            return offHeap;
+        }
+
+        @Override
+        public String toString()
+        {
+            return "Stats{entries=" + entries + ", mappedBytes=" + mappedBytes + ", mappedReads=" + mappedReads
+                    + ", cacheHits=" + cacheHits + ", cacheMisses=" + cacheMisses + ", cacheEvictions="
+                    + cacheEvictions + ", cachedEntries=" + cachedEntries + ", cachedBytes=" + cachedBytes
+                    + ", cacheCapacity=" + cacheCapacity + ", offHeap=" + offHeap + "}";
+        }
     }
 }
@@ -0,0 +1,50 @@
+/**
+ * Copyright (C) 2011-2024 Red Hat, Inc. (https://github.com/Commonjava/http-testserver)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.test.http.stream;
+
+import java.io.FileNotFoundException;
+import java.io.InputStream;
+
+enum MissingResource
+        implements StreamResource
+{
+    INSTANCE;
+
+    @Override
+    public boolean exists()
+    {
+        return false;
+    }
+
+    @Override
+    public long length()
+    {
+        return UNKNOWN;
+    }
+
+    @Override
+    public long lastModified()
+    {
+        return UNKNOWN;
+    }
+
+    @Override
+    public InputStream openStream()
+            throws FileNotFoundException
+    {
+        throw new FileNotFoundException( "Resource does not exist" );
+    }
+}
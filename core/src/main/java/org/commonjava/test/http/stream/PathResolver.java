@@ -0,0 +1,34 @@
+/**
+ * Copyright (C) 2011-2024 Red Hat, Inc. (https://github.com/Commonjava/http-testserver)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.test.http.stream;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * A {@link StreamResolver} whose resources are plain files. {@link StreamServer} transfers them straight from the file
+ * channel to the connection (sendfile, where the OS has it) instead of copying them through heap buffers, unless the
+ * response is throttled.
+ */
+public interface PathResolver
+        extends StreamResolver
+{
+    /**
+     * @return the file for the path, or null if there is none
+     */
+    Path getFile( String path )
+            throws IOException;
+}
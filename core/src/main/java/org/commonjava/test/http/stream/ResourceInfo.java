@@ -0,0 +1,148 @@
+/**
+ * Copyright (C) 2011-2024 Red Hat, Inc. (https://github.com/Commonjava/http-testserver)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.test.http.stream;
+
+import io.undertow.util.DateUtils;
+import io.undertow.util.ETag;
+import io.undertow.util.ETagUtils;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.util.Date;
+
+/**
+ * What {@link StreamServlet} knows about a resource without reading it: its length, and the validators clients use
+ * for conditional and range requests. The header values are formatted once, so the servlet can cache instances and
+ * answer revalidations without touching the resource.
+ */
+final class ResourceInfo
+{
+    private final long length;
+
+    private final long lastModified;
+
+    private final ETag etag;
+
+    private final String etagHeader;
+
+    private final String lastModifiedHeader;
+
+    private final String tag;
+
+    private final String contentType;
+
+    /**
+     * @param lastModified epoch millis, or -1 if unknown
+     * @param tag opaque value for the strong ETag
+     * @param contentType media type, or null if unknown
+     */
+    ResourceInfo( final long length, final long lastModified, final String tag, final String contentType )
+    {
+        this.length = length;
+        this.lastModified = lastModified;
+        this.tag = tag;
+        this.contentType = contentType;
+        this.etag = new ETag( false, tag );
+        this.etagHeader = etag.toString();
+        this.lastModifiedHeader = lastModified < 0 ? null : DateUtils.toDateString( new Date( lastModified ) );
+    }
+
+    long length()
+    {
+        return length;
+    }
+
+    /**
+     * @return the resource's version, or one derived from its length and modification time
+     */
+    static String tag( final StreamResource resource )
+    {
+        final String version = resource.version();
+        if ( version != null )
+        {
+            return version;
+        }
+        return Long.toHexString( resource.length() ) + "-" + Long.toHexString( resource.lastModified() );
+    }
+
+    String contentType()
+    {
+        return contentType;
+    }
+
+    /**
+     * @return true if this still describes a resource with the given metadata
+     */
+    boolean isCurrent( final long length, final long lastModified, final String tag )
+    {
+        return length == this.length && lastModified == this.lastModified && tag.equals( this.tag );
+    }
+
+    /**
+     * Set Content-Type (if known), the validators and Accept-Ranges.
+     */
+    void writeHeaders( final HttpServletResponse resp )
+    {
+        if ( contentType != null )
+        {
+            resp.setContentType( contentType );
+        }
+        resp.setHeader( "ETag", etagHeader );
+        if ( lastModifiedHeader != null )
+        {
+            resp.setHeader( "Last-Modified", lastModifiedHeader );
+        }
+        resp.setHeader( "Accept-Ranges", "bytes" );
+    }
+
+    /**
+     * @return true if the client's copy is current, per If-None-Match or, without it, If-Modified-Since
+     */
+    boolean isNotModified( final HttpServletRequest req )
+    {
+        final String ifNoneMatch = req.getHeader( "If-None-Match" );
+        if ( ifNoneMatch != null )
+        {
+            return !ETagUtils.handleIfNoneMatch( ifNoneMatch, etag, true );
+        }
+
+        final String ifModifiedSince = req.getHeader( "If-Modified-Since" );
+        return ifModifiedSince != null && lastModified >= 0
+                && !DateUtils.handleIfModifiedSince( ifModifiedSince, new Date( lastModified ) );
+    }
+
+    /**
+     * @return true if a Range request with this If-Range header (which may be null) should get the range, rather than
+     *         the whole resource
+     */
+    boolean matchesIfRange( final String ifRange )
+    {
+        if ( ifRange == null )
+        {
+            return true;
+        }
+
+        final String value = ifRange.trim();
+        if ( value.startsWith( "\"" ) || value.startsWith( "W/" ) )
+        {
+            // If-Range needs a strong match, and a weak tag never is one
+            return etagHeader.equals( value );
+        }
+
+        final Date date = DateUtils.parseDate( value );
+        return date != null && lastModified >= 0 && date.getTime() / 1000 == lastModified / 1000;
+    }
+}
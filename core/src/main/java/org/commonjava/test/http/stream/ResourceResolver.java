@@ -0,0 +1,56 @@
+/**
+ * Copyright (C) 2011-2024 Red Hat, Inc. (https://github.com/Commonjava/http-testserver)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.test.http.stream;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * {@link StreamResolver} that hands out {@link StreamResource} handles, so callers can learn a resource's length, age
+ * and type, and read it through a channel or buffer, without opening a stream first. {@link #adapt(StreamResolver)}
+ * wraps resolvers that only implement {@link StreamResolver#get(String)}.
+ */
+public interface ResourceResolver
+        extends StreamResolver
+{
+    /**
+     * @return a handle for the path; {@link StreamResource#missing()} if there is no such resource
+     */
+    StreamResource resolve( String path )
+            throws IOException;
+
+    @Override
+    default InputStream get( final String path )
+            throws IOException
+    {
+        final StreamResource resource = resolve( path );
+        return resource.exists() ? resource.openStream() : null;
+    }
+
+    /**
+     * @return the resolver itself if it already implements this interface; otherwise an adapter that serves the
+     *         files of a {@link PathResolver} as {@link FileResource}s, and opens the stream of any other resolver to
+     *         find out whether the resource exists
+     */
+    static ResourceResolver adapt( final StreamResolver resolver )
+    {
+        if ( resolver instanceof ResourceResolver )
+        {
+            return (ResourceResolver) resolver;
+        }
+        return new StreamResolverAdapter( resolver );
+    }
+}
@@ -0,0 +1,80 @@
+/**
+ * Copyright (C) 2011-2024 Red Hat, Inc. (https://github.com/Commonjava/http-testserver)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.test.http.stream;
+
+import org.commonjava.test.http.common.PacedWriter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Reads a resolved resource one chunk ahead, so the writer knows when the last chunk has gone out.
+ */
+final class StreamChunks
+        implements PacedWriter.ChunkSource
+{
+    private final InputStream in;
+
+    private final byte[] buffer;
+
+    private int filled = -1;
+
+    StreamChunks( final InputStream in, final int chunkSize )
+    {
+        this.in = in;
+        this.buffer = new byte[chunkSize];
+    }
+
+    @Override
+    public boolean hasNext()
+            throws IOException
+    {
+        if ( filled < 0 )
+        {
+            filled = 0;
+            int read;
+            while ( filled < buffer.length && ( read = in.read( buffer, filled, buffer.length - filled ) ) > 0 )
+            {
+                filled += read;
+            }
+        }
+
+        return filled > 0;
+    }
+
+    @Override
+    public int writeNext( final OutputStream out )
+            throws IOException
+    {
+        if ( !hasNext() )
+        {
+            return 0;
+        }
+
+        final int written = filled;
+        out.write( buffer, 0, written );
+        filled = -1;
+        return written;
+    }
+
+    @Override
+    public void close()
+            throws IOException
+    {
+        in.close();
+    }
+}
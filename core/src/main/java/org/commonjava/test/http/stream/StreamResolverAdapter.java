@@ -0,0 +1,117 @@
+/**
+ * Copyright (C) 2011-2024 Red Hat, Inc. (https://github.com/Commonjava/http-testserver)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.test.http.stream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+
+/**
+ * Presents a plain {@link StreamResolver} as a {@link ResourceResolver}. See {@link ResourceResolver#adapt}.
+ */
+final class StreamResolverAdapter
+        implements ResourceResolver
+{
+    private final StreamResolver resolver;
+
+    StreamResolverAdapter( final StreamResolver resolver )
+    {
+        this.resolver = resolver;
+    }
+
+    @Override
+    public StreamResource resolve( final String path )
+            throws IOException
+    {
+        if ( resolver instanceof PathResolver )
+        {
+            final Path file = ( (PathResolver) resolver ).getFile( path );
+            return file == null ? StreamResource.missing() : FileResource.of( file );
+        }
+
+        final InputStream in = resolver.get( path );
+        return in == null ? StreamResource.missing() : new OpenedResource( in );
+    }
+
+    @Override
+    public InputStream get( final String path )
+            throws IOException
+    {
+        return resolver.get( path );
+    }
+
+    @Override
+    public String toString()
+    {
+        return resolver.toString();
+    }
+
+    /**
+     * A resource whose stream had to be opened to find out it exists. Nothing else is known about it.
+     */
+    private static final class OpenedResource
+            implements StreamResource
+    {
+        private InputStream in;
+
+        private OpenedResource( final InputStream in )
+        {
+            this.in = in;
+        }
+
+        @Override
+        public boolean exists()
+        {
+            return true;
+        }
+
+        @Override
+        public long length()
+        {
+            return UNKNOWN;
+        }
+
+        @Override
+        public long lastModified()
+        {
+            return UNKNOWN;
+        }
+
+        @Override
+        public synchronized InputStream openStream()
+        {
+            if ( in == null )
+            {
+                throw new IllegalStateException( "The stream of this resource has already been opened" );
+            }
+
+            final InputStream result = in;
+            in = null;
+            return result;
+        }
+
+        @Override
+        public synchronized void close()
+                throws IOException
+        {
+            if ( in != null )
+            {
+                in.close();
+                in = null;
+            }
+        }
+    }
+}
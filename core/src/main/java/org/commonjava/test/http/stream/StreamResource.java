@@ -0,0 +1,108 @@
+/**
+ * Copyright (C) 2011-2024 Red Hat, Inc. (https://github.com/Commonjava/http-testserver)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.test.http.stream;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Handle to one resource of a {@link ResourceResolver}, describing it without reading it. {@link StreamServer} uses
+ * the metadata for HEAD, conditional and range requests, and the optional channel and buffer accessors to avoid
+ * copying the body through the heap.
+ */
+public interface StreamResource
+        extends Closeable
+{
+    long UNKNOWN = -1;
+
+    /**
+     * @return a handle for a path the resolver doesn't have
+     */
+    static StreamResource missing()
+    {
+        return MissingResource.INSTANCE;
+    }
+
+    boolean exists();
+
+    /**
+     * @return the length in bytes, or {@link #UNKNOWN}
+     */
+    long length();
+
+    /**
+     * @return the last modification time in epoch millis, or {@link #UNKNOWN}
+     */
+    long lastModified();
+
+    /**
+     * @return the media type, or null if unknown
+     */
+    default String contentType()
+    {
+        return null;
+    }
+
+    /**
+     * @return an opaque value identifying this version of the content, used for the ETag; or null to derive one from
+     *         the length and modification time
+     */
+    default String version()
+    {
+        return null;
+    }
+
+    InputStream openStream()
+            throws IOException;
+
+    default ReadableByteChannel openChannel()
+            throws IOException
+    {
+        return Channels.newChannel( openStream() );
+    }
+
+    /**
+     * @return a new channel on the file holding the content, or null if the content is not a plain file
+     */
+    default FileChannel openFileChannel()
+            throws IOException
+    {
+        return null;
+    }
+
+    /**
+     * @return a read-only view of the whole content, or null if it isn't held in memory or mapped
+     */
+    default ByteBuffer buffer()
+            throws IOException
+    {
+        return null;
+    }
+
+    /**
+     * Release anything the handle opened while resolving. Streams and channels it handed out are closed by the caller.
+     */
+    @Override
+    default void close()
+            throws IOException
+    {
+    }
+}
@@ -16,13 +16,23 @@
 package org.commonjava.test.http.stream;
 
 import io.undertow.Undertow;
+import io.undertow.server.HttpHandler;
 import io.undertow.servlet.Servlets;
 import io.undertow.servlet.api.DeploymentInfo;
 import io.undertow.servlet.api.DeploymentManager;
 import io.undertow.servlet.api.ServletInfo;
 import io.undertow.servlet.util.ImmediateInstanceFactory;
+import org.commonjava.test.http.common.Bandwidth;
 import org.commonjava.test.http.common.CommonMethod;
 import org.commonjava.test.http.common.HttpServerFixture;
+import org.commonjava.test.http.common.JournalHandler;
+import org.commonjava.test.http.common.MetricsHandler;
+import org.commonjava.test.http.common.OpenMetricsHandler;
+import org.commonjava.test.http.common.RequestJournal;
+import org.commonjava.test.http.common.RouteMetrics;
+import org.commonjava.test.http.common.ServerOptions;
+import org.commonjava.test.http.common.SharedRuntime;
+import org.commonjava.test.http.jfr.FlightRecorderHandler;
 import org.commonjava.test.http.util.PortFinder;
 import org.commonjava.test.http.util.UrlUtils;
 import org.slf4j.Logger;
@@ -30,12 +40,11 @@ import org.slf4j.LoggerFactory;
 
 import jakarta.servlet.Servlet;
 import jakarta.servlet.ServletException;
-import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.Arrays;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.ExecutorService;
 
 import static org.commonjava.test.http.util.StreamUtils.isDirectoryResource;
 import static org.commonjava.test.http.util.StreamUtils.isJarResource;
@@ -52,6 +61,15 @@ public class StreamServer
 
     private Undertow server;
 
+    private ServerOptions options = ServerOptions.defaults();
+
+    private SharedRuntime.Lease runtime;
+
+    // runs blocking servlet requests when ServerOptions asks for virtual threads; shut down by stop()
+    private ExecutorService blockingExecutor;
+
+    private RequestJournal journal = options.createJournal();
+
     public StreamServer( final StreamResolver resolver )
     {
         servlet = new StreamServlet( resolver );
@@ -77,6 +95,97 @@ public class StreamServer
         servlet = new StreamServlet( resolver );
     }
 
+    /**
+     * Tune threads, buffers and timeouts. Must be called before {@link #start()}.
+     */
+    public StreamServer withOptions( final ServerOptions options )
+    {
+        this.options = options;
+        this.journal = options.createJournal();
+        return this;
+    }
+
+    public ServerOptions getOptions()
+    {
+        return options;
+    }
+
+    /**
+     * @return the journal of requests this server handled, in completion order; see {@link RequestJournal}
+     */
+    public RequestJournal getRequestJournal()
+    {
+        return journal;
+    }
+
+    /**
+     * @return a snapshot of latency and throughput metrics, per method (e.g. <code>"GET /**"</code>) for resources
+     *         found, and under {@link org.commonjava.test.http.common.ServerMetrics#UNMATCHED} for the rest; see
+     *         {@link RouteMetrics}
+     */
+    public Map<String, RouteMetrics.Snapshot> getMetrics()
+    {
+        return servlet.getMetrics().snapshot();
+    }
+
+    /**
+     * @return the resolver serving this server's files, e.g. to read {@link JarFileResolver#getStats()}
+     */
+    public StreamResolver getResolver()
+    {
+        return servlet.getResolver();
+    }
+
+    /**
+     * Zero the metrics, e.g. after a warm-up phase, without touching the access counts.
+     */
+    public StreamServer resetMetrics()
+    {
+        servlet.getMetrics().reset();
+        return this;
+    }
+
+    /**
+     * Clear the access counts, metrics, cached validators and the request journal, so a running server can be reused
+     * by the next test.
+     */
+    public StreamServer reset()
+    {
+        servlet.resetAccesses();
+        servlet.clearResourceInfos();
+        servlet.getMetrics().clear();
+        journal.clear();
+        return this;
+    }
+
+    /**
+     * Shape every response body to the bandwidth, as a slow mirror would. Each download gets the full bandwidth; use
+     * {@link ServerOptions.Builder#bandwidthLimit(Bandwidth)} for a cap shared by all downloads.
+     */
+    public StreamServer withBandwidth( final Bandwidth bandwidth )
+    {
+        servlet.throttle( bandwidth );
+        return this;
+    }
+
+    /**
+     * Negotiate Accept-Encoding: serve precompressed <code>.br</code> / <code>.gz</code> siblings, or gzip on the fly.
+     * Null (the default) always sends the identity coding.
+     */
+    public StreamServer withCompression( final Compression compression )
+    {
+        servlet.compress( compression );
+        return this;
+    }
+
+    /**
+     * @return how many responses were sent from the cache of compressed variants; see {@link Compression#cacheSize()}
+     */
+    public long getCompressionCacheHits()
+    {
+        return servlet.getVariantCacheHits();
+    }
+
     public int getPort()
     {
         return port;
@@ -89,14 +198,37 @@ public class StreamServer
             server.stop();
             logger.info( "STOPPED Test HTTP Server on 127.0.0.1:" + port );
         }
+        shutdownBlockingExecutor();
+        releaseRuntime();
+    }
+
+    private void shutdownBlockingExecutor()
+    {
+        if ( blockingExecutor != null )
+        {
+            blockingExecutor.shutdown();
+            blockingExecutor = null;
+        }
+    }
+
+    private void releaseRuntime()
+    {
+        if ( runtime != null )
+        {
+            runtime.close();
+            runtime = null;
+        }
     }
 
     public StreamServer start()
     {
+        servlet.limitBandwidth( options.getBandwidthLimit() );
+
         final ServletInfo si = Servlets.servlet( "TEST", StreamServlet.class )
                                        .addMapping( "*" )
                                        .addMapping( "/*" )
-                                       .setLoadOnStartup( 1 );
+                                       .setLoadOnStartup( 1 )
+                                       .setAsyncSupported( true );
 
         si.setInstanceFactory( new ImmediateInstanceFactory<Servlet>( servlet ) );
 
@@ -105,26 +237,49 @@ public class StreamServer
                                                       .setContextPath( "/" )
                                                       .setClassLoader( Thread.currentThread().getContextClassLoader() );
 
+        blockingExecutor = options.createBlockingExecutor();
+        if ( blockingExecutor != null )
+        {
+            di.setExecutor( blockingExecutor );
+        }
+
         final DeploymentManager dm = Servlets.defaultContainer().addDeployment( di );
         dm.deploy();
 
-        AtomicReference<Integer> foundPort = new AtomicReference<>();
-        server = PortFinder.findPortFor( 16, p -> {
-            foundPort.set( p );
-            try
-            {
-                Undertow s = Undertow.builder().setHandler( dm.start() ).addHttpListener( port, "127.0.0.1" ).build();
-
-                s.start();
-                return s;
-            }
-            catch ( ServletException e )
-            {
-                throw new IOException( "Failed to start: " + e.getMessage(), e );
-            }
-        } );
-
-        this.port = foundPort.get();
+        HttpHandler handler;
+        try
+        {
+            handler = new JournalHandler( journal, new FlightRecorderHandler(
+                    new MetricsHandler( servlet.getMetrics(), dm.start() ) ) );
+        }
+        catch ( final ServletException e )
+        {
+            shutdownBlockingExecutor();
+            throw new IllegalStateException( "Failed to start servlet deployment: " + e.getMessage(), e );
+        }
+        if ( options.getMetricsPath() != null )
+        {
+            handler = new OpenMetricsHandler( options.getMetricsPath(), servlet.getMetrics(),
+                                              servlet::getAccessesByPath, () -> server, handler );
+        }
+
+        runtime = options.acquireRuntime();
+        try
+        {
+            server = options.undertowBuilder( runtime )
+                            .setHandler( handler )
+                            .addHttpListener( PortFinder.EPHEMERAL_PORT, "127.0.0.1" )
+                            .build();
+            server.start();
+
+            this.port = PortFinder.boundPort( server );
+        }
+        catch ( final RuntimeException e )
+        {
+            shutdownBlockingExecutor();
+            releaseRuntime();
+            throw e;
+        }
 
         logger.info( "STARTED Test HTTP Server on 127.0.0.1:" + port );
 
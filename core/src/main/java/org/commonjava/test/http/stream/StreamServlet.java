@@ -15,12 +15,23 @@
  */
 package org.commonjava.test.http.stream;
 
+import io.undertow.io.BufferWritableOutputStream;
+import io.undertow.util.ByteRange;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
 import org.apache.commons.lang3.StringUtils;
+import org.commonjava.test.http.common.AccessCounts;
+import org.commonjava.test.http.common.Bandwidth;
+import org.commonjava.test.http.common.BandwidthLimiter;
 import org.commonjava.test.http.common.CommonMethod;
+import org.commonjava.test.http.common.PacedWriter;
+import org.commonjava.test.http.common.ServerMetrics;
+import org.commonjava.test.http.jfr.RequestEvent;
+import org.commonjava.test.http.jfr.ResolverLookupEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import jakarta.servlet.AsyncContext;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServlet;
 import jakarta.servlet.http.HttpServletRequest;
@@ -30,8 +41,18 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.IntToLongFunction;
 
 public final class StreamServlet
         extends HttpServlet
@@ -40,10 +61,54 @@ public final class StreamServlet
 
     private static final long serialVersionUID = 1L;
 
-    private final Map<String, Integer> accessesByPath = new HashMap<>();
+    private final AccessCounts accessesByPath = new AccessCounts();
+
+    private final ServerMetrics metrics = new ServerMetrics();
+
+    /**
+     * The one route all served resources are measured under, per method. Paths are unbounded when the server mirrors a
+     * repository, and each route holds two histograms.
+     */
+    public static final String ROUTE = "/**";
+
+    // "METHOD /**" for the common methods, so measuring a request builds no key. The metrics themselves are looked up
+    // each time, since StreamServer.reset() drops them.
+    private static final Map<String, String> ROUTE_KEYS = routeKeys();
+
+    private static final int MAX_RANGES = 64;
+
+    private static final int MAX_INFOS = 1024;
+
+    private static final String DEFAULT_CONTENT_TYPE = "application/octet-stream";
+
+    private static final byte[] CRLF = { '\r', '\n' };
+
+    // validators of the most recently served paths, in access order; bounded since paths are unbounded too
+    private final Map<String, ResourceInfo> infos = new LinkedHashMap<String, ResourceInfo>( 16, 0.75f, true )
+    {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry( final Map.Entry<String, ResourceInfo> eldest )
+        {
+            return size() > MAX_INFOS;
+        }
+    };
 
     private StreamResolver resolver;
 
+    private ResourceResolver resources;
+
+    private volatile Bandwidth bandwidth;
+
+    private volatile Bandwidth serverBandwidth;
+
+    private volatile BandwidthLimiter serverLimiter;
+
+    private volatile Compression compression;
+
+    private volatile EntryCache variants;
+
     public StreamServlet()
     {
         throw new IllegalArgumentException( "You cannot use the default constructor for StreamServlet. "
@@ -54,11 +119,77 @@ public final class StreamServlet
     public StreamServlet( StreamResolver resolver )
     {
         this.resolver = resolver;
+        this.resources = ResourceResolver.adapt( resolver );
+    }
+
+    public StreamResolver getResolver()
+    {
+        return resolver;
     }
 
     public Map<String, Integer> getAccessesByPath()
     {
-        return accessesByPath;
+        return accessesByPath.snapshot();
+    }
+
+    /**
+     * @return latency and throughput metrics, under <code>"METHOD /**"</code> for resources found and
+     *         {@link ServerMetrics#UNMATCHED} for the rest
+     */
+    public ServerMetrics getMetrics()
+    {
+        return metrics;
+    }
+
+    public void resetAccesses()
+    {
+        accessesByPath.reset();
+    }
+
+    /**
+     * Forget the validators formatted for recently served resources.
+     */
+    public void clearResourceInfos()
+    {
+        synchronized ( infos )
+        {
+            infos.clear();
+        }
+    }
+
+    /**
+     * Shape each response body to the bandwidth, or stop shaping if null. Every response gets the full bandwidth.
+     */
+    public void throttle( final Bandwidth bandwidth )
+    {
+        this.bandwidth = bandwidth;
+    }
+
+    /**
+     * Negotiate Accept-Encoding as configured, or always send the identity coding if null.
+     */
+    public void compress( final Compression compression )
+    {
+        this.variants = new EntryCache( compression == null ? 0 : compression.cacheSize(), false );
+        this.compression = compression;
+    }
+
+    /**
+     * @return how many responses were sent from the cache of compressed variants since compression was configured
+     */
+    public long getVariantCacheHits()
+    {
+        final EntryCache variants = this.variants;
+        return variants == null ? 0 : variants.hits();
+    }
+
+    /**
+     * Cap the bandwidth shared by all response bodies, or remove the cap if null.
+     */
+    public void limitBandwidth( final Bandwidth bandwidth )
+    {
+        this.serverBandwidth = bandwidth;
+        this.serverLimiter = bandwidth == null ? null : bandwidth.newLimiter();
     }
 
     public String getAccessKey( final String method, final String path )
@@ -66,6 +197,22 @@ public final class StreamServlet
         return method.toUpperCase() + " " + path;
     }
 
+    private String routeKey( final String method )
+    {
+        final String key = ROUTE_KEYS.get( method );
+        return key != null ? key : getAccessKey( method, ROUTE );
+    }
+
+    private static Map<String, String> routeKeys()
+    {
+        final Map<String, String> keys = new HashMap<>();
+        for ( CommonMethod method : CommonMethod.values() )
+        {
+            keys.put( method.name(), method.name() + " " + ROUTE );
+        }
+        return Collections.unmodifiableMap( keys );
+    }
+
     @Override
     protected void service( final HttpServletRequest req, final HttpServletResponse resp )
             throws ServletException, IOException
@@ -89,30 +236,125 @@ public final class StreamServlet
         final String key = getAccessKey( req.getMethod(), wholePath );
 
         logger.info( "Request: {}", key );
-        final Integer i = accessesByPath.get( key );
-        if ( i == null )
-        {
-            accessesByPath.put( key, 1 );
-        }
-        else
+        accessesByPath.increment( key );
+        metrics.route( routeKey( req.getMethod() ) ).attachCurrent();
+        if ( RequestEvent.enabled() )
         {
-            accessesByPath.put( key, i + 1 );
+            RequestEvent.describeCurrent( "stream", resolver.getClass().getSimpleName() );
         }
 
         logger.info( "Looking for resource: '{}'", path );
-        try (InputStream in = resolver.get( path );
-             OutputStream out = resp.getOutputStream())
+        final Bandwidth bandwidth = this.bandwidth;
+        final IntToLongFunction pauses =
+                PacedWriter.pauses( null, bandwidth == null ? null : bandwidth.newLimiter(), serverLimiter );
+
+        StreamResource resource = null;
+        InputStream in = null;
+        boolean paced = false;
+        try
         {
-            if ( in != null )
+            final ResolverLookupEvent lookup = ResolverLookupEvent.start();
+            resource = resources.resolve( path );
+            if ( lookup != null )
+            {
+                lookup.finish( resolver, path, resource.exists() );
+            }
+            if ( !resource.exists() )
+            {
+                metrics.unmatched().attachCurrent();
+                logger.info( "Not found: {}", path );
+                resp.setStatus( 404 );
+                return;
+            }
+
+            final String method = req.getMethod();
+            final boolean head = "HEAD".equals( method );
+            String infoKey = path;
+            final Compression compression = this.compression;
+            if ( compression != null )
+            {
+                resp.addHeader( "Vary", "Accept-Encoding" );
+                if ( ( head || "GET".equals( method ) ) && req.getHeader( "Range" ) == null )
+                {
+                    final EncodedResource encoded =
+                            negotiate( path, resource, req.getHeader( "Accept-Encoding" ), compression );
+                    if ( encoded != null )
+                    {
+                        resource = encoded;
+                        infoKey = path + ";" + encoded.coding();
+                        resp.setHeader( "Content-Encoding", encoded.coding() );
+                    }
+                }
+            }
+
+            if ( resource.length() < 0 )
+            {
+                // all we know is that it exists, so send it as it comes
+                logger.info( "Found: {}", resource );
+                resp.setStatus( 200 );
+                if ( resource.contentType() != null )
+                {
+                    resp.setContentType( resource.contentType() );
+                }
+                if ( !head )
+                {
+                    in = resource.openStream();
+                    paced = send( req, resp, in, pauses );
+                }
+                return;
+            }
+
+            final ResourceInfo info = describe( infoKey, resource );
+            logger.info( "Found: {} ({} bytes)", resource, info.length() );
+            if ( head || "GET".equals( method ) )
+            {
+                info.writeHeaders( resp );
+                if ( info.isNotModified( req ) )
+                {
+                    resp.setStatus( 304 );
+                    return;
+                }
+            }
+
+            final long[][] ranges = "GET".equals( method ) ? ranges( req, info ) : null;
+            if ( ranges != null && ranges.length == 0 )
+            {
+                resp.setStatus( 416 );
+                resp.setHeader( "Content-Range", "bytes */" + info.length() );
+            }
+            else if ( ranges == null || ranges.length > 1 && pauses != null )
             {
-                logger.info("Found: {}", in);
                 resp.setStatus( 200 );
-                IOUtils.copy( in, out );
+                resp.setContentLengthLong( info.length() );
+                if ( head )
+                {
+                    return;
+                }
+
+                if ( pauses == null )
+                {
+                    sendWhole( resource, resp );
+                }
+                else
+                {
+                    in = open( resource, info, 0, info.length() );
+                    paced = send( req, resp, in, pauses );
+                }
+            }
+            else if ( ranges.length == 1 )
+            {
+                final long start = ranges[0][0];
+                final long count = ranges[0][1] - start + 1;
+                resp.setStatus( 206 );
+                resp.setHeader( "Content-Range", contentRange( ranges[0], info ) );
+                resp.setContentLengthLong( count );
+
+                in = open( resource, info, start, count );
+                paced = send( req, resp, in, pauses );
             }
             else
             {
-                logger.info("Not found: {}", path);
-                resp.setStatus( 404 );
+                sendRanges( resource, info, ranges, resp );
             }
         }
         catch ( Exception e )
@@ -122,6 +364,298 @@ public final class StreamServlet
             resp.setStatus( 500 );
             resp.getWriter().write( StringUtils.join( e.getStackTrace(), "\n" ) );
         }
+        finally
+        {
+            if ( !paced )
+            {
+                IOUtils.closeQuietly( in );
+            }
+            IOUtils.closeQuietly( resource );
+        }
+    }
+
+    /**
+     * Pick a content coding the client accepts: a precompressed <code>.br</code> or <code>.gz</code> sibling if there
+     * is one, otherwise gzip on the fly, from the variant cache where the body fits in it. Ranges are always served
+     * from the identity representation.
+     *
+     * @return the coded representation, or null to send the resource as it is
+     */
+    private EncodedResource negotiate( final String path, final StreamResource resource, final String acceptEncoding,
+                                       final Compression compression )
+            throws IOException
+    {
+        if ( acceptEncoding == null || resource.length() >= 0 && resource.length() < compression.minimumSize() )
+        {
+            return null;
+        }
+
+        final double br = EncodedResource.quality( acceptEncoding, "br" );
+        final double gzip = EncodedResource.quality( acceptEncoding, "gzip" );
+        if ( br > 0 && br >= gzip )
+        {
+            final StreamResource sibling = resources.resolve( path + ".br" );
+            if ( sibling.exists() )
+            {
+                return EncodedResource.precompressed( resource, sibling, "br" );
+            }
+        }
+        if ( gzip <= 0 )
+        {
+            return null;
+        }
+
+        final StreamResource sibling = resources.resolve( path + ".gz" );
+        if ( sibling.exists() )
+        {
+            return EncodedResource.precompressed( resource, sibling, "gzip" );
+        }
+
+        final EntryCache variants = this.variants;
+        if ( resource.length() < 0 || !variants.accepts( resource.length() ) )
+        {
+            return EncodedResource.compressing( resource, compression.level() );
+        }
+
+        final String name = path + ";gzip;" + compression.level() + ";" + ResourceInfo.tag( resource );
+        ByteBuffer compressed = variants.get( name );
+        if ( compressed == null )
+        {
+            compressed = variants.put( name, EncodedResource.compress( resource, compression.level() ) );
+        }
+        return EncodedResource.cached( resource, compressed );
+    }
+
+    /**
+     * Validators for the resource. They are formatted once per path and reused while the resource's length,
+     * modification time and version stay the same, for the {@value #MAX_INFOS} most recently served paths.
+     */
+    private ResourceInfo describe( final String path, final StreamResource resource )
+    {
+        final long length = resource.length();
+        final long modified = resource.lastModified();
+        final String tag = ResourceInfo.tag( resource );
+
+        final ResourceInfo cached;
+        synchronized ( infos )
+        {
+            cached = infos.get( path );
+        }
+        if ( cached != null && cached.isCurrent( length, modified, tag ) )
+        {
+            return cached;
+        }
+
+        final ResourceInfo info = new ResourceInfo( length, modified, tag, resource.contentType() );
+        synchronized ( infos )
+        {
+            infos.put( path, info );
+        }
+        return info;
+    }
+
+    /**
+     * @return the satisfiable ranges requested, in request order, as inclusive {start, end} pairs; null to send the
+     *         whole resource; or empty if none of the ranges can be satisfied
+     */
+    private static long[][] ranges( final HttpServletRequest req, final ResourceInfo info )
+    {
+        final String header = req.getHeader( "Range" );
+        if ( header == null || !info.matchesIfRange( req.getHeader( "If-Range" ) ) )
+        {
+            return null;
+        }
+
+        final ByteRange range = ByteRange.parse( header );
+        if ( range == null || range.getRanges() > MAX_RANGES )
+        {
+            return null;
+        }
+
+        final long length = info.length();
+        final List<long[]> satisfiable = new ArrayList<>( range.getRanges() );
+        for ( int i = 0; i < range.getRanges(); i++ )
+        {
+            long start = range.getStart( i );
+            long end = range.getEnd( i );
+            if ( start < 0 )
+            {
+                // suffix range: the last 'end' bytes
+                if ( end <= 0 )
+                {
+                    continue;
+                }
+                start = Math.max( 0, length - end );
+                end = length - 1;
+            }
+            else if ( end < 0 || end >= length )
+            {
+                end = length - 1;
+            }
+
+            if ( start < length && start <= end )
+            {
+                satisfiable.add( new long[] { start, end } );
+            }
+        }
+
+        return satisfiable.toArray( new long[0][] );
+    }
+
+    private static String contentRange( final long[] range, final ResourceInfo info )
+    {
+        return "bytes " + range[0] + "-" + range[1] + "/" + info.length();
+    }
+
+    /**
+     * Open the resource at an offset, limited to <code>count</code> bytes. File channels and buffers are positioned
+     * directly; streams are skipped.
+     */
+    private InputStream open( final StreamResource resource, final ResourceInfo info, final long offset,
+                              final long count )
+            throws IOException
+    {
+        InputStream in;
+        final FileChannel channel = resource.openFileChannel();
+        final ByteBuffer buffer = channel == null ? resource.buffer() : null;
+        if ( channel != null )
+        {
+            in = Channels.newInputStream( channel );
+            try
+            {
+                channel.position( offset );
+            }
+            catch ( IOException e )
+            {
+                IOUtils.closeQuietly( in );
+                throw e;
+            }
+        }
+        else if ( buffer != null )
+        {
+            buffer.position( buffer.position() + (int) offset );
+            in = new BufferInputStream( buffer );
+        }
+        else
+        {
+            in = resource.openStream();
+            try
+            {
+                IOUtils.skipFully( in, offset );
+            }
+            catch ( IOException e )
+            {
+                IOUtils.closeQuietly( in );
+                throw e;
+            }
+        }
+
+        return offset == 0 && count == info.length() ? in : new BoundedInputStream( in, count );
+    }
+
+    /**
+     * Copy the stream to the response, or hand it to a {@link PacedWriter} if the response is shaped.
+     *
+     * @return true if the stream was handed off, and will be closed once the paced write finishes
+     */
+    private boolean send( final HttpServletRequest req, final HttpServletResponse resp, final InputStream in,
+                          final IntToLongFunction pauses )
+            throws IOException
+    {
+        if ( pauses != null )
+        {
+            logger.info( "Shaping to: {}", bandwidth != null ? bandwidth : serverBandwidth );
+
+            final AsyncContext context = req.startAsync();
+            context.setTimeout( 0 );
+            PacedWriter.write( context, PacedWriter.currentTimer(), resp.getOutputStream(),
+                               new StreamChunks( in, chunkSize() ), pauses );
+            return true;
+        }
+
+        try (OutputStream out = resp.getOutputStream())
+        {
+            IOUtils.copyLarge( in, out );
+        }
+        return false;
+    }
+
+    /**
+     * Send several ranges as a <code>multipart/byteranges</code> body, each part read separately.
+     */
+    private void sendRanges( final StreamResource resource, final ResourceInfo info, final long[][] ranges,
+                             final HttpServletResponse resp )
+            throws IOException
+    {
+        final String boundary = "range-" + Long.toHexString( ThreadLocalRandom.current().nextLong() );
+        final String mimeType = info.contentType();
+        final String partType = "Content-Type: " + ( mimeType == null ? DEFAULT_CONTENT_TYPE : mimeType ) + "\r\n";
+
+        final byte[][] heads = new byte[ranges.length][];
+        final byte[] tail = ( "--" + boundary + "--\r\n" ).getBytes( StandardCharsets.ISO_8859_1 );
+        long length = tail.length;
+        for ( int i = 0; i < ranges.length; i++ )
+        {
+            heads[i] = ( "--" + boundary + "\r\n" + partType + "Content-Range: " + contentRange( ranges[i], info )
+                    + "\r\n\r\n" ).getBytes( StandardCharsets.ISO_8859_1 );
+            length += heads[i].length + ranges[i][1] - ranges[i][0] + 1 + CRLF.length;
+        }
+
+        resp.setStatus( 206 );
+        resp.setContentType( "multipart/byteranges; boundary=" + boundary );
+        resp.setContentLengthLong( length );
+        try (OutputStream out = resp.getOutputStream())
+        {
+            for ( int i = 0; i < ranges.length; i++ )
+            {
+                out.write( heads[i] );
+                try (InputStream in = open( resource, info, ranges[i][0], ranges[i][1] - ranges[i][0] + 1 ))
+                {
+                    IOUtils.copyLarge( in, out );
+                }
+                out.write( CRLF );
+            }
+            out.write( tail );
+        }
+    }
+
+    /**
+     * Send the whole resource, without copying it through the heap where the resource allows. File channels go to
+     * Undertow's transferFrom (sendfile, where the OS has it), and buffers are written as they are.
+     */
+    private void sendWhole( final StreamResource resource, final HttpServletResponse resp )
+            throws IOException
+    {
+        final OutputStream out = resp.getOutputStream();
+        if ( out instanceof BufferWritableOutputStream )
+        {
+            try (FileChannel channel = resource.openFileChannel())
+            {
+                if ( channel != null )
+                {
+                    ( (BufferWritableOutputStream) out ).transferFrom( channel );
+                    return;
+                }
+            }
+
+            final ByteBuffer buffer = resource.buffer();
+            if ( buffer != null )
+            {
+                ( (BufferWritableOutputStream) out ).write( buffer );
+                return;
+            }
+        }
+
+        try (InputStream in = resource.openStream())
+        {
+            IOUtils.copyLarge( in, out );
+        }
+    }
+
+    private int chunkSize()
+    {
+        final Bandwidth bandwidth = this.bandwidth != null ? this.bandwidth : serverBandwidth;
+        return bandwidth == null ? Bandwidth.DEFAULT_CHUNK_SIZE : bandwidth.chunkSize();
     }
 
     public String getAccessKey( final CommonMethod method, final String path )
@@ -15,8 +15,12 @@
  */
 package org.commonjava.test.http.util;
 
+import io.undertow.Undertow;
+
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
+import java.net.SocketAddress;
 import java.util.Random;
 
 import org.apache.commons.io.IOUtils;
@@ -29,6 +33,34 @@ public final class PortFinder
     {
     }
 
+    /**
+     * Port number that asks the OS to assign a free ephemeral port when binding.
+     */
+    public static final int EPHEMERAL_PORT = 0;
+
+    /**
+     * @return the port a started server's first listener is actually bound to, e.g. after binding
+     * {@link #EPHEMERAL_PORT}
+     */
+    public static int boundPort( final Undertow server )
+    {
+        for ( final Undertow.ListenerInfo info : server.getListenerInfo() )
+        {
+            final SocketAddress address = info.getAddress();
+            if ( address instanceof InetSocketAddress )
+            {
+                return ( (InetSocketAddress) address ).getPort();
+            }
+        }
+
+        throw new IllegalStateException( "Server has no bound listener: " + server );
+    }
+
+    /**
+     * @deprecated random ports collide when many servers start at once; bind {@link #EPHEMERAL_PORT} and read the port
+     * back with {@link #boundPort(Undertow)} instead
+     */
+    @Deprecated
     public static <T> T findPortFor( final int maxTries, PortConsumer<T> consumer )
     {
         for ( int i = 0; i < maxTries; i++ )
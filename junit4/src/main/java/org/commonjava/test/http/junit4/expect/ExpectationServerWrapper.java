@@ -15,21 +15,31 @@
  */
 package org.commonjava.test.http.junit4.expect;
 
+import org.commonjava.test.http.common.Bandwidth;
 import org.commonjava.test.http.common.CommonMethod;
+import org.commonjava.test.http.common.RequestJournal;
+import org.commonjava.test.http.common.RouteMetrics;
 import org.commonjava.test.http.expect.ContentResponse;
 import org.commonjava.test.http.expect.ExpectationHandler;
 import org.commonjava.test.http.expect.ExpectationServer;
+import org.commonjava.test.http.expect.ExpectationServerPool;
+import org.commonjava.test.http.expect.Latency;
+import org.commonjava.test.http.expect.ResponseBody;
 import org.junit.rules.ExternalResource;
 
 import java.io.InputStream;
 import java.net.MalformedURLException;
+import java.nio.file.Path;
 import java.util.Map;
 
 @SuppressWarnings( "unused" )
 public class ExpectationServerWrapper
         extends ExternalResource
 {
-    private final ExpectationServer server;
+    // the server this rule was configured with; a pooled server may stand in for it while a test runs
+    private final ExpectationServer template;
+
+    private volatile ExpectationServer server;
 
     public ExpectationServerWrapper()
     {
@@ -38,12 +48,14 @@ public class ExpectationServerWrapper
 
     public ExpectationServerWrapper( final String baseResource )
     {
-        this.server = new ExpectationServer( baseResource );
+        this.template = new ExpectationServer( baseResource );
+        this.server = template;
     }
 
     public ExpectationServerWrapper( final String baseResource, final int port )
     {
-        this.server = new ExpectationServer( baseResource, port );
+        this.template = new ExpectationServer( baseResource, port );
+        this.server = template;
     }
 
     @Override
@@ -55,7 +67,7 @@ public class ExpectationServerWrapper
     @Override
     public void before()
     {
-        server.start();
+        server = ExpectationServerPool.shared().start( template );
     }
 
     public int getPort()
@@ -89,6 +101,37 @@ public class ExpectationServerWrapper
         return server.getAccessesByPathKey();
     }
 
+    /**
+     * @return an isolated session on the running server; see {@link ExpectationServer#openSession(boolean)}
+     */
+    public ExpectationServer openSession( final boolean byHeader )
+    {
+        return server.openSession( byHeader );
+    }
+
+    /**
+     * @return a virtual host on the running server; see {@link ExpectationServer#openVirtualHost(String)}
+     */
+    public ExpectationServer openVirtualHost( final String host )
+    {
+        return server.openVirtualHost( host );
+    }
+
+    public RequestJournal getRequestJournal()
+    {
+        return server.getRequestJournal();
+    }
+
+    public Map<String, RouteMetrics.Snapshot> getMetrics()
+    {
+        return server.getMetrics();
+    }
+
+    public void resetMetrics()
+    {
+        server.resetMetrics();
+    }
+
     public Map<String, ContentResponse> getRegisteredErrors()
     {
         return server.getRegisteredErrors();
@@ -114,6 +157,26 @@ public class ExpectationServerWrapper
         server.registerException( method, url, responseCode, error );
     }
 
+    public void delay( final String testUrl, final Latency latency )
+    {
+        server.delay( testUrl, latency );
+    }
+
+    public void delay( final String method, final String testUrl, final Latency latency )
+    {
+        server.delay( method, testUrl, latency );
+    }
+
+    public void throttle( final String testUrl, final Bandwidth bandwidth )
+    {
+        server.throttle( testUrl, bandwidth );
+    }
+
+    public void throttle( final String method, final String testUrl, final Bandwidth bandwidth )
+    {
+        server.throttle( method, testUrl, bandwidth );
+    }
+
     public void expect( final String testUrl, final int responseCode, final String body )
             throws Exception
     {
@@ -126,6 +189,24 @@ public class ExpectationServerWrapper
         server.expect( method, testUrl, responseCode, body );
     }
 
+    public void expect( final String testUrl, final int responseCode, final String body, final String contentType )
+            throws Exception
+    {
+        server.expect( testUrl, responseCode, body, contentType );
+    }
+
+    public void expect( final String testUrl, final int responseCode, final ResponseBody body )
+            throws Exception
+    {
+        server.expect( testUrl, responseCode, body );
+    }
+
+    public void expect( final String method, final String testUrl, final int responseCode, final ResponseBody body )
+            throws Exception
+    {
+        server.expect( method, testUrl, responseCode, body );
+    }
+
     public void expect( final String testUrl, final int responseCode, final InputStream bodyStream )
             throws Exception
     {
@@ -139,6 +220,18 @@ public class ExpectationServerWrapper
         server.expect( method, testUrl, responseCode, bodyStream );
     }
 
+    public void expect( final String testUrl, final int responseCode, final Path file )
+            throws Exception
+    {
+        server.expect( testUrl, responseCode, file );
+    }
+
+    public void expect( final String method, final String testUrl, final int responseCode, final Path file )
+            throws Exception
+    {
+        server.expect( method, testUrl, responseCode, file );
+    }
+
     public void expect( final String method, final String testUrl, ExpectationHandler handler )
     {
         server.expect( method, testUrl, handler );
@@ -16,6 +16,8 @@
 package org.commonjava.test.http.junit4.stream;
 
 import org.commonjava.test.http.common.CommonMethod;
+import org.commonjava.test.http.common.RequestJournal;
+import org.commonjava.test.http.common.RouteMetrics;
 import org.commonjava.test.http.stream.StreamResolver;
 import org.commonjava.test.http.stream.StreamServer;
 import org.commonjava.test.http.util.UrlUtils;
@@ -97,6 +99,21 @@ public class StreamServerWrapper
         return server.getAccessesByPathKey();
     }
 
+    public RequestJournal getRequestJournal()
+    {
+        return server.getRequestJournal();
+    }
+
+    public Map<String, RouteMetrics.Snapshot> getMetrics()
+    {
+        return server.getMetrics();
+    }
+
+    public void resetMetrics()
+    {
+        server.resetMetrics();
+    }
+
     public String getAccessKey( final CommonMethod method, final String path )
     {
         return server.getAccessKey( method, path );
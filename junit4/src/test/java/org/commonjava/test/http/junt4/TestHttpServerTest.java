@@ -22,13 +22,17 @@ import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
 import org.apache.http.util.EntityUtils;
 import org.commonjava.test.http.common.CommonMethod;
+import org.commonjava.test.http.expect.ExpectationHandler;
 import org.commonjava.test.http.expect.ExpectationServer;
 import org.commonjava.test.http.junit4.expect.ExpectationServerWrapper;
 import org.junit.Rule;
 import org.junit.Test;
 
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Map;
 
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.notNullValue;
@@ -86,6 +90,36 @@ public class TestHttpServerTest
 
     }
 
+    @Test
+    public void downloadWithPathTemplate()
+            throws Exception
+    {
+        final ExpectationServer server = serverRule.getServer();
+
+        server.expect( "GET", server.formatUrl( "/{groupId}/{artifactId}/**" ), new ExpectationHandler()
+        {
+            @Override
+            public void handle( final HttpServletRequest request, final HttpServletResponse response )
+            {
+                throw new IllegalStateException( "Path variables were not passed to the handler" );
+            }
+
+            @Override
+            public void handle( final HttpServletRequest request, final HttpServletResponse response,
+                                final Map<String, String> pathVariables )
+                    throws IOException
+            {
+                response.getWriter()
+                        .write( pathVariables.get( "groupId" ) + ":" + pathVariables.get( "artifactId" ) + ":"
+                                        + pathVariables.get( "**" ) );
+            }
+        } );
+        server.expect( server.formatUrl( "/org/foo/1.0/foo-1.0.pom" ), 200, "literal" );
+
+        assertThat( getHttpContent( server.formatUrl( "/org/bar/1.0/bar-1.0.pom" ) ), equalTo( "org:bar:1.0/bar-1.0.pom" ) );
+        assertThat( getHttpContent( server.formatUrl( "/org/foo/1.0/foo-1.0.pom" ) ), equalTo( "literal" ) );
+    }
+
     private String getHttpContent(String url) throws IOException
     {
         final HttpGet request = new HttpGet( url );
@@ -0,0 +1,129 @@
+/**
+ * Copyright (C) 2011-2024 Red Hat, Inc. (https://github.com/Commonjava/http-testserver)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.test.http.junit5;
+
+import org.commonjava.test.http.common.HttpServerFixture;
+import org.junit.jupiter.api.extension.ExtensionContext;
+import org.junit.jupiter.api.parallel.ExecutionMode;
+
+import java.util.function.Supplier;
+
+/**
+ * How long a server started by one of the extensions lives.
+ * <p>
+ * A shared server is reset after each test, which would wipe the expectations of tests still running against it. So
+ * with parallel execution enabled, {@link #PER_CLASS} needs sessions when the test runs concurrently, and
+ * {@link #PER_SUITE}, whose server other classes may be using at the same time, always needs them. Extensions fail
+ * the test up front otherwise.
+ */
+public enum ServerScope
+{
+    /**
+     * Start a server before each test and stop it after (the default).
+     */
+    PER_TEST,
+
+    /**
+     * Start one server for all tests in the class and reset it after each test. Tests that run concurrently need
+     * sessions.
+     */
+    PER_CLASS,
+
+    /**
+     * Start one server for the whole test run, shared by every class that asks for the same server, and reset it
+     * after each test. Needs sessions whenever parallel execution is enabled.
+     */
+    PER_SUITE;
+
+    private static final ExtensionContext.Namespace NAMESPACE = ExtensionContext.Namespace.create( ServerScope.class );
+
+    private static final String PARALLEL_ENABLED = "junit.jupiter.execution.parallel.enabled";
+
+    /**
+     * Fail if a shared server without sessions could be reset under another test running at the same time.
+     *
+     * @param sessions whether each test gets its own session of the shared server
+     */
+    public void checkConcurrency( final ExtensionContext context, final boolean sessions )
+    {
+        if ( this == PER_TEST || sessions
+                || !context.getConfigurationParameter( PARALLEL_ENABLED, Boolean::parseBoolean ).orElse( false ) )
+        {
+            return;
+        }
+
+        if ( this == PER_SUITE || context.getExecutionMode() == ExecutionMode.CONCURRENT )
+        {
+            throw new IllegalStateException(
+                    "A " + this + " server is reset after each test, which would break tests running in parallel "
+                            + "with " + context.getDisplayName() + ". Enable sessions for this server." );
+        }
+    }
+
+    /**
+     * Return the server stored for this scope under the key, starting one with the supplier if there is none yet.
+     * The server is stopped when the class (or the whole run, for {@link #PER_SUITE}) is done.
+     */
+    @SuppressWarnings( "unchecked" )
+    public <T extends HttpServerFixture<T>> T shared( final ExtensionContext context, final String key,
+                                                      final Supplier<T> starter )
+    {
+        final ExtensionContext owner;
+        switch ( this )
+        {
+            case PER_SUITE:
+                owner = context.getRoot();
+                break;
+            case PER_CLASS:
+                owner = classContext( context );
+                break;
+            default:
+                throw new IllegalStateException( "Servers are not shared in scope: " + this );
+        }
+
+        final StoredServer<T> stored =
+                owner.getStore( NAMESPACE ).getOrComputeIfAbsent( key, k -> new StoredServer<>( starter.get() ),
+                                                                  StoredServer.class );
+        return stored.server;
+    }
+
+    private static ExtensionContext classContext( final ExtensionContext context )
+    {
+        ExtensionContext current = context;
+        while ( current.getTestMethod().isPresent() && current.getParent().isPresent() )
+        {
+            current = current.getParent().get();
+        }
+        return current;
+    }
+
+    private static final class StoredServer<T extends HttpServerFixture<T>>
+            implements ExtensionContext.Store.CloseableResource
+    {
+        private final T server;
+
+        private StoredServer( final T server )
+        {
+            this.server = server;
+        }
+
+        @Override
+        public void close()
+        {
+            server.stop();
+        }
+    }
+}
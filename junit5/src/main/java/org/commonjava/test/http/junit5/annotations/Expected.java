@@ -15,6 +15,8 @@
  */
 package org.commonjava.test.http.junit5.annotations;
 
+import org.commonjava.test.http.junit5.ServerScope;
+
 import java.lang.annotation.ElementType;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
@@ -30,4 +32,15 @@ public @interface Expected
     String base() default "";
 
     int port() default 0;
+
+    /**
+     * How long the injected server lives; see {@link ServerScope}.
+     */
+    ServerScope scope() default ServerScope.PER_TEST;
+
+    /**
+     * With a shared scope, give each test its own session on the shared server instead of resetting it, so tests can
+     * run in parallel; see {@link org.commonjava.test.http.expect.ExpectationServer#openSession()}.
+     */
+    boolean sessions() default false;
 }
@@ -16,6 +16,8 @@
 package org.commonjava.test.http.junit5.expect;
 
 import org.commonjava.test.http.expect.ExpectationServer;
+import org.commonjava.test.http.expect.ExpectationServerPool;
+import org.commonjava.test.http.junit5.ServerScope;
 import org.commonjava.test.http.junit5.annotations.Expected;
 import org.junit.jupiter.api.extension.AfterEachCallback;
 import org.junit.jupiter.api.extension.BeforeEachCallback;
@@ -26,12 +28,37 @@ import org.slf4j.LoggerFactory;
 
 import java.lang.reflect.Field;
 
+/**
+ * Starts an {@link ExpectationServer} for tests. By default each test gets a fresh server; with
+ * {@link ServerScope#PER_CLASS} or {@link ServerScope#PER_SUITE} one running server is kept in the JUnit
+ * {@link ExtensionContext.Store} and {@link ExpectationServer#reset() reset} after each test instead.
+ * <p>
+ * For parallel test execution, enable sessions on a shared scope: each test then gets its own
+ * {@link ExpectationServer#openSession() session} of the shared server, injected into its <code>@Expected</code>
+ * field. Without sessions, tests that could run concurrently fail up front; see {@link ServerScope}. Everything about the server a test uses is kept in that test's own {@link ExtensionContext.Store}, so
+ * concurrently running tests don't see each other's server.
+ * <p>
+ * Servers are borrowed from {@link ExpectationServerPool#shared()} when it is enabled.
+ */
 public class ExpectationServerExtension
         implements AfterEachCallback, BeforeEachCallback, TestInstancePostProcessor
 {
+    private static final ExtensionContext.Namespace NAMESPACE =
+            ExtensionContext.Namespace.create( ExpectationServerExtension.class );
+
     private final Logger logger = LoggerFactory.getLogger( this.getClass() );
 
-    private ExpectationServer server;
+    // the configured, not yet started server of a registered extension; tests with an @Expected field use their own
+    private final ExpectationServer template;
+
+    private final String baseResource;
+
+    private final ServerScope scope;
+
+    private boolean sessions;
+
+    // only read by getServer()
+    private volatile ExpectationServer server;
 
     @SuppressWarnings( "unused" )
     public ExpectationServerExtension()
@@ -41,45 +68,169 @@ public class ExpectationServerExtension
 
     public ExpectationServerExtension( final String baseResource )
     {
-        this.server = new ExpectationServer( baseResource );
+        this( baseResource, ServerScope.PER_TEST );
+    }
+
+    public ExpectationServerExtension( final String baseResource, final ServerScope scope )
+    {
+        this.template = new ExpectationServer( baseResource );
+        this.server = template;
+        this.baseResource = baseResource;
+        this.scope = scope;
+    }
+
+    /**
+     * Give each test its own session of the shared server; see {@link Expected#sessions()}.
+     */
+    public ExpectationServerExtension withSessions()
+    {
+        if ( scope == ServerScope.PER_TEST )
+        {
+            throw new IllegalStateException( "Sessions need a shared server scope, not: " + scope );
+        }
+        this.sessions = true;
+        return this;
     }
 
     @Override
     public void beforeEach( ExtensionContext context )
+            throws Exception
     {
-        server.start();
+        final Object testInstance = context.getRequiredTestInstance();
+        final Field field = expectedField( testInstance );
+        final TestServer test = field == null
+                ? new TestServer( template, baseResource, 0, scope, sessions )
+                : TestServer.expected( field, (ExpectationServer) field.get( testInstance ) );
+
+        test.scope.checkConcurrency( context, test.sessions );
+
+        final ExpectationServer forTest;
+        if ( test.scope == ServerScope.PER_TEST )
+        {
+            forTest = ExpectationServerPool.shared().start( test.template );
+        }
+        else
+        {
+            final String key = "expect:" + test.base + ":" + test.port + ":" + test.template.getEngine();
+            final ExpectationServer shared =
+                    test.scope.shared( context, key, () -> ExpectationServerPool.shared().start( test.template ) );
+            forTest = test.sessions ? shared.openSession() : shared;
+            logger.debug( "Using {} server for {}{}", test.scope, key,
+                          test.sessions ? ", session " + forTest.getSessionId() : "" );
+        }
+
+        test.server = forTest;
+        context.getStore( NAMESPACE ).put( TestServer.class, test );
+        server = forTest;
+        if ( field != null )
+        {
+            field.set( testInstance, forTest );
+        }
     }
 
     @Override
     public void afterEach( ExtensionContext context )
+            throws Exception
     {
-        server.stop();
+        final TestServer test = context.getStore( NAMESPACE ).remove( TestServer.class, TestServer.class );
+        if ( test == null )
+        {
+            return;
+        }
+
+        // a per-class test instance keeps its field; put the template back for the next test
+        final Object testInstance = context.getRequiredTestInstance();
+        final Field field = expectedField( testInstance );
+        if ( field != null )
+        {
+            field.set( testInstance, test.template );
+        }
+
+        if ( test.scope == ServerScope.PER_TEST || test.sessions )
+        {
+            // stopping a session closes it, leaving the shared server running
+            test.server.stop();
+        }
+        else
+        {
+            test.server.reset();
+        }
     }
 
+    /**
+     * @return the server used by the most recent test, or the configured server before the first one. With sessions
+     * and parallel tests, use the injected <code>@Expected</code> field instead.
+     */
     public ExpectationServer getServer()
     {
         return server;
     }
 
+    public ServerScope getScope()
+    {
+        return scope;
+    }
+
     @Override
     public void postProcessTestInstance( Object testInstance, ExtensionContext context )
             throws Exception
+    {
+        final Field field = expectedField( testInstance );
+        if ( field != null )
+        {
+            Expected expected = field.getAnnotation( Expected.class );
+            logger.debug( "Found field with @Expected annotation, base resource is {}, port is {}, scope is {}",
+                          expected.base(), expected.port(), expected.scope() );
+            logger.debug( "Injecting the field {} with server instance", field.getName() );
+            field.set( testInstance, new ExpectationServer( expected.base(), expected.port() ) );
+        }
+    }
+
+    private static Field expectedField( final Object testInstance )
     {
         for ( Field field : testInstance.getClass().getDeclaredFields() )
         {
             if ( field.isAnnotationPresent( Expected.class ) && field.getType().equals( ExpectationServer.class ) )
             {
-
-                Expected expected = field.getAnnotation( Expected.class );
-                String base = expected.base();
-                int port = expected.port();
-                logger.debug( "Found field with @Expected annotation, base resource is {}, port is {}", base, port );
-                this.server = new ExpectationServer( base, port );
                 field.setAccessible( true );
-                logger.debug( "Injecting the field {} with server instance", field.getName() );
-                field.set( testInstance, this.server );
-                return;
+                return field;
             }
         }
+        return null;
+    }
+
+    /**
+     * The server one test runs against, and how it was configured. Kept in the test's store.
+     */
+    private static final class TestServer
+    {
+        private final ExpectationServer template;
+
+        private final String base;
+
+        private final int port;
+
+        private final ServerScope scope;
+
+        private final boolean sessions;
+
+        private ExpectationServer server;
+
+        private TestServer( final ExpectationServer template, final String base, final int port,
+                            final ServerScope scope, final boolean sessions )
+        {
+            this.template = template;
+            this.base = base;
+            this.port = port;
+            this.scope = scope;
+            this.sessions = sessions;
+        }
+
+        private static TestServer expected( final Field field, final ExpectationServer template )
+        {
+            final Expected expected = field.getAnnotation( Expected.class );
+            return new TestServer( template, expected.base(), expected.port(), expected.scope(),
+                                   expected.sessions() && expected.scope() != ServerScope.PER_TEST );
+        }
     }
 }
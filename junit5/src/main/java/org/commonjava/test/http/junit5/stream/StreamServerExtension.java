@@ -15,7 +15,7 @@
  */
 package org.commonjava.test.http.junit5.stream;
 
-import org.commonjava.test.http.expect.ExpectationServer;
+import org.commonjava.test.http.junit5.ServerScope;
 import org.commonjava.test.http.junit5.annotations.Expected;
 import org.commonjava.test.http.stream.StreamResolver;
 import org.commonjava.test.http.stream.StreamServer;
@@ -26,32 +26,85 @@ import org.junit.jupiter.api.extension.TestInstancePostProcessor;
 
 import java.lang.reflect.Field;
 
+/**
+ * Starts a {@link StreamServer} for tests. By default each test gets a fresh server; with {@link ServerScope#PER_CLASS}
+ * or {@link ServerScope#PER_SUITE} one running server is kept in the JUnit {@link ExtensionContext.Store} and
+ * {@link StreamServer#reset() reset} after each test instead.
+ */
 public class StreamServerExtension
         implements AfterEachCallback, BeforeEachCallback, TestInstancePostProcessor
 {
 
-    private final StreamServer server;
+    private StreamServer server;
+
+    private final String source;
+
+    private final ServerScope scope;
 
     public StreamServerExtension( final StreamResolver resolver )
     {
-        server = new StreamServer( resolver );
+        this( resolver, ServerScope.PER_TEST );
     }
 
     public StreamServerExtension( final String resourceBase )
+    {
+        this( resourceBase, ServerScope.PER_TEST );
+    }
+
+    /**
+     * @param resolver shared servers are keyed by the resolver's {@link Object#toString()}
+     */
+    public StreamServerExtension( final StreamResolver resolver, final ServerScope scope )
+    {
+        server = new StreamServer( resolver );
+        this.source = resolver.getClass().getName() + ":" + resolver;
+        this.scope = scope;
+    }
+
+    public StreamServerExtension( final String resourceBase, final ServerScope scope )
     {
         server = new StreamServer( resourceBase );
+        this.source = resourceBase;
+        this.scope = scope;
     }
 
     @Override
     public void afterEach( ExtensionContext extensionContext )
     {
-        server.stop();
+        if ( scope == ServerScope.PER_TEST )
+        {
+            server.stop();
+        }
+        else
+        {
+            server.reset();
+        }
     }
 
     @Override
     public void beforeEach( ExtensionContext extensionContext )
+            throws Exception
+    {
+        if ( scope == ServerScope.PER_TEST )
+        {
+            server.start();
+            return;
+        }
+
+        // stream servers have no sessions, and resetting one clears the access counts of every test using it
+        scope.checkConcurrency( extensionContext, false );
+
+        final StreamServer candidate = server;
+        server = scope.shared( extensionContext, "stream:" + source, candidate::start );
+        if ( server != candidate )
+        {
+            postProcessTestInstance( extensionContext.getRequiredTestInstance(), extensionContext );
+        }
+    }
+
+    public StreamServer getServer()
     {
-        server.start();
+        return server;
     }
 
     @Override
@@ -16,20 +16,31 @@
 package org.commonjava.test.http.junit5;
 
 import org.apache.commons.io.IOUtils;
+import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
 import org.apache.http.util.EntityUtils;
+import org.commonjava.test.http.common.Bandwidth;
 import org.commonjava.test.http.common.CommonMethod;
+import org.commonjava.test.http.common.RequestRecord;
+import org.commonjava.test.http.common.RouteMetrics;
 import org.commonjava.test.http.expect.ExpectationServer;
+import org.commonjava.test.http.expect.Latency;
+import org.commonjava.test.http.expect.SyntheticBody;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
 
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
 import static org.hamcrest.MatcherAssert.assertThat;
 
 public abstract class AbstractExtensionTest
@@ -119,4 +130,212 @@ public abstract class AbstractExtensionTest
         System.out.println( "Getting accesses for: '" + key + "'" );
         assertThat( getServer().getAccessesByPathKey().get( key ), equalTo( 1 ) );
     }
+
+    @Test
+    public void declaredContentLengthAndType()
+            throws Exception
+    {
+        final String url = getServer().formatUrl( "/path/to/unicode.json" );
+        final String content = "{\"name\":\"caf\u00e9\"}";
+        getServer().expect( url, 200, content, "application/json" );
+
+        final HttpGet request = new HttpGet( url );
+        try (CloseableHttpClient client = HttpClients.createDefault();
+             CloseableHttpResponse response = client.execute( request ))
+        {
+            assertThat( response.getFirstHeader( "Content-Length" ).getValue(), equalTo( "16" ) );
+            assertThat( response.getFirstHeader( "Content-Type" ).getValue(),
+                        equalTo( "application/json;charset=UTF-8" ) );
+            assertThat( EntityUtils.toString( response.getEntity() ), equalTo( content ) );
+        }
+    }
+
+    @Test
+    public void streamBodyIsReplayed()
+            throws Exception
+    {
+        final String url = getServer().formatUrl( "/path/to/stream.bin" );
+        final String content = "this is streamed content";
+        getServer().expect( url, 200, new ByteArrayInputStream( content.getBytes( StandardCharsets.UTF_8 ) ) );
+
+        try (CloseableHttpClient client = HttpClients.createDefault())
+        {
+            for ( int i = 0; i < 2; i++ )
+            {
+                try (CloseableHttpResponse response = client.execute( new HttpGet( url ) ))
+                {
+                    assertThat( EntityUtils.toString( response.getEntity() ), equalTo( content ) );
+                }
+            }
+        }
+    }
+
+    @Test
+    public void delayedResponseIsPacedPerChunk()
+            throws Exception
+    {
+        final String url = getServer().formatUrl( "/path/to/slow.txt" );
+        final String content = "0123456789abcdefghij";
+        getServer().expect( url, 200, content );
+        getServer().delay( url, Latency.fixed( 100, TimeUnit.MILLISECONDS )
+                                       .withChunkDelay( Latency.fixed( 20, TimeUnit.MILLISECONDS ), 5 ) );
+
+        final long start = System.nanoTime();
+        try (CloseableHttpClient client = HttpClients.createDefault();
+             CloseableHttpResponse response = client.execute( new HttpGet( url ) ))
+        {
+            assertThat( EntityUtils.toString( response.getEntity() ), equalTo( content ) );
+        }
+
+        // 100ms before the first byte, then 20ms after each of the first three 5-byte chunks
+        final long elapsed = TimeUnit.NANOSECONDS.toMillis( System.nanoTime() - start );
+        assertThat( elapsed, greaterThanOrEqualTo( 160L ) );
+    }
+
+    @Test
+    public void failingDelayedHandlerAnswers500()
+            throws Exception
+    {
+        final String url = getServer().formatUrl( "/path/to/failing.txt" );
+        getServer().expect( "GET", url, ( request, response ) -> {
+            throw new AssertionError( "handler failed" );
+        } );
+        getServer().delay( url, Latency.fixed( 50, TimeUnit.MILLISECONDS ) );
+
+        final RequestConfig config = RequestConfig.custom().setSocketTimeout( 10000 ).build();
+        try (CloseableHttpClient client = HttpClients.custom().setDefaultRequestConfig( config ).build();
+             CloseableHttpResponse response = client.execute( new HttpGet( url ) ))
+        {
+            EntityUtils.consume( response.getEntity() );
+            assertThat( response.getStatusLine().getStatusCode(), equalTo( 500 ) );
+        }
+    }
+
+    @Test
+    public void throttledResponseIsShaped()
+            throws Exception
+    {
+        final String url = getServer().formatUrl( "/path/to/throttled.bin" );
+        final byte[] content = new byte[1000];
+        Arrays.fill( content, (byte) 'x' );
+        getServer().expect( url, 200, new ByteArrayInputStream( content ) );
+        getServer().throttle( url, Bandwidth.bytesPerSecond( 1000 ).withChunkSize( 250 ) );
+
+        final long start = System.nanoTime();
+        try (CloseableHttpClient client = HttpClients.createDefault();
+             CloseableHttpResponse response = client.execute( new HttpGet( url ) ))
+        {
+            assertThat( EntityUtils.toByteArray( response.getEntity() ).length, equalTo( content.length ) );
+        }
+
+        // four 250-byte chunks at 1000 bytes/s, with a 250ms pause after each of the first three
+        final long elapsed = TimeUnit.NANOSECONDS.toMillis( System.nanoTime() - start );
+        assertThat( elapsed, greaterThanOrEqualTo( 700L ) );
+    }
+
+    @Test
+    public void requestIsJournaled()
+            throws Exception
+    {
+        final String path = getServer().formatPath( "/path/to/journaled.txt" );
+        final String url = getServer().formatUrl( "/path/to/journaled.txt" );
+        getServer().expect( url, 200, "journaled" );
+
+        try (CloseableHttpClient client = HttpClients.createDefault();
+             CloseableHttpResponse response = client.execute( new HttpGet( url ) ))
+        {
+            EntityUtils.consume( response.getEntity() );
+        }
+
+        // the record is written when the exchange completes, which can be just after the client has the response
+        RequestRecord record = null;
+        for ( int i = 0; i < 50 && record == null; i++ )
+        {
+            record = getServer().getRequestJournal().query().method( "GET" ).path( path ).last();
+            if ( record == null )
+            {
+                Thread.sleep( 20 );
+            }
+        }
+
+        assertThat( record, notNullValue() );
+        assertThat( record.status(), equalTo( 200 ) );
+        assertThat( record.bytesOut(), greaterThanOrEqualTo( (long) "journaled".length() ) );
+    }
+
+    @Test
+    public void requestIsMeasured()
+            throws Exception
+    {
+        final String path = getServer().formatPath( "/path/to/measured.txt" );
+        final String url = getServer().formatUrl( "/path/to/measured.txt" );
+        getServer().expect( url, 200, "measured" );
+
+        try (CloseableHttpClient client = HttpClients.createDefault();
+             CloseableHttpResponse response = client.execute( new HttpGet( url ) ))
+        {
+            EntityUtils.consume( response.getEntity() );
+        }
+
+        // like the journal, metrics are recorded when the exchange completes
+        RouteMetrics.Snapshot metrics = null;
+        for ( int i = 0; i < 50 && ( metrics == null || metrics.requests() == 0 ); i++ )
+        {
+            metrics = getServer().getMetrics().get( "GET " + path );
+            if ( metrics == null || metrics.requests() == 0 )
+            {
+                Thread.sleep( 20 );
+            }
+        }
+
+        assertThat( metrics, notNullValue() );
+        assertThat( metrics.requests(), equalTo( 1L ) );
+        assertThat( metrics.bytesServed(), greaterThanOrEqualTo( (long) "measured".length() ) );
+        assertThat( metrics.service().getTotalCount(), equalTo( 1L ) );
+
+        getServer().resetMetrics();
+        assertThat( getServer().getMetrics().get( "GET " + path ).requests(), equalTo( 0L ) );
+    }
+
+    @Test
+    public void syntheticBodyIsStreamed()
+            throws Exception
+    {
+        final String url = getServer().formatUrl( "/path/to/large.bin" );
+        final SyntheticBody body = SyntheticBody.random( 10L * 1024 * 1024 + 17, 42 ).withBlockSize( 4096 );
+        getServer().expect( url, 200, body );
+
+        try (CloseableHttpClient client = HttpClients.createDefault();
+             CloseableHttpResponse response = client.execute( new HttpGet( url ) ))
+        {
+            assertThat( response.getStatusLine().getStatusCode(), equalTo( 200 ) );
+            assertThat( response.getEntity().getContentLength(), equalTo( body.length() ) );
+            assertThat( body.verify( response.getEntity().getContent() ), is( true ) );
+        }
+
+        assertThat( body.sha256(), equalTo( SyntheticBody.random( body.length(), 42 ).sha256() ) );
+    }
+
+    @Test
+    public void syntheticBodyBeyondViewsIsThrottled()
+            throws Exception
+    {
+        final String url = getServer().formatUrl( "/path/to/throttled-large.bin" );
+        // more blocks than SyntheticBody.MAX_VIEWS, so the body has no buffer views
+        final SyntheticBody body = SyntheticBody.random( 1024 * 1024 + 1000, 42 ).withBlockSize( 256 );
+        getServer().expect( url, 200, body );
+        getServer().throttle( url, Bandwidth.bytesPerSecond( 1024 * 1024 ) );
+
+        final long start = System.nanoTime();
+        try (CloseableHttpClient client = HttpClients.createDefault();
+             CloseableHttpResponse response = client.execute( new HttpGet( url ) ))
+        {
+            assertThat( response.getEntity().getContentLength(), equalTo( body.length() ) );
+            assertThat( body.verify( response.getEntity().getContent() ), is( true ) );
+        }
+
+        // a little over a second at 1 MiB/s; unthrottled it takes milliseconds
+        final long elapsed = TimeUnit.NANOSECONDS.toMillis( System.nanoTime() - start );
+        assertThat( elapsed, greaterThanOrEqualTo( 500L ) );
+    }
 }
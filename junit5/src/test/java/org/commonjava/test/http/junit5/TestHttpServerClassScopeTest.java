@@ -0,0 +1,34 @@
+/**
+ * Copyright (C) 2011-2024 Red Hat, Inc. (https://github.com/Commonjava/http-testserver)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.test.http.junit5;
+
+import org.commonjava.test.http.expect.ExpectationServer;
+import org.commonjava.test.http.junit5.expect.ExpectationServerExtension;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+public class TestHttpServerClassScopeTest
+        extends AbstractExtensionTest
+{
+    @RegisterExtension
+    private final ExpectationServerExtension expected =
+            new ExpectationServerExtension( "repos", ServerScope.PER_CLASS );
+
+    @Override
+    protected ExpectationServer getServer()
+    {
+        return this.expected.getServer();
+    }
+}
@@ -0,0 +1,92 @@
+/**
+ * Copyright (C) 2011-2024 Red Hat, Inc. (https://github.com/Commonjava/http-testserver)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.test.http.junit5;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
+import org.commonjava.test.http.expect.ExpectationServer;
+import org.commonjava.test.http.junit5.annotations.Expected;
+import org.commonjava.test.http.junit5.expect.ExpectationServerExtension;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+@ExtendWith( ExpectationServerExtension.class )
+public class TestHttpServerFlightRecorderTest
+{
+    @Expected( base = "repos" )
+    private ExpectationServer server;
+
+    @Test
+    public void requestIsRecorded()
+            throws Exception
+    {
+        final String path = server.formatPath( "/path/to/recorded.txt" );
+        final String url = server.formatUrl( "/path/to/recorded.txt" );
+        server.expect( url, 200, "recorded" );
+
+        final Path dump = Files.createTempFile( "http-testserver", ".jfr" );
+        try (Recording recording = new Recording())
+        {
+            recording.enable( "org.commonjava.test.http.Request" );
+            recording.start();
+
+            try (CloseableHttpClient client = HttpClients.createDefault();
+                 CloseableHttpResponse response = client.execute( new HttpGet( url ) ))
+            {
+                EntityUtils.consume( response.getEntity() );
+            }
+
+            // the event is committed when the exchange completes, before the outermost journal handler records it
+            for ( int i = 0; i < 50 && server.getRequestJournal().query().path( path ).last() == null; i++ )
+            {
+                Thread.sleep( 20 );
+            }
+
+            recording.stop();
+            recording.dump( dump );
+
+            final List<RecordedEvent> events = RecordingFile.readAllEvents( dump )
+                                                            .stream()
+                                                            .filter( e -> path.equals( e.getString( "path" ) ) )
+                                                            .collect( Collectors.toList() );
+            assertThat( events.size(), equalTo( 1 ) );
+
+            final RecordedEvent event = events.get( 0 );
+            assertThat( event.getString( "route" ), equalTo( "GET " + path ) );
+            assertThat( event.getString( "responseKind" ), equalTo( "expectation" ) );
+            assertThat( event.getInt( "status" ), equalTo( 200 ) );
+            assertThat( event.getLong( "bytesWritten" ), equalTo( (long) "recorded".length() ) );
+        }
+        finally
+        {
+            Files.deleteIfExists( dump );
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/**
+ * Copyright (C) 2011-2024 Red Hat, Inc. (https://github.com/Commonjava/http-testserver)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.test.http.junit5;
+
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
+import org.commonjava.test.http.common.OpenMetricsHandler;
+import org.commonjava.test.http.common.ServerOptions;
+import org.commonjava.test.http.expect.ExpectationServer;
+import org.commonjava.test.http.junit5.expect.ExpectationServerExtension;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.startsWith;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class TestHttpServerOpenMetricsTest
+        extends AbstractExtensionTest
+{
+    @RegisterExtension
+    private final ExpectationServerExtension expected = new ExpectationServerExtension( "repos" );
+
+    public TestHttpServerOpenMetricsTest()
+    {
+        expected.getServer()
+                .withOptions( ServerOptions.builder().metricsPath( OpenMetricsHandler.DEFAULT_PATH ).build() );
+    }
+
+    @Override
+    protected ExpectationServer getServer()
+    {
+        return this.expected.getServer();
+    }
+
+    @Test
+    public void metricsAreScraped()
+            throws Exception
+    {
+        final String url = getServer().formatUrl( "/path/to/scraped.txt" );
+        getServer().expect( url, 200, "scraped" );
+
+        final String metricsUrl = "http://127.0.0.1:" + getServer().getPort() + OpenMetricsHandler.DEFAULT_PATH;
+        try (CloseableHttpClient client = HttpClients.createDefault())
+        {
+            try (CloseableHttpResponse response = client.execute( new HttpGet( url ) ))
+            {
+                EntityUtils.consume( response.getEntity() );
+            }
+
+            // metrics are recorded when the exchange completes, which can be just after the client has the response
+            String page = "";
+            for ( int i = 0; i < 50 && !page.contains( "responses_total{code=\"200\"}" ); i++ )
+            {
+                try (CloseableHttpResponse response = client.execute( new HttpGet( metricsUrl ) ))
+                {
+                    assertThat( response.getStatusLine().getStatusCode(), equalTo( 200 ) );
+                    assertThat( response.getFirstHeader( "Content-Type" ).getValue(),
+                                startsWith( "application/openmetrics-text" ) );
+                    page = EntityUtils.toString( response.getEntity() );
+                }
+                Thread.sleep( 20 );
+            }
+
+            final String path = getServer().formatPath( "/path/to/scraped.txt" );
+            assertThat( page, containsString( "http_testserver_accesses_total{key=\"GET " + path + "\"} 1" ) );
+            assertThat( page, containsString( "http_testserver_responses_total{code=\"200\"} 1" ) );
+            assertThat( page, containsString( "http_testserver_service_seconds_count{route=\"GET " + path + "\"} 1" ) );
+            assertThat( page, containsString( "http_testserver_open_connections" ) );
+            assertThat( page, containsString( "# EOF" ) );
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/**
+ * Copyright (C) 2011-2024 Red Hat, Inc. (https://github.com/Commonjava/http-testserver)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.test.http.junit5;
+
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
+import org.commonjava.test.http.expect.ExpectationServer;
+import org.commonjava.test.http.expect.ExpectationServerPool;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class TestHttpServerPoolTest
+{
+    @Test
+    public void borrowedServersAreRebasedAndReset()
+            throws Exception
+    {
+        try (ExpectationServerPool pool = new ExpectationServerPool( 2 );
+             CloseableHttpClient client = HttpClients.createDefault())
+        {
+            for ( String base : new String[] { "repos", "other" } )
+            {
+                final ExpectationServer template = new ExpectationServer( base );
+                final ExpectationServer server = pool.start( template );
+                assertThat( server, not( sameInstance( template ) ) );
+                assertThat( server.formatPath( "/file.txt" ), equalTo( "/" + base + "/file.txt" ) );
+                assertThat( server.getAccessesByPathKey().isEmpty(), equalTo( true ) );
+
+                final String url = server.formatUrl( "/file.txt" );
+                server.expect( url, 200, base );
+                try (CloseableHttpResponse response = client.execute( new HttpGet( url ) ))
+                {
+                    assertThat( EntityUtils.toString( response.getEntity() ), equalTo( base ) );
+                }
+
+                server.stop();
+            }
+        }
+    }
+
+    @Test
+    public void stoppingTwiceKeepsThePooledServerAlive()
+            throws Exception
+    {
+        try (ExpectationServerPool pool = new ExpectationServerPool( 1 );
+             CloseableHttpClient client = HttpClients.createDefault())
+        {
+            final ExpectationServer first = pool.start( new ExpectationServer( "repos" ) );
+            first.stop();
+            // e.g. the test's own teardown, then the fixture's
+            first.stop();
+
+            final ExpectationServer second = pool.start( new ExpectationServer( "repos" ) );
+            try
+            {
+                final String url = second.formatUrl( "/file.txt" );
+                second.expect( url, 200, "alive" );
+                try (CloseableHttpResponse response = client.execute( new HttpGet( url ) ))
+                {
+                    assertThat( EntityUtils.toString( response.getEntity() ), equalTo( "alive" ) );
+                }
+            }
+            finally
+            {
+                second.stop();
+            }
+        }
+    }
+
+    @Test
+    public void configuredServersAreStartedThemselves()
+    {
+        try (ExpectationServerPool pool = new ExpectationServerPool( 1 ))
+        {
+            final ExpectationServer template =
+                    new ExpectationServer( "repos" ).withEngine( ExpectationServer.Engine.NATIVE );
+            final ExpectationServer server = pool.start( template );
+            try
+            {
+                assertThat( server, sameInstance( template ) );
+            }
+            finally
+            {
+                server.stop();
+            }
+        }
+    }
+}
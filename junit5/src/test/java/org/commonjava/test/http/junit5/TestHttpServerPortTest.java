@@ -0,0 +1,63 @@
+/**
+ * Copyright (C) 2011-2024 Red Hat, Inc. (https://github.com/Commonjava/http-testserver)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.test.http.junit5;
+
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
+import org.commonjava.test.http.expect.ExpectationServer;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.net.ServerSocket;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+
+public class TestHttpServerPortTest
+{
+    @Test
+    public void occupiedPortFallsBackToAnOsAssignedOne()
+            throws Exception
+    {
+        try (ServerSocket occupied = new ServerSocket( 0, 50, InetAddress.getByName( "127.0.0.1" ) );
+             CloseableHttpClient client = HttpClients.createDefault())
+        {
+            final int taken = occupied.getLocalPort();
+            final ExpectationServer server = new ExpectationServer( "repos", taken ).start();
+            try
+            {
+                assertThat( server.getPort(), not( equalTo( taken ) ) );
+                assertThat( server.getPort(), greaterThan( 0 ) );
+
+                final String url = server.formatUrl( "/file.txt" );
+                server.expect( url, 200, "moved" );
+                try (CloseableHttpResponse response = client.execute( new HttpGet( url ) ))
+                {
+                    assertThat( EntityUtils.toString( response.getEntity() ), equalTo( "moved" ) );
+                }
+            }
+            finally
+            {
+                server.stop();
+            }
+        }
+    }
+}
@@ -0,0 +1,38 @@
+/**
+ * Copyright (C) 2011-2024 Red Hat, Inc. (https://github.com/Commonjava/http-testserver)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.test.http.junit5;
+
+import org.commonjava.test.http.expect.ExpectationServer;
+import org.commonjava.test.http.junit5.annotations.Expected;
+import org.commonjava.test.http.junit5.expect.ExpectationServerExtension;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.parallel.Execution;
+import org.junit.jupiter.api.parallel.ExecutionMode;
+
+@ExtendWith( ExpectationServerExtension.class )
+@Execution( ExecutionMode.CONCURRENT )
+public class TestHttpServerSessionsTest
+        extends AbstractExtensionTest
+{
+    @Expected( base = "repos", scope = ServerScope.PER_CLASS, sessions = true )
+    private ExpectationServer server;
+
+    @Override
+    protected ExpectationServer getServer()
+    {
+        return this.server;
+    }
+}
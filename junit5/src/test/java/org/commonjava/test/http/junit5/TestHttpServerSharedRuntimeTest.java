@@ -0,0 +1,94 @@
+/**
+ * Copyright (C) 2011-2024 Red Hat, Inc. (https://github.com/Commonjava/http-testserver)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.test.http.junit5;
+
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
+import org.commonjava.test.http.common.ServerOptions;
+import org.commonjava.test.http.common.SharedRuntime;
+import org.commonjava.test.http.expect.ExpectationServer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.parallel.Isolated;
+import org.xnio.XnioWorker;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+// counts the JVM-wide leases, so nothing else may run alongside it
+@Isolated
+public class TestHttpServerSharedRuntimeTest
+{
+    @Test
+    public void workerOutlivesAllButTheLastServer()
+            throws Exception
+    {
+        assertThat( SharedRuntime.leases(), equalTo( 0 ) );
+
+        final ServerOptions options = ServerOptions.builder().sharedRuntime( true ).ioThreads( 2 ).build();
+        final ExpectationServer first = new ExpectationServer( "repos" ).withOptions( options ).start();
+        final ExpectationServer second = new ExpectationServer( "repos" ).withOptions( options ).start();
+        XnioWorker worker = null;
+        try (CloseableHttpClient client = HttpClients.createDefault())
+        {
+            try
+            {
+                assertThat( SharedRuntime.leases(), equalTo( 2 ) );
+
+                // a later lease gets the running worker, built from the first lease's options
+                final SharedRuntime.Lease other =
+                        SharedRuntime.acquire( ServerOptions.builder().sharedRuntime( true ).ioThreads( 1 ).build() );
+                worker = other.worker();
+                assertThat( worker.getIoThreadCount(), equalTo( 2 ) );
+
+                // closing it twice must not take a lease away from a running server
+                other.close();
+                other.close();
+                assertThat( SharedRuntime.leases(), equalTo( 2 ) );
+            }
+            finally
+            {
+                first.stop();
+            }
+
+            assertThat( worker.isShutdown(), equalTo( false ) );
+
+            final String url = second.formatUrl( "/file.txt" );
+            second.expect( url, 200, "still serving" );
+            try (CloseableHttpResponse response = client.execute( new HttpGet( url ) ))
+            {
+                assertThat( EntityUtils.toString( response.getEntity() ), equalTo( "still serving" ) );
+            }
+        }
+        finally
+        {
+            second.stop();
+        }
+
+        assertThat( SharedRuntime.leases(), equalTo( 0 ) );
+        assertThat( worker.isShutdown(), equalTo( true ) );
+
+        // the next lease starts a new worker
+        try (SharedRuntime.Lease next = SharedRuntime.acquire( options ))
+        {
+            assertThat( next.worker(), not( sameInstance( worker ) ) );
+        }
+    }
+}
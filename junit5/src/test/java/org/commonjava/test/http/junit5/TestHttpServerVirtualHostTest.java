@@ -0,0 +1,80 @@
+/**
+ * Copyright (C) 2011-2024 Red Hat, Inc. (https://github.com/Commonjava/http-testserver)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.test.http.junit5;
+
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
+import org.commonjava.test.http.expect.ExpectationServer;
+import org.commonjava.test.http.junit5.annotations.Expected;
+import org.commonjava.test.http.junit5.expect.ExpectationServerExtension;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+@ExtendWith( ExpectationServerExtension.class )
+public class TestHttpServerVirtualHostTest
+{
+    @Expected( base = "repos" )
+    private ExpectationServer server;
+
+    @Test
+    public void virtualHostsAnswerIndependently()
+            throws Exception
+    {
+        final String subPath = "/path/to/something.txt";
+        final ExpectationServer central = server.openVirtualHost( "central.localhost" );
+        final ExpectationServer mirror = server.openVirtualHost( "mirror.localhost" );
+
+        central.expect( central.formatUrl( subPath ), 200, "from central" );
+        mirror.expect( mirror.formatUrl( subPath ), 200, "from mirror" );
+
+        // connect to the shared listener directly, so the test doesn't depend on how *.localhost resolves
+        final String url = "http://127.0.0.1:" + server.getPort() + server.formatPath( subPath );
+        try (CloseableHttpClient client = HttpClients.createDefault())
+        {
+            assertThat( get( client, url, "central.localhost:" + server.getPort() ), equalTo( "from central" ) );
+            assertThat( get( client, url, "mirror.localhost" ), equalTo( "from mirror" ) );
+
+            mirror.stop();
+            final HttpGet request = new HttpGet( url );
+            request.setHeader( "Host", "mirror.localhost" );
+            try (CloseableHttpResponse response = client.execute( request ))
+            {
+                EntityUtils.consume( response.getEntity() );
+                assertThat( response.getStatusLine().getStatusCode(), equalTo( 404 ) );
+            }
+        }
+
+        assertThat( central.getAccessesByPathKey().size(), equalTo( 1 ) );
+    }
+
+    private String get( final CloseableHttpClient client, final String url, final String host )
+            throws Exception
+    {
+        final HttpGet request = new HttpGet( url );
+        request.setHeader( "Host", host );
+        try (CloseableHttpResponse response = client.execute( request ))
+        {
+            assertThat( response.getStatusLine().getStatusCode(), equalTo( 200 ) );
+            return EntityUtils.toString( response.getEntity() );
+        }
+    }
+}
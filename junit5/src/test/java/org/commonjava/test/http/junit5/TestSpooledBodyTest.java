@@ -0,0 +1,56 @@
+/**
+ * Copyright (C) 2011-2024 Red Hat, Inc. (https://github.com/Commonjava/http-testserver)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.test.http.junit5;
+
+import org.commonjava.test.http.expect.SpooledBody;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class TestSpooledBodyTest
+{
+    @Test
+    public void onlySpilledBodiesAreMapped()
+            throws Exception
+    {
+        final byte[] content = new byte[1000];
+        for ( int i = 0; i < content.length; i++ )
+        {
+            content[i] = (byte) i;
+        }
+
+        final SpooledBody heap = SpooledBody.capture( new ByteArrayInputStream( content ), null, 4096 );
+        assertThat( heap.isMapped(), equalTo( false ) );
+        assertThat( written( heap ), equalTo( content ) );
+
+        final SpooledBody spilled = SpooledBody.capture( new ByteArrayInputStream( content ), null, 100 );
+        assertThat( spilled.isMapped(), equalTo( true ) );
+        assertThat( spilled.length(), equalTo( (long) content.length ) );
+        assertThat( written( spilled ), equalTo( content ) );
+    }
+
+    private static byte[] written( final SpooledBody body )
+            throws Exception
+    {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        body.writeTo( out );
+        return out.toByteArray();
+    }
+}
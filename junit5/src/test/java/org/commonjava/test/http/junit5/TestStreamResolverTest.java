@@ -0,0 +1,167 @@
+/**
+ * Copyright (C) 2011-2024 Red Hat, Inc. (https://github.com/Commonjava/http-testserver)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.test.http.junit5;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
+import org.commonjava.test.http.stream.FileResource;
+import org.commonjava.test.http.stream.PathResolver;
+import org.commonjava.test.http.stream.ResourceResolver;
+import org.commonjava.test.http.stream.StreamResolver;
+import org.commonjava.test.http.stream.StreamResource;
+import org.commonjava.test.http.stream.StreamServer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class TestStreamResolverTest
+{
+    @TempDir
+    Path dir;
+
+    @Test
+    public void plainResolverIsAdapted()
+            throws Exception
+    {
+        final StreamResolver plain = path -> "hello.txt".equals( path )
+                ? new ByteArrayInputStream( "hello".getBytes( StandardCharsets.UTF_8 ) )
+                : null;
+        final ResourceResolver adapted = ResourceResolver.adapt( plain );
+
+        try (StreamResource resource = adapted.resolve( "hello.txt" ))
+        {
+            assertThat( resource.exists(), equalTo( true ) );
+            // nothing is known about a resource that only has a stream
+            assertThat( resource.length(), equalTo( StreamResource.UNKNOWN ) );
+            assertThat( resource.lastModified(), equalTo( StreamResource.UNKNOWN ) );
+            assertThat( resource.version(), nullValue() );
+            assertThat( resource.contentType(), nullValue() );
+            assertThat( resource.buffer(), nullValue() );
+
+            try (InputStream in = resource.openStream())
+            {
+                assertThat( IOUtils.toString( in, StandardCharsets.UTF_8 ), equalTo( "hello" ) );
+            }
+            // the stream opened while resolving is handed out once
+            assertThrows( IllegalStateException.class, resource::openStream );
+        }
+
+        assertThat( adapted.resolve( "missing.txt" ).exists(), equalTo( false ) );
+        assertThat( adapted.get( "missing.txt" ), nullValue() );
+
+        final StreamServer server = new StreamServer( plain ).start();
+        try (CloseableHttpClient client = HttpClients.createDefault())
+        {
+            try (CloseableHttpResponse response = client.execute( new HttpGet( server.formatUrl( "hello.txt" ) ) ))
+            {
+                assertThat( response.getStatusLine().getStatusCode(), equalTo( 200 ) );
+                assertThat( response.getFirstHeader( "ETag" ), nullValue() );
+                assertThat( EntityUtils.toString( response.getEntity() ), equalTo( "hello" ) );
+            }
+            try (CloseableHttpResponse response = client.execute( new HttpGet( server.formatUrl( "missing.txt" ) ) ))
+            {
+                assertThat( response.getStatusLine().getStatusCode(), equalTo( 404 ) );
+            }
+        }
+        finally
+        {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void pathResolverYieldsFileResources()
+            throws Exception
+    {
+        final byte[] content = "file content".getBytes( StandardCharsets.UTF_8 );
+        Files.write( dir.resolve( "file.txt" ), content );
+
+        final PathResolver files = new PathResolver()
+        {
+            @Override
+            public Path getFile( final String path )
+            {
+                final Path file = dir.resolve( path );
+                return Files.exists( file ) ? file : null;
+            }
+
+            @Override
+            public InputStream get( final String path )
+                    throws IOException
+            {
+                final Path file = getFile( path );
+                return file == null ? null : Files.newInputStream( file );
+            }
+        };
+        final ResourceResolver adapted = ResourceResolver.adapt( files );
+
+        try (StreamResource resource = adapted.resolve( "file.txt" ))
+        {
+            assertThat( resource, instanceOf( FileResource.class ) );
+            assertThat( resource.length(), equalTo( (long) content.length ) );
+            assertThat( resource.lastModified(), equalTo( Files.getLastModifiedTime( dir.resolve( "file.txt" ) )
+                                                               .toMillis() ) );
+            try (FileChannel channel = resource.openFileChannel())
+            {
+                assertThat( channel, notNullValue() );
+                assertThat( channel.size(), equalTo( (long) content.length ) );
+            }
+        }
+        assertThat( adapted.resolve( "missing.txt" ).exists(), equalTo( false ) );
+
+        final StreamServer server = new StreamServer( files ).start();
+        try (CloseableHttpClient client = HttpClients.createDefault();
+             CloseableHttpResponse response = client.execute( new HttpGet( server.formatUrl( "file.txt" ) ) ))
+        {
+            assertThat( response.getStatusLine().getStatusCode(), equalTo( 200 ) );
+            assertThat( response.getFirstHeader( "ETag" ), notNullValue() );
+            assertThat( response.getFirstHeader( "Content-Length" ).getValue(),
+                        equalTo( Integer.toString( content.length ) ) );
+            assertThat( EntityUtils.toByteArray( response.getEntity() ), equalTo( content ) );
+        }
+        finally
+        {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void missingResourceHasNoStream()
+            throws Exception
+    {
+        final ResourceResolver nothing = path -> StreamResource.missing();
+        assertThat( nothing.resolve( "any.txt" ).exists(), equalTo( false ) );
+        assertThat( nothing.get( "any.txt" ), nullValue() );
+    }
+}
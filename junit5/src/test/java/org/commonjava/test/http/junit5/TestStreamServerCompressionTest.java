@@ -0,0 +1,169 @@
+/**
+ * Copyright (C) 2011-2024 Red Hat, Inc. (https://github.com/Commonjava/http-testserver)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.test.http.junit5;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.commonjava.test.http.stream.Compression;
+import org.commonjava.test.http.stream.StreamServer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class TestStreamServerCompressionTest
+{
+    @TempDir
+    Path dir;
+
+    @Test
+    public void negotiatesGzip()
+            throws Exception
+    {
+        final StringBuilder text = new StringBuilder();
+        for ( int i = 0; i < 1000; i++ )
+        {
+            text.append( "line " ).append( i ).append( '\n' );
+        }
+        Files.write( dir.resolve( "plain.txt" ), text.toString().getBytes( StandardCharsets.UTF_8 ) );
+        Files.write( dir.resolve( "small.txt" ), "tiny".getBytes( StandardCharsets.UTF_8 ) );
+
+        Files.write( dir.resolve( "sibling.txt" ), text.toString().getBytes( StandardCharsets.UTF_8 ) );
+        try (OutputStream out = new GZIPOutputStream( Files.newOutputStream( dir.resolve( "sibling.txt.gz" ) ) ))
+        {
+            out.write( "precompressed".getBytes( StandardCharsets.UTF_8 ) );
+        }
+
+        final StreamServer server =
+                new StreamServer( dir.toString() ).withCompression( Compression.gzip().withMinimumSize( 256 ) ).start();
+        try (CloseableHttpClient client = HttpClients.custom().disableContentCompression().build())
+        {
+            assertThat( gunzip( client, server.formatUrl( "plain.txt" ) ), equalTo( text.toString() ) );
+            assertThat( server.getCompressionCacheHits(), equalTo( 0L ) );
+            // the second request is served from the variant cache
+            assertThat( gunzip( client, server.formatUrl( "plain.txt" ) ), equalTo( text.toString() ) );
+            assertThat( server.getCompressionCacheHits(), equalTo( 1L ) );
+            assertThat( gunzip( client, server.formatUrl( "sibling.txt" ) ), equalTo( "precompressed" ) );
+
+            final HttpGet small = new HttpGet( server.formatUrl( "small.txt" ) );
+            small.setHeader( "Accept-Encoding", "gzip" );
+            try (CloseableHttpResponse response = client.execute( small ))
+            {
+                assertThat( response.getFirstHeader( "Content-Encoding" ), nullValue() );
+                assertThat( IOUtils.toString( response.getEntity().getContent(), StandardCharsets.UTF_8 ),
+                            equalTo( "tiny" ) );
+            }
+        }
+        finally
+        {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void streamsBodiesTooLargeToCache()
+            throws Exception
+    {
+        final StringBuilder text = new StringBuilder();
+        for ( int i = 0; i < 20000; i++ )
+        {
+            text.append( "line " ).append( i ).append( '\n' );
+        }
+        Files.write( dir.resolve( "large.txt" ), text.toString().getBytes( StandardCharsets.UTF_8 ) );
+
+        // variants up to a quarter of the cache are kept, so this one is gzipped as it is sent, every time
+        final StreamServer server =
+                new StreamServer( dir.toString() ).withCompression( Compression.gzip().withCacheSize( 4096 ) ).start();
+        try (CloseableHttpClient client = HttpClients.custom().disableContentCompression().build())
+        {
+            for ( int i = 0; i < 2; i++ )
+            {
+                final HttpGet request = new HttpGet( server.formatUrl( "large.txt" ) );
+                request.setHeader( "Accept-Encoding", "gzip" );
+                try (CloseableHttpResponse response = client.execute( request ))
+                {
+                    assertThat( response.getFirstHeader( "Content-Encoding" ).getValue(), equalTo( "gzip" ) );
+                    assertThat( response.getFirstHeader( "Content-Length" ), nullValue() );
+                    assertThat( IOUtils.toString( new GZIPInputStream( response.getEntity().getContent() ),
+                                                  StandardCharsets.UTF_8 ), equalTo( text.toString() ) );
+                }
+            }
+            assertThat( server.getCompressionCacheHits(), equalTo( 0L ) );
+        }
+        finally
+        {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void prefersBrotliSibling()
+            throws Exception
+    {
+        final byte[] brotli = { 0x0b, 0x02, (byte) 0x80, 'b', 'r', 0x03 };
+        Files.write( dir.resolve( "file.txt" ), new byte[4096] );
+        Files.write( dir.resolve( "file.txt.br" ), brotli );
+        try (OutputStream out = new GZIPOutputStream( Files.newOutputStream( dir.resolve( "file.txt.gz" ) ) ))
+        {
+            out.write( "gzipped".getBytes( StandardCharsets.UTF_8 ) );
+        }
+
+        final StreamServer server = new StreamServer( dir.toString() ).withCompression( Compression.gzip() ).start();
+        try (CloseableHttpClient client = HttpClients.custom().disableContentCompression().build())
+        {
+            final HttpGet request = new HttpGet( server.formatUrl( "file.txt" ) );
+            request.setHeader( "Accept-Encoding", "gzip, br" );
+            try (CloseableHttpResponse response = client.execute( request ))
+            {
+                assertThat( response.getStatusLine().getStatusCode(), equalTo( 200 ) );
+                assertThat( response.getFirstHeader( "Content-Encoding" ).getValue(), equalTo( "br" ) );
+                assertThat( IOUtils.toByteArray( response.getEntity().getContent() ), equalTo( brotli ) );
+            }
+
+            // a client that prefers gzip gets the .gz sibling instead
+            assertThat( gunzip( client, server.formatUrl( "file.txt" ) ), equalTo( "gzipped" ) );
+        }
+        finally
+        {
+            server.stop();
+        }
+    }
+
+    private String gunzip( final CloseableHttpClient client, final String url )
+            throws Exception
+    {
+        final HttpGet request = new HttpGet( url );
+        request.setHeader( "Accept-Encoding", "br;q=0.5, gzip" );
+        try (CloseableHttpResponse response = client.execute( request ))
+        {
+            assertThat( response.getStatusLine().getStatusCode(), equalTo( 200 ) );
+            assertThat( response.getFirstHeader( "Content-Encoding" ).getValue(), equalTo( "gzip" ) );
+            return IOUtils.toString( new GZIPInputStream( response.getEntity().getContent() ), StandardCharsets.UTF_8 );
+        }
+    }
+}
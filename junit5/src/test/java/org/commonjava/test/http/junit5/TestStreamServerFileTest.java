@@ -0,0 +1,65 @@
+/**
+ * Copyright (C) 2011-2024 Red Hat, Inc. (https://github.com/Commonjava/http-testserver)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.test.http.junit5;
+
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
+import org.commonjava.test.http.common.ServerOptions;
+import org.commonjava.test.http.stream.FileResolver;
+import org.commonjava.test.http.stream.StreamServer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class TestStreamServerFileTest
+{
+    @TempDir
+    Path dir;
+
+    @Test
+    public void downloadSpanningManyBuffers()
+            throws Exception
+    {
+        // not a multiple of the buffer size, so the last transfer is a partial one
+        final byte[] content = new byte[3 * 1024 * 1024 + 17];
+        new Random( 42 ).nextBytes( content );
+        Files.write( dir.resolve( "file.bin" ), content );
+
+        final StreamServer server = new StreamServer( new FileResolver( dir.toString() ) ).withOptions(
+                ServerOptions.builder().bufferSize( 4096 ).build() ).start();
+        try (CloseableHttpClient client = HttpClients.createDefault();
+             CloseableHttpResponse response = client.execute( new HttpGet( server.formatUrl( "file.bin" ) ) ))
+        {
+            assertThat( response.getStatusLine().getStatusCode(), equalTo( 200 ) );
+            assertThat( response.getFirstHeader( "Content-Length" ).getValue(),
+                        equalTo( Integer.toString( content.length ) ) );
+            assertThat( EntityUtils.toByteArray( response.getEntity() ), equalTo( content ) );
+        }
+        finally
+        {
+            server.stop();
+        }
+    }
+}
@@ -0,0 +1,227 @@
+/**
+ * Copyright (C) 2011-2024 Red Hat, Inc. (https://github.com/Commonjava/http-testserver)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.test.http.junit5;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.commonjava.test.http.stream.JarFileResolver;
+import org.commonjava.test.http.stream.StreamServer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+
+public class TestStreamServerJarTest
+{
+    @TempDir
+    Path dir;
+
+    @Test
+    public void servesStoredAndDeflatedEntries()
+            throws Exception
+    {
+        final byte[] stored = random( 16 * 1024 );
+        final byte[] deflated = text( 2000 );
+        final Path jar = dir.resolve( "test.jar" );
+        try (OutputStream out = Files.newOutputStream( jar ))
+        {
+            writeJar( out, stored, deflated );
+        }
+
+        final JarFileResolver resolver = new JarFileResolver( jar.toString(), 1024 * 1024, false );
+        final StreamServer server = new StreamServer( resolver ).start();
+        try (CloseableHttpClient client = HttpClients.createDefault())
+        {
+            assertThat( download( client, server.formatUrl( "stored.bin" ) ), equalTo( stored ) );
+            assertThat( download( client, server.formatUrl( "deflated.txt" ) ), equalTo( deflated ) );
+            // the second read of the deflated entry is served from the cache
+            assertThat( download( client, server.formatUrl( "deflated.txt" ) ), equalTo( deflated ) );
+        }
+        finally
+        {
+            server.stop();
+        }
+
+        final JarFileResolver.Stats stats = resolver.getStats();
+        assertThat( stats.entries(), equalTo( 2 ) );
+        assertThat( stats.mappedBytes(), equalTo( Files.size( jar ) ) );
+        assertThat( stats.mappedReads(), greaterThanOrEqualTo( 1L ) );
+        assertThat( stats.cacheMisses(), greaterThanOrEqualTo( 1L ) );
+        assertThat( stats.cacheHits(), greaterThanOrEqualTo( 1L ) );
+        assertThat( stats.cachedEntries(), equalTo( 1 ) );
+        assertThat( stats.cachedBytes(), equalTo( (long) deflated.length ) );
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedEntries()
+            throws Exception
+    {
+        final Path jar = dir.resolve( "entries.jar" );
+        try (JarOutputStream out = new JarOutputStream( Files.newOutputStream( jar ) ))
+        {
+            for ( int i = 0; i < 5; i++ )
+            {
+                out.putNextEntry( new JarEntry( "entry" + i + ".txt" ) );
+                out.write( entry( i ) );
+                out.closeEntry();
+            }
+        }
+
+        // each entry is 100 bytes, so four of them fill the cache
+        final JarFileResolver resolver = new JarFileResolver( jar.toString(), 400, false );
+        for ( int i = 0; i < 5; i++ )
+        {
+            assertThat( read( resolver, "entry" + i + ".txt" ), equalTo( entry( i ) ) );
+        }
+
+        JarFileResolver.Stats stats = resolver.getStats();
+        assertThat( stats.cacheMisses(), equalTo( 5L ) );
+        assertThat( stats.cacheEvictions(), equalTo( 1L ) );
+        assertThat( stats.cachedEntries(), equalTo( 4 ) );
+        assertThat( stats.cachedBytes(), equalTo( 400L ) );
+
+        assertThat( read( resolver, "entry4.txt" ), equalTo( entry( 4 ) ) );
+        // entry0 was evicted, so reading it misses again and pushes out entry1
+        assertThat( read( resolver, "entry0.txt" ), equalTo( entry( 0 ) ) );
+
+        stats = resolver.getStats();
+        assertThat( stats.cacheHits(), equalTo( 1L ) );
+        assertThat( stats.cacheMisses(), equalTo( 6L ) );
+        assertThat( stats.cacheEvictions(), equalTo( 2L ) );
+        assertThat( stats.cacheHitRate(), greaterThan( 0.0 ) );
+
+        resolver.clearCache();
+        assertThat( resolver.getStats().cachedEntries(), equalTo( 0 ) );
+    }
+
+    @Test
+    public void fallsBackToJarFileForPrefixedArchive()
+            throws Exception
+    {
+        final byte[] stored = random( 4096 );
+        final byte[] deflated = text( 500 );
+        final Path jar = dir.resolve( "prefixed.jar" );
+        try (OutputStream out = Files.newOutputStream( jar ))
+        {
+            // a launcher script in front of the archive shifts every offset in the central directory
+            out.write( "#!/bin/sh\nexec java -jar \"$0\" \"$@\"\n".getBytes( StandardCharsets.UTF_8 ) );
+            writeJar( out, stored, deflated );
+        }
+
+        final JarFileResolver resolver = new JarFileResolver( jar.toString(), 1024 * 1024, false );
+        final StreamServer server = new StreamServer( resolver ).start();
+        try (CloseableHttpClient client = HttpClients.createDefault())
+        {
+            assertThat( download( client, server.formatUrl( "stored.bin" ) ), equalTo( stored ) );
+            assertThat( download( client, server.formatUrl( "deflated.txt" ) ), equalTo( deflated ) );
+        }
+        finally
+        {
+            server.stop();
+        }
+
+        final JarFileResolver.Stats stats = resolver.getStats();
+        assertThat( stats.entries(), equalTo( 2 ) );
+        assertThat( stats.mappedBytes(), equalTo( 0L ) );
+        assertThat( stats.mappedReads(), equalTo( 0L ) );
+    }
+
+    private static void writeJar( final OutputStream target, final byte[] stored, final byte[] deflated )
+            throws Exception
+    {
+        final JarOutputStream out = new JarOutputStream( target );
+
+        final CRC32 crc = new CRC32();
+        crc.update( stored );
+        final JarEntry storedEntry = new JarEntry( "stored.bin" );
+        storedEntry.setMethod( ZipEntry.STORED );
+        storedEntry.setSize( stored.length );
+        storedEntry.setCompressedSize( stored.length );
+        storedEntry.setCrc( crc.getValue() );
+        out.putNextEntry( storedEntry );
+        out.write( stored );
+        out.closeEntry();
+
+        final JarEntry deflatedEntry = new JarEntry( "deflated.txt" );
+        deflatedEntry.setMethod( ZipEntry.DEFLATED );
+        out.putNextEntry( deflatedEntry );
+        out.write( deflated );
+        out.closeEntry();
+
+        out.finish();
+    }
+
+    private static byte[] download( final CloseableHttpClient client, final String url )
+            throws Exception
+    {
+        try (CloseableHttpResponse response = client.execute( new HttpGet( url ) ))
+        {
+            assertThat( response.getStatusLine().getStatusCode(), equalTo( 200 ) );
+            return IOUtils.toByteArray( response.getEntity().getContent() );
+        }
+    }
+
+    private static byte[] read( final JarFileResolver resolver, final String path )
+            throws Exception
+    {
+        final ByteBuffer buffer = resolver.resolve( path ).buffer();
+        final byte[] data = new byte[buffer.remaining()];
+        buffer.get( data );
+        return data;
+    }
+
+    private static byte[] random( final int size )
+    {
+        final byte[] data = new byte[size];
+        new Random( size ).nextBytes( data );
+        return data;
+    }
+
+    private static byte[] text( final int lines )
+    {
+        final StringBuilder text = new StringBuilder();
+        for ( int i = 0; i < lines; i++ )
+        {
+            text.append( "line " ).append( i ).append( '\n' );
+        }
+        return text.toString().getBytes( StandardCharsets.UTF_8 );
+    }
+
+    private static byte[] entry( final int i )
+    {
+        final byte[] data = new byte[100];
+        Arrays.fill( data, (byte) ( 'a' + i ) );
+        return data;
+    }
+}
@@ -0,0 +1,226 @@
+/**
+ * Copyright (C) 2011-2024 Red Hat, Inc. (https://github.com/Commonjava/http-testserver)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.test.http.junit5;
+
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpHead;
+import org.apache.http.client.utils.DateUtils;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
+import org.commonjava.test.http.common.Bandwidth;
+import org.commonjava.test.http.stream.StreamServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Date;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.endsWith;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.everyItem;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.startsWith;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class TestStreamServerRangeTest
+{
+    @TempDir
+    Path dir;
+
+    private static final long MODIFIED = 1600000000000L;
+
+    private StreamServer server;
+
+    private CloseableHttpClient client;
+
+    private String url;
+
+    @BeforeEach
+    public void start()
+            throws Exception
+    {
+        final Path file = dir.resolve( "file.txt" );
+        Files.write( file, "0123456789".getBytes( StandardCharsets.UTF_8 ) );
+        Files.setLastModifiedTime( file, FileTime.fromMillis( MODIFIED ) );
+
+        server = new StreamServer( dir.toString() ).start();
+        client = HttpClients.createDefault();
+        url = server.formatUrl( "file.txt" );
+    }
+
+    @AfterEach
+    public void stop()
+            throws Exception
+    {
+        client.close();
+        server.stop();
+    }
+
+    @Test
+    public void rangesAndRevalidation()
+            throws Exception
+    {
+        final String etag;
+        try (CloseableHttpResponse response = client.execute( new HttpHead( url ) ))
+        {
+            assertThat( response.getStatusLine().getStatusCode(), equalTo( 200 ) );
+            assertThat( response.getFirstHeader( "Content-Length" ).getValue(), equalTo( "10" ) );
+            assertThat( response.getFirstHeader( "Last-Modified" ), notNullValue() );
+            etag = response.getFirstHeader( "ETag" ).getValue();
+        }
+
+        final HttpGet range = new HttpGet( url );
+        range.setHeader( "Range", "bytes=2-5" );
+        try (CloseableHttpResponse response = client.execute( range ))
+        {
+            assertThat( response.getStatusLine().getStatusCode(), equalTo( 206 ) );
+            assertThat( response.getFirstHeader( "Content-Range" ).getValue(), equalTo( "bytes 2-5/10" ) );
+            assertThat( EntityUtils.toString( response.getEntity() ), equalTo( "2345" ) );
+        }
+
+        final HttpGet suffix = new HttpGet( url );
+        suffix.setHeader( "Range", "bytes=-3" );
+        try (CloseableHttpResponse response = client.execute( suffix ))
+        {
+            assertThat( EntityUtils.toString( response.getEntity() ), equalTo( "789" ) );
+        }
+
+        final HttpGet revalidate = new HttpGet( url );
+        revalidate.setHeader( "If-None-Match", etag );
+        try (CloseableHttpResponse response = client.execute( revalidate ))
+        {
+            assertThat( response.getStatusLine().getStatusCode(), equalTo( 304 ) );
+        }
+
+        final HttpGet unsatisfiable = new HttpGet( url );
+        unsatisfiable.setHeader( "Range", "bytes=20-" );
+        try (CloseableHttpResponse response = client.execute( unsatisfiable ))
+        {
+            EntityUtils.consume( response.getEntity() );
+            assertThat( response.getStatusLine().getStatusCode(), equalTo( 416 ) );
+        }
+
+        // measured per method, not per file
+        assertThat( server.getMetrics().keySet(), everyItem( endsWith( " /**" ) ) );
+    }
+
+    @Test
+    public void multipleRangesAreMultipart()
+            throws Exception
+    {
+        final HttpGet ranges = new HttpGet( url );
+        ranges.setHeader( "Range", "bytes=0-1,5-6" );
+        try (CloseableHttpResponse response = client.execute( ranges ))
+        {
+            assertThat( response.getStatusLine().getStatusCode(), equalTo( 206 ) );
+
+            final String contentType = response.getFirstHeader( "Content-Type" ).getValue();
+            assertThat( contentType, startsWith( "multipart/byteranges; boundary=" ) );
+            final String boundary = contentType.substring( contentType.indexOf( '=' ) + 1 );
+
+            final byte[] body = EntityUtils.toByteArray( response.getEntity() );
+            assertThat( response.getFirstHeader( "Content-Length" ).getValue(),
+                        equalTo( Integer.toString( body.length ) ) );
+
+            final String text = new String( body, StandardCharsets.ISO_8859_1 );
+            assertThat( text, startsWith( "--" + boundary + "\r\n" ) );
+            assertThat( text, containsString( "Content-Range: bytes 0-1/10\r\n\r\n01\r\n--" + boundary + "\r\n" ) );
+            assertThat( text, containsString( "Content-Range: bytes 5-6/10\r\n\r\n56\r\n--" + boundary + "--\r\n" ) );
+            assertThat( text, endsWith( "--" + boundary + "--\r\n" ) );
+        }
+    }
+
+    @Test
+    public void ifModifiedSince()
+            throws Exception
+    {
+        final HttpGet current = new HttpGet( url );
+        current.setHeader( "If-Modified-Since", DateUtils.formatDate( new Date( MODIFIED ) ) );
+        try (CloseableHttpResponse response = client.execute( current ))
+        {
+            assertThat( response.getStatusLine().getStatusCode(), equalTo( 304 ) );
+        }
+
+        final HttpGet stale = new HttpGet( url );
+        stale.setHeader( "If-Modified-Since", DateUtils.formatDate( new Date( MODIFIED - 86400000L ) ) );
+        try (CloseableHttpResponse response = client.execute( stale ))
+        {
+            assertThat( response.getStatusLine().getStatusCode(), equalTo( 200 ) );
+            assertThat( EntityUtils.toString( response.getEntity() ), equalTo( "0123456789" ) );
+        }
+    }
+
+    @Test
+    public void ifRange()
+            throws Exception
+    {
+        final String etag;
+        try (CloseableHttpResponse response = client.execute( new HttpHead( url ) ))
+        {
+            etag = response.getFirstHeader( "ETag" ).getValue();
+        }
+
+        assertRange( etag, 206, "2345" );
+        assertRange( DateUtils.formatDate( new Date( MODIFIED ) ), 206, "2345" );
+
+        // a changed validator gets the whole, current resource
+        assertRange( "\"other\"", 200, "0123456789" );
+        assertRange( DateUtils.formatDate( new Date( MODIFIED - 86400000L ) ), 200, "0123456789" );
+    }
+
+    @Test
+    public void shapedMultipleRangesFallBackToWhole()
+            throws Exception
+    {
+        server.withBandwidth( Bandwidth.bytesPerSecond( 1024 * 1024 ) );
+
+        final HttpGet ranges = new HttpGet( url );
+        ranges.setHeader( "Range", "bytes=0-1,5-6" );
+        try (CloseableHttpResponse response = client.execute( ranges ))
+        {
+            assertThat( response.getStatusLine().getStatusCode(), equalTo( 200 ) );
+            assertThat( EntityUtils.toString( response.getEntity() ), equalTo( "0123456789" ) );
+        }
+
+        // a single range is still honoured, and paced
+        assertRange( null, 206, "2345" );
+    }
+
+    private void assertRange( final String ifRange, final int status, final String body )
+            throws Exception
+    {
+        final HttpGet range = new HttpGet( url );
+        range.setHeader( "Range", "bytes=2-5" );
+        if ( ifRange != null )
+        {
+            range.setHeader( "If-Range", ifRange );
+        }
+
+        try (CloseableHttpResponse response = client.execute( range ))
+        {
+            assertThat( response.getStatusLine().getStatusCode(), equalTo( status ) );
+            assertThat( EntityUtils.toString( response.getEntity() ), equalTo( body ) );
+        }
+    }
+}
@@ -20,6 +20,7 @@ import io.quarkus.test.junit.callback.QuarkusTestAfterEachCallback;
 import io.quarkus.test.junit.callback.QuarkusTestBeforeEachCallback;
 import io.quarkus.test.junit.callback.QuarkusTestMethodContext;
 import org.commonjava.test.http.expect.ExpectationServer;
+import org.commonjava.test.http.expect.ExpectationServerPool;
 import org.commonjava.test.http.quarkus.InjectExpected;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -35,6 +36,10 @@ public class ExpectationServerCallBack
 
     private static final Map<Object, ExpectationServer> injectServers = new ConcurrentHashMap<>();
 
+    private static final Map<Object, Field> injectFields = new ConcurrentHashMap<>();
+
+    private static final Map<Object, ExpectationServer> runningServers = new ConcurrentHashMap<>();
+
     @Override
     public void afterConstruct( Object testInstance )
     {
@@ -58,6 +63,7 @@ public class ExpectationServerCallBack
                         field.setAccessible( true );
                         field.set( testInstance, server );
                         injectServers.put( testInstance, server );
+                        injectFields.put( testInstance, field );
                     }
                     catch ( IllegalAccessException e )
                     {
@@ -73,20 +79,44 @@ public class ExpectationServerCallBack
     @Override
     public void beforeEach( QuarkusTestMethodContext context )
     {
-        ExpectationServer server = injectServers.get( context.getTestInstance() );
+        final Object testInstance = context.getTestInstance();
+        ExpectationServer server = injectServers.get( testInstance );
         if ( server != null )
         {
-            server.start();
+            final ExpectationServer running = ExpectationServerPool.shared().start( server );
+            runningServers.put( testInstance, running );
+            if ( running != server )
+            {
+                // a pooled server stands in for the injected one
+                setField( testInstance, running );
+            }
         }
     }
 
     @Override
     public void afterEach( QuarkusTestMethodContext context )
     {
-        ExpectationServer server = injectServers.get( context.getTestInstance() );
+        final Object testInstance = context.getTestInstance();
+        ExpectationServer server = runningServers.remove( testInstance );
         if ( server != null )
         {
             server.stop();
+            if ( server != injectServers.get( testInstance ) )
+            {
+                setField( testInstance, injectServers.get( testInstance ) );
+            }
+        }
+    }
+
+    private static void setField( final Object testInstance, final ExpectationServer server )
+    {
+        try
+        {
+            injectFields.get( testInstance ).set( testInstance, server );
+        }
+        catch ( IllegalAccessException e )
+        {
+            throw new RuntimeException( e );
         }
     }
 